@@ -0,0 +1,65 @@
+package org.database.benchmark;
+
+import org.database.Utils.Utils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+/**
+ The BenchmarkData class generates the synthetic data directories used by the benchmarks.
+ Every directory holds a "bench" table shaped like the Company sample (id, name, city, rank)
+ and a users file, and is reused by later runs once it has been completely written.
+ */
+public class BenchmarkData {
+    public static final String TABLE = "bench";
+    private static final String ROOT = "target/bench-data";
+
+    /**
+     Makes the database use a data directory holding a table with the given number of rows,
+     generating it first if needed, and silences the console output of the queries.
+     @param rows the number of rows of the bench table and of the users file
+     @param name a name isolating the directory of benchmarks that modify their data
+     @param fresh true to regenerate the directory even if it already exists
+     @return the path of the data directory
+     @throws IOException if an I/O error occurs while generating the data
+     */
+    public static String use(int rows, String name, boolean fresh) throws IOException {
+        File directory = new File(ROOT, name + "-" + rows);
+        File complete = new File(directory, ".complete");
+        if (fresh || !complete.exists()) {
+            complete.delete();
+            generate(directory, rows);
+            complete.createNewFile();
+        }
+        System.setProperty("lightdb.dataDir", directory.getPath());
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return directory.getPath();
+    }
+
+    private static void generate(File directory, int rows) throws IOException {
+        new File(directory, "tables").mkdirs();
+        new File(directory, "tables-metadata").mkdirs();
+        try (PrintWriter metadata = new PrintWriter(new FileWriter(new File(directory, "tables-metadata/" + TABLE + "_metadata.txt")))) {
+            metadata.println("id|int|primarykey");
+            metadata.println("name|varchar");
+            metadata.println("city|varchar");
+            metadata.println("rank|int");
+        }
+        try (PrintWriter table = new PrintWriter(new BufferedWriter(new FileWriter(new File(directory, "tables/" + TABLE + ".txt")), 1 << 16))) {
+            for (int i = 0; i < rows; i++) {
+                table.println(i + "|company" + i + "|city" + (i % 50) + "|" + (i % 100));
+            }
+        }
+        String password = Utils.encrypt("password");
+        try (PrintWriter users = new PrintWriter(new BufferedWriter(new FileWriter(new File(directory, "users.txt")), 1 << 16))) {
+            for (int i = 0; i < rows; i++) {
+                users.println("user" + i + "," + password + ",question," + password);
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.database.benchmark;
+
+import org.database.query.QueryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures the per-row evaluation of WHERE clauses by QueryUtils.handleAndOrConditions.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConditionBenchmark {
+    @Param({"id=42", "city=city7 and rank=7", "city=city7 or rank=8"})
+    public String conditions;
+
+    private QueryUtils queryUtils;
+    private Map<String, String> row;
+
+    @Setup
+    public void setup() {
+        queryUtils = new QueryUtils();
+        row = new LinkedHashMap<>();
+        row.put("id", "42");
+        row.put("name", "company42");
+        row.put("city", "city42");
+        row.put("rank", "42");
+    }
+
+    @Benchmark
+    public boolean handleAndOrConditions() {
+        return queryUtils.handleAndOrConditions(row, conditions);
+    }
+}
@@ -0,0 +1,61 @@
+package org.database.benchmark;
+
+import org.database.query.QueryHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures INSERT with primary key validation and the temp file rewrites of UPDATE and DELETE.
+ The update always writes the same value and the row removed by the delete is inserted again before the next
+ invocation, so the table keeps its size across invocations; inserted rows use fresh keys above the generated
+ range of a newly generated table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModificationBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private QueryHandler queryHandler;
+    private int nextKey;
+    private int deletedKey;
+    private boolean deleted;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkData.use(rows, "modify", true);
+        queryHandler = new QueryHandler();
+        nextKey = rows;
+        deletedKey = rows / 3;
+    }
+
+    @Setup(Level.Invocation)
+    public void restoreDeletedRow() {
+        if (!deleted) return;
+        queryHandler.insertQuery(BenchmarkData.TABLE, deletedKey + ",company" + deletedKey + ",city" + (deletedKey % 50) + "," + (deletedKey % 100));
+        deleted = false;
+    }
+
+    @Benchmark
+    public boolean insertWithPrimaryKeyValidation() {
+        nextKey++;
+        return queryHandler.insertQuery(BenchmarkData.TABLE, nextKey + ",inserted,city1,1");
+    }
+
+    @Benchmark
+    public boolean updateRewrite() {
+        return queryHandler.updateQuery(BenchmarkData.TABLE, "rank=5", "id=" + (rows / 2));
+    }
+
+    @Benchmark
+    public boolean deleteRewrite() {
+        deleted = true;
+        return queryHandler.deleteQuery(BenchmarkData.TABLE, "id=" + deletedKey);
+    }
+}
@@ -0,0 +1,45 @@
+package org.database.benchmark;
+
+import org.database.query.QueryHandler;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures the full table scans done by QueryHandler at several table sizes.
+ The scanned table is never modified, so every size is generated only once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryHandlerBenchmark {
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    private QueryHandler queryHandler;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkData.use(rows, "scan", false);
+        queryHandler = new QueryHandler();
+    }
+
+    @Benchmark
+    public boolean selectPointFullScan() {
+        return queryHandler.selectQuery(BenchmarkData.TABLE, "name,city", "id=" + (rows / 2));
+    }
+
+    @Benchmark
+    public boolean selectAndFullScan() {
+        return queryHandler.selectQuery(BenchmarkData.TABLE, "*", "city=city7 and rank=7");
+    }
+
+    @Benchmark
+    public boolean selectAllRows() {
+        return queryHandler.selectQuery(BenchmarkData.TABLE, "*", null);
+    }
+}
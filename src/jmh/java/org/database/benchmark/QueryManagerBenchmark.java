@@ -0,0 +1,40 @@
+package org.database.benchmark;
+
+import org.database.query.QueryManager;
+import org.database.query.QueryUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures the statement matching done by QueryManager.runner. The statements are queued inside an open
+ transaction, so no table is touched and only the pattern matching is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryManagerBenchmark {
+    @Param({"select name,city from bench where id=42 and rank=3", "insert into bench values (1,a,b,2)",
+            "update bench set rank=7 where id=42", "delete from bench where id=42"})
+    public String query;
+
+    private QueryManager queryManager;
+    private QueryUtils queryUtils;
+
+    @Setup
+    public void setup() {
+        queryManager = new QueryManager();
+        queryUtils = new QueryUtils();
+        queryManager.runner("BEGIN TRANSACTION;", queryUtils);
+    }
+
+    @Benchmark
+    public int runnerParsing() {
+        queryUtils.setTransactionQueryList(new ArrayList<>());
+        return queryManager.runner(query, queryUtils);
+    }
+}
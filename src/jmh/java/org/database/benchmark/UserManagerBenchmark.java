@@ -0,0 +1,35 @@
+package org.database.benchmark;
+
+import org.database.user.User;
+import org.database.user.UserManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ Measures the user lookup done on every login and registration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserManagerBenchmark {
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private UserManager userManager;
+
+    @Setup
+    public void setup() throws IOException {
+        BenchmarkData.use(rows, "users", false);
+        userManager = new UserManager();
+    }
+
+    @Benchmark
+    public User getUserByUsername() {
+        return userManager.getUserByUsername("user" + (rows / 2));
+    }
+}
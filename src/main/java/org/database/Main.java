@@ -1,14 +1,54 @@
 package org.database;
 
+import org.database.Utils.Config;
+import org.database.Utils.Utils;
 import org.database.auth.Auth;
+import org.database.metrics.MetricsRegistry;
 import org.database.query.IQueryManager;
 import org.database.query.QueryManager;
 import org.database.query.QueryUtils;
+import org.database.recovery.Checkpointer;
+import org.database.recovery.Recovery;
+import org.database.replication.ChangeLog;
+import org.database.replication.ReadOnlyQueryHandler;
+import org.database.replication.ReplicaFollower;
+import org.database.server.QueryServer;
+import org.database.shard.ShardPool;
+import org.database.shard.ShardedQueryHandler;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Scanner;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
+        if(args.length == 3 && args[0].equals("--replica")) {
+            // a replica tracks the changes it applied in its own change log
+            System.setProperty("lightdb.wal.enabled", "true");
+        }
+        if(ChangeLog.isEnabled()) {
+            Recovery.recover();
+            Checkpointer.startPeriodic();
+        }
+        if(args.length == 2 && args[0].equals("--server")) {
+            startStatsDump();
+            new QueryServer(Integer.parseInt(args[1])).serve();
+            return;
+        }
+        if(args.length == 3 && args[0].equals("--replica")) {
+            startStatsDump();
+            new ReplicaFollower(args[2]).start();
+            new QueryServer(Integer.parseInt(args[1]), () -> new QueryManager(new ReadOnlyQueryHandler())).serve();
+            return;
+        }
+        if(args.length == 3 && args[0].equals("--coordinator")) {
+            startStatsDump();
+            ShardPool shardPool = new ShardPool(List.of(args[2].split(",")));
+            new QueryServer(Integer.parseInt(args[1]), () -> new QueryManager(new ShardedQueryHandler(shardPool))).serve();
+            return;
+        }
+
         QueryUtils queryUtils = new QueryUtils();
         Scanner input = new Scanner(System.in);
         int choice;
@@ -36,6 +76,7 @@ public class Main {
         }
 
         if(isAuthenticated) {
+            startStatsDump();
             while(true) {
                 System.out.print("QUERY> ");
                 String query = input.nextLine();
@@ -46,4 +87,9 @@ public class Main {
             }
         }
     }
-}
\ No newline at end of file
+
+    private static void startStatsDump() {
+        MetricsRegistry.getInstance().startPeriodicDump(new File(Config.getString("stats.file", Utils.getDataFileName("stats.txt"))),
+                Config.getLong("stats.dumpIntervalSeconds", 60));
+    }
+}
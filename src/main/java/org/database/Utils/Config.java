@@ -0,0 +1,56 @@
+package org.database.Utils;
+
+/**
+ The Config class gives access to the tunable settings of the database.
+ Every setting is read from a JVM system property prefixed with "lightdb." and falls back to a default value,
+ e.g. -Dlightdb.stats.dumpIntervalSeconds=30
+ */
+public class Config {
+    private static final String PREFIX = "lightdb.";
+
+    /**
+     Returns the directory holding the tables, their metadata and the users of the database.
+     @return the configured data directory, "database" by default
+     */
+    public static String getDataDirectory() {
+        return getString("dataDir", "database");
+    }
+
+    /**
+     Reads a numeric setting.
+     @param key the name of the setting, without the "lightdb." prefix
+     @param defaultValue the value used when the setting is missing or not a number
+     @return the configured value, or the default value
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        if (!Utils.isValidString(value)) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     Reads a textual setting.
+     @param key the name of the setting, without the "lightdb." prefix
+     @param defaultValue the value used when the setting is missing
+     @return the configured value, or the default value
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return Utils.isValidString(value) ? value.trim() : defaultValue;
+    }
+
+    /**
+     Reads a boolean setting.
+     @param key the name of the setting, without the "lightdb." prefix
+     @param defaultValue the value used when the setting is missing
+     @return the configured value, or the default value
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = System.getProperty(PREFIX + key);
+        return Utils.isValidString(value) ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+}
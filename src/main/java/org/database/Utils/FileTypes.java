@@ -2,5 +2,15 @@ package org.database.Utils;
 
 public enum FileTypes {
     TABLE,
-    META_TABLE
+    META_TABLE,
+    TABLE_OPTIONS,
+    TABLE_BLOCKS,
+    BLOCK_INDEX,
+    BLOOM_FILTER,
+    LSM_MANIFEST,
+    LSM_RUN_INDEX,
+    TABLE_STATISTICS,
+    VIEW_DEFINITION,
+    VIEW_STATE,
+    TABLE_SCHEMA
 }
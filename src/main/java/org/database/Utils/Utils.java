@@ -77,13 +77,42 @@ public class Utils {
      */
     public static String getFileName(String tableName, FileTypes type) {
         if(type.equals(FileTypes.TABLE)) {
-            return "database/tables/" + tableName + ".txt";
+            return Config.getDataDirectory() + "/tables/" + tableName + ".txt";
         } else if(type.equals(FileTypes.META_TABLE)) {
-            return "database/tables-metadata/" + tableName + "_metadata.txt";
+            return Config.getDataDirectory() + "/tables-metadata/" + tableName + "_metadata.txt";
+        } else if(type.equals(FileTypes.TABLE_OPTIONS)) {
+            return Config.getDataDirectory() + "/tables-metadata/" + tableName + "_options.txt";
+        } else if(type.equals(FileTypes.TABLE_BLOCKS)) {
+            return Config.getDataDirectory() + "/tables/" + tableName + ".blocks";
+        } else if(type.equals(FileTypes.BLOCK_INDEX)) {
+            return Config.getDataDirectory() + "/tables/" + tableName + "_blocks.txt";
+        } else if(type.equals(FileTypes.BLOOM_FILTER)) {
+            return Config.getDataDirectory() + "/tables/" + tableName + "_bloom.bin";
+        } else if(type.equals(FileTypes.LSM_MANIFEST)) {
+            return Config.getDataDirectory() + "/tables/" + tableName + "_lsm.txt";
+        } else if(type.equals(FileTypes.LSM_RUN_INDEX)) {
+            return Config.getDataDirectory() + "/tables/" + tableName + "_index.bin";
+        } else if(type.equals(FileTypes.TABLE_STATISTICS)) {
+            return Config.getDataDirectory() + "/tables-metadata/" + tableName + "_stats.txt";
+        } else if(type.equals(FileTypes.VIEW_DEFINITION)) {
+            return Config.getDataDirectory() + "/tables-metadata/" + tableName + "_view.txt";
+        } else if(type.equals(FileTypes.VIEW_STATE)) {
+            return Config.getDataDirectory() + "/tables/" + tableName + "_state.txt";
+        } else if(type.equals(FileTypes.TABLE_SCHEMA)) {
+            return Config.getDataDirectory() + "/tables-metadata/" + tableName + "_schema.txt";
         }
         return "";
     }
 
+    /**
+     Generates the name of a file stored directly in the data directory.
+     @param name the name of the file inside the data directory
+     @return a string representing the path of the file
+     */
+    public static String getDataFileName(String name) {
+        return Config.getDataDirectory() + "/" + name;
+    }
+
     /**
      Prints the specified fields and corresponding values from a row in a tabular format.
      @param fields the comma-separated string of field names to be printed
@@ -93,6 +122,16 @@ public class Utils {
         if (fields.isEmpty()) {
             System.out.println("No data available!");
         }
+        System.out.println(formatRow(fields, row));
+    }
+
+    /**
+     Formats the specified fields and corresponding values from a row in the tabular format used by print.
+     @param fields the comma-separated string of field names to be formatted
+     @param row the map representing the row data, with field names as keys and values as values
+     @return the formatted row
+     */
+    public static String formatRow(String fields, Map<String, String> row) {
         List<String> selectFields = List.of(fields.split(","));
         StringJoiner output = new StringJoiner(" | ");
 
@@ -106,6 +145,6 @@ public class Utils {
                 output.add(rowValue);
             }
         }
-        System.out.println(output);
+        return output.toString();
     }
 }
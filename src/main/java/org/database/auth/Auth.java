@@ -4,10 +4,6 @@ import org.database.Utils.Utils;
 import org.database.user.User;
 import org.database.user.UserManager;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
-import java.io.PrintWriter;
 import java.util.Scanner;
 
 /**
@@ -25,22 +21,13 @@ public class Auth implements IAuth {
      @return true if the authentication is successful, false otherwise
      */
     private boolean authenticate(User user) {
-        if(user == null) return false;
-        if(user.getUsername() == null || user.getPassword() == null) return false;
-        if(user.getUsername().isEmpty() || user.getPassword().isEmpty()) return false;
-        UserManager userManager = new UserManager();
-        User existingUser = userManager.getUserByUsername(user.getUsername());
+        User existingUser = verifyPassword(user);
         if(existingUser == null) return false;
         try {
-            String hashValue = Utils.encrypt(user.getPassword().trim());
-            if(!hashValue.equals(existingUser.getPassword()))
-                return false;
-
             Scanner scanner = new Scanner(System.in);
             System.out.println("Please answer of this question: " + existingUser.getQuestion());
             String answer = scanner.nextLine();
-            String hashAnswerValue = Utils.encrypt(answer);
-            if(!hashAnswerValue.equals(existingUser.getAnswer())){
+            if(!verifyAnswer(existingUser, answer)){
                 System.out.println("Invalid security answer!");
                 return false;
             }
@@ -52,6 +39,35 @@ public class Auth implements IAuth {
         return true;
     }
 
+    /**
+     Private method used to check the username and password of a user against the stored credentials.
+     @param user the User object containing the user's credentials
+     @return the stored User if the password matches, null otherwise
+     */
+    private User verifyPassword(User user) {
+        if(user == null) return null;
+        if(user.getUsername() == null || user.getPassword() == null) return null;
+        if(user.getUsername().isEmpty() || user.getPassword().isEmpty()) return null;
+        UserManager userManager = new UserManager();
+        User existingUser = userManager.getUserByUsername(user.getUsername());
+        if(existingUser == null) return null;
+        String hashValue = Utils.encrypt(user.getPassword().trim());
+        if(hashValue == null || !hashValue.equals(existingUser.getPassword())) return null;
+        return existingUser;
+    }
+
+    /**
+     Private method used to check the security answer of a user against the stored one.
+     @param existingUser the stored User
+     @param answer the answer given by the user
+     @return true if the answer matches, false otherwise
+     */
+    private boolean verifyAnswer(User existingUser, String answer) {
+        if(answer == null) return false;
+        String hashAnswerValue = Utils.encrypt(answer);
+        return hashAnswerValue != null && hashAnswerValue.equals(existingUser.getAnswer());
+    }
+
     /**
      Private method used for user registration, which registers a new user.
      @param user the User object containing the user's information
@@ -59,22 +75,12 @@ public class Auth implements IAuth {
      */
     private int register(User user) {
         UserManager userManager = new UserManager();
-        PrintWriter usersFile = null;
         try {
-            User existingUser = userManager.getUserByUsername(user.getUsername());
-            if (existingUser != null) return 0;
-
-            File file = new File("database/users.txt");
-            FileWriter fr = new FileWriter(file, true);
-            BufferedWriter br = new BufferedWriter(fr);
-            usersFile = new PrintWriter(br);
-            String userString = user.getUsername() + "," + Utils.encrypt(user.getPassword()) + "," + user.getQuestion() + "," + Utils.encrypt(user.getAnswer());
-            usersFile.println(userString);
+            User encryptedUser = new User(user.getUsername(), Utils.encrypt(user.getPassword()), user.getQuestion(), Utils.encrypt(user.getAnswer()));
+            if (!userManager.addUser(encryptedUser)) return 0;
         } catch (Exception e) {
             System.out.println(e);
             return 2;
-        } finally {
-            if(usersFile != null) usersFile.close();
         }
         return 1;
     }
@@ -101,6 +107,20 @@ public class Auth implements IAuth {
         return status;
     }
 
+    /**
+     Public method used for non-interactive login, e.g. by clients of the query server, which verifies the
+     password and the security answer in one step.
+     @param username the username of the user
+     @param password the password of the user
+     @param answer the answer to the security question of the user
+     @return true if the login is successful, false otherwise
+     */
+    @Override
+    public boolean loginUser(String username, String password, String answer) {
+        User existingUser = verifyPassword(new User(username, password));
+        return existingUser != null && verifyAnswer(existingUser, answer);
+    }
+
     /**
      Public method used for user registration, which prompts the user for registration information and performs the registration process.
      @param registerInput the Scanner object used for reading user input during the registration process
@@ -5,5 +5,7 @@ import java.util.Scanner;
 public interface IAuth {
     boolean loginUser(Scanner loginInput);
 
+    boolean loginUser(String username, String password, String answer);
+
     boolean registerUser(Scanner registerInput);
 }
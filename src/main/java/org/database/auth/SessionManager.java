@@ -0,0 +1,83 @@
+package org.database.auth;
+
+import org.database.Utils.Config;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ The SessionManager class issues session tokens to authenticated users, so a reconnecting client can resume
+ its session with the token instead of going through the full login again. Tokens are random, expire after
+ a configurable time (lightdb.session.ttlSeconds, one hour by default) and live only in memory.
+ */
+public class SessionManager {
+    private static final SessionManager INSTANCE = new SessionManager(Config.getLong("session.ttlSeconds", 3600));
+    private static final int TOKEN_BYTES = 32;
+
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+
+    private SessionManager(long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    public static SessionManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     Opens a new session for an authenticated user.
+     @param username the username of the authenticated user
+     @return the token identifying the session
+     */
+    public String createSession(String username) {
+        removeExpired();
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(username, System.currentTimeMillis() + ttlMillis));
+        return token;
+    }
+
+    /**
+     Resolves the user of a session.
+     @param token the token identifying the session
+     @return the username of the session, or null if the token is unknown or expired
+     */
+    public String resume(String token) {
+        if (token == null) return null;
+        Session session = sessions.get(token);
+        if (session == null) return null;
+        if (session.expiresAt < System.currentTimeMillis()) {
+            sessions.remove(token);
+            return null;
+        }
+        return session.username;
+    }
+
+    /**
+     Closes a session, its token can no longer be resumed.
+     @param token the token identifying the session
+     */
+    public void invalidate(String token) {
+        sessions.remove(token);
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.expiresAt < now);
+    }
+
+    private static class Session {
+        private final String username;
+        private final long expiresAt;
+
+        private Session(String username, long expiresAt) {
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.database.cache;
+
+import org.database.Utils.Config;
+import org.database.metrics.MetricsRegistry;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ The QueryResultCache class keeps the output of recent SELECT queries, keyed by the normalized query.
+ Each entry remembers the version of its table when it was computed and is dropped on the first lookup
+ after the table changed. The cache holds at most lightdb.resultCache.maxBytes bytes of results and evicts
+ the least recently used entries beyond that; it is disabled when the budget is 0, the default.
+ */
+public class QueryResultCache {
+    private static final QueryResultCache INSTANCE = new QueryResultCache(Config.getLong("resultCache.maxBytes", 0));
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int LINE_OVERHEAD = 40;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private QueryResultCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static QueryResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     Builds the cache key of a SELECT query.
+     @param tableName the name of the queried table
+     @param fields the selected fields
+     @param conditions the WHERE clause, or null
+     @return the key identifying the query
+     */
+    public static String key(String tableName, String fields, String conditions) {
+        String where = conditions == null ? "" : conditions.trim().replaceAll("\\s*=\\s*", "=").replaceAll("\\s+", " ");
+        return tableName + "|" + fields.replaceAll("\\s+", "") + "|" + where;
+    }
+
+    /**
+     Looks up the result of a query.
+     @param key the key of the query
+     @param tableName the name of the queried table
+     @return the output lines of the query, or null if absent or computed from an older version of the table
+     */
+    public synchronized List<String> get(String key, String tableName) {
+        if (!isEnabled()) return null;
+        Entry entry = entries.get(key);
+        if (entry != null && entry.tableVersion != TableVersions.get(tableName)) {
+            remove(key);
+            entry = null;
+        }
+        MetricsRegistry.getInstance().recordCounter(entry == null ? "result cache misses" : "result cache hits", 1);
+        return entry == null ? null : entry.lines;
+    }
+
+    /**
+     Stores the result of a query.
+     @param key the key of the query
+     @param tableVersion the version of the table the result was computed from
+     @param lines the output lines of the query
+     */
+    public synchronized void put(String key, long tableVersion, List<String> lines) {
+        if (!isEnabled()) return;
+        long size = ENTRY_OVERHEAD + key.length() * 2L;
+        for (String line : lines) {
+            size += LINE_OVERHEAD + line.length() * 2L;
+        }
+        if (size > maxBytes) return;
+
+        remove(key);
+        entries.put(key, new Entry(lines, tableVersion, size));
+        usedBytes += size;
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().getValue().size;
+            iterator.remove();
+            MetricsRegistry.getInstance().recordCounter("result cache evictions", 1);
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) usedBytes -= removed.size;
+    }
+
+    private static class Entry {
+        private final List<String> lines;
+        private final long tableVersion;
+        private final long size;
+
+        private Entry(List<String> lines, long tableVersion, long size) {
+            this.lines = lines;
+            this.tableVersion = tableVersion;
+            this.size = size;
+        }
+    }
+}
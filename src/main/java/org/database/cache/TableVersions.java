@@ -0,0 +1,26 @@
+package org.database.cache;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ The TableVersions class keeps a version counter per table, bumped by every statement that changes the
+ table's rows or schema. Anything derived from a table, such as a cached query result, records the version
+ it was computed from and is stale as soon as the counter moved on.
+ */
+public class TableVersions {
+    private static final Map<String, AtomicLong> VERSIONS = new ConcurrentHashMap<>();
+
+    public static long get(String tableName) {
+        return counter(tableName).get();
+    }
+
+    public static long bump(String tableName) {
+        return counter(tableName).incrementAndGet();
+    }
+
+    private static AtomicLong counter(String tableName) {
+        return VERSIONS.computeIfAbsent(tableName, key -> new AtomicLong());
+    }
+}
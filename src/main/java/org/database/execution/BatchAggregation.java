@@ -0,0 +1,212 @@
+package org.database.execution;
+
+import org.database.memory.BytesIntHashMap;
+import org.database.query.Aggregate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringJoiner;
+
+/**
+ The BatchAggregation class computes the fields of an aggregate SELECT over the selected rows of RowBatches.
+ The group of each selected row is looked up once per batch into a group vector, then every aggregate runs its own
+ loop over the batch: COUNT adds the rows of each group, and SUM, AVG, MIN and MAX of an int column add the int
+ vector into per-group long and int arrays. Values of other columns, and int values not written as plain numbers,
+ go through an Aggregate.Accumulator of their group, which the per-group arrays are merged into at the end, so the
+ results are the ones of the row at a time accumulators.
+
+ Groups are numbered in the order they are met and their keys are looked up off the heap.
+ */
+public class BatchAggregation implements AutoCloseable {
+    private final List<Aggregate> aggregates;
+    private final int[] aggregateColumns;
+    private final int groupByColumn;
+    private final BytesIntHashMap groupNumbers;
+    private final int[] groupOfRow = new int[RowBatch.CAPACITY];
+    private final List<String> groupKeys = new ArrayList<>();
+    private long[] groupRows = new long[16];
+    private final Numbers[] numbers;
+    private final List<Aggregate.Accumulator[]> accumulators = new ArrayList<>();
+
+    /**
+     @param aggregates the parsed fields of the SELECT
+     @param columns the column names of the table, in storage order
+     @param groupBy the column to group the rows by, or null to aggregate all rows in one group
+     @param expectedGroups the number of groups the group table is sized for
+     */
+    public BatchAggregation(List<Aggregate> aggregates, List<String> columns, String groupBy, int expectedGroups) {
+        this.aggregates = aggregates;
+        this.aggregateColumns = new int[aggregates.size()];
+        this.numbers = new Numbers[aggregates.size()];
+        for (int i = 0; i < aggregateColumns.length; i++) {
+            aggregateColumns[i] = columns.indexOf(aggregates.get(i).getColumn());
+        }
+        this.groupByColumn = groupBy == null ? -1 : columns.indexOf(groupBy);
+        this.groupNumbers = new BytesIntHashMap(expectedGroups);
+    }
+
+    /**
+     Adds the selected rows of a batch to their groups.
+     @param batch the batch
+     */
+    public void add(RowBatch batch) {
+        int[] selection = batch.selection();
+        int selected = batch.selected();
+        if (selected == 0) return;
+        assignGroups(batch, selection, selected);
+        for (int i = 0; i < selected; i++) {
+            groupRows[groupOfRow[i]]++;
+        }
+        for (int a = 0; a < aggregateColumns.length; a++) {
+            Aggregate aggregate = aggregates.get(a);
+            // COUNT counts the rows of the group and the GROUP BY column is the key of the group
+            if (!aggregate.isFunction() || aggregate.getFunction().equals(Aggregate.COUNT)) continue;
+            int column = aggregateColumns[a];
+            if (batch.isIntColumn(column)) {
+                addInts(batch, a, column, selection, selected);
+            } else {
+                for (int i = 0; i < selected; i++) {
+                    accumulator(groupOfRow[i], a).add(batch.value(selection[i], column));
+                }
+            }
+        }
+    }
+
+    /**
+     Formats the result row of each group, in the order the groups were met. Without GROUP BY, a single row is
+     returned even when no row matched.
+     @return the result rows
+     */
+    public List<String> results() {
+        if (groupByColumn < 0 && groupKeys.isEmpty()) {
+            groupKeys.add("");
+        }
+        List<String> lines = new ArrayList<>();
+        for (int group = 0; group < groupKeys.size(); group++) {
+            StringJoiner line = new StringJoiner(" | ");
+            for (int a = 0; a < aggregateColumns.length; a++) {
+                line.add(result(group, a));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    public int getGroupCount() {
+        return groupKeys.size();
+    }
+
+    @Override
+    public void close() {
+        groupNumbers.close();
+    }
+
+    private void assignGroups(RowBatch batch, int[] selection, int selected) {
+        if (groupByColumn < 0) {
+            if (groupKeys.isEmpty()) newGroup("");
+            Arrays.fill(groupOfRow, 0, selected, 0);
+            return;
+        }
+        String lastKey = null;
+        int lastGroup = -1;
+        for (int i = 0; i < selected; i++) {
+            String key = batch.value(selection[i], groupByColumn);
+            // neighbouring rows often share their group, e.g. in a table loaded in order
+            if (!key.equals(lastKey)) {
+                lastGroup = groupNumbers.putIfAbsent(key.getBytes(StandardCharsets.UTF_8), groupKeys.size());
+                if (lastGroup == BytesIntHashMap.NO_VALUE) lastGroup = newGroup(key);
+                lastKey = key;
+            }
+            groupOfRow[i] = lastGroup;
+        }
+    }
+
+    private int newGroup(String key) {
+        int group = groupKeys.size();
+        groupKeys.add(key);
+        if (group == groupRows.length) {
+            groupRows = Arrays.copyOf(groupRows, group * 2);
+        }
+        accumulators.add(null);
+        return group;
+    }
+
+    private void addInts(RowBatch batch, int aggregate, int column, int[] selection, int selected) {
+        Numbers sums = numbers[aggregate];
+        if (sums == null) {
+            sums = new Numbers();
+            numbers[aggregate] = sums;
+        }
+        sums.ensureCapacity(groupKeys.size());
+        int[] ints = batch.ints(column);
+        boolean[] exact = batch.exactInts(column);
+        long[] sum = sums.sum;
+        long[] count = sums.count;
+        int[] min = sums.min;
+        int[] max = sums.max;
+        for (int i = 0; i < selected; i++) {
+            int row = selection[i];
+            int group = groupOfRow[i];
+            if (!exact[row]) {
+                accumulator(group, aggregate).add(batch.value(row, column));
+                continue;
+            }
+            int value = ints[row];
+            sum[group] += value;
+            min[group] = count[group] == 0 ? value : Math.min(min[group], value);
+            max[group] = count[group] == 0 ? value : Math.max(max[group], value);
+            count[group]++;
+        }
+    }
+
+    private Aggregate.Accumulator accumulator(int group, int aggregate) {
+        Aggregate.Accumulator[] groupAccumulators = accumulators.get(group);
+        if (groupAccumulators == null) {
+            groupAccumulators = new Aggregate.Accumulator[aggregates.size()];
+            accumulators.set(group, groupAccumulators);
+        }
+        if (groupAccumulators[aggregate] == null) {
+            groupAccumulators[aggregate] = aggregates.get(aggregate).newAccumulator();
+        }
+        return groupAccumulators[aggregate];
+    }
+
+    private String result(int group, int aggregate) {
+        Aggregate field = aggregates.get(aggregate);
+        if (!field.isFunction()) return groupKeys.get(group);
+        if (field.getFunction().equals(Aggregate.COUNT)) return String.valueOf(groupRows[group]);
+        Aggregate.Accumulator[] groupAccumulators = group < accumulators.size() ? accumulators.get(group) : null;
+        Aggregate.Accumulator accumulator = groupAccumulators == null || groupAccumulators[aggregate] == null
+                ? field.newAccumulator() : groupAccumulators[aggregate];
+        Numbers sums = numbers[aggregate];
+        if (sums != null && group < sums.count.length && sums.count[group] > 0) {
+            // the int values are merged as the partial results of the same functions
+            accumulator.combine(Aggregate.SUM, String.valueOf(sums.sum[group]));
+            accumulator.combine(Aggregate.COUNT, String.valueOf(sums.count[group]));
+            accumulator.combine(Aggregate.MIN, String.valueOf(sums.min[group]));
+            accumulator.combine(Aggregate.MAX, String.valueOf(sums.max[group]));
+        }
+        return accumulator.result();
+    }
+
+    /**
+     The per-group running values of the int values of one aggregate.
+     */
+    private static class Numbers {
+        private long[] sum = new long[0];
+        private long[] count = new long[0];
+        private int[] min = new int[0];
+        private int[] max = new int[0];
+
+        private void ensureCapacity(int groups) {
+            if (groups <= sum.length) return;
+            int capacity = Math.max(16, Math.max(groups, sum.length * 2));
+            sum = Arrays.copyOf(sum, capacity);
+            count = Arrays.copyOf(count, capacity);
+            min = Arrays.copyOf(min, capacity);
+            max = Arrays.copyOf(max, capacity);
+        }
+    }
+}
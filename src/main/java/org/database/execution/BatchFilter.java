@@ -0,0 +1,167 @@
+package org.database.execution;
+
+import java.util.List;
+
+/**
+ The BatchFilter class evaluates the WHERE clause of a SELECT over a RowBatch, narrowing its selection vector.
+ Conditions are parsed once per statement with the AND/OR rules of QueryUtils.handleAndOrConditions and compare
+ the text of a field with the value ignoring case, like handleCondition does. An equality on an int column with
+ a value written as a plain number compares the parsed int vector instead of the text.
+ */
+public abstract class BatchFilter {
+
+    /**
+     Parses the conditions of a WHERE clause.
+     @param conditions the string representing the AND/OR conditions, or null
+     @param columns the column names of the table, in storage order
+     @return the filter, or null if there are no conditions
+     @throws IllegalArgumentException if a condition is not an equality
+     */
+    public static BatchFilter compile(String conditions, List<String> columns) {
+        if (conditions == null) {
+            return null;
+        }
+        conditions = conditions.trim();
+
+        if (conditions.contains("and")) {
+            String[] conditionsArr = conditions.split("and", 2);
+            return new And(condition(conditionsArr[0].trim(), columns), condition(conditionsArr[1].trim(), columns));
+        } else if (conditions.contains("or")) {
+            String[] conditionsArr = conditions.split("or", 2);
+            return new Or(condition(conditionsArr[0].trim(), columns), condition(conditionsArr[1].trim(), columns));
+        } else {
+            return condition(conditions, columns);
+        }
+    }
+
+    private static BatchFilter condition(String condition, List<String> columns) {
+        String[] parts = condition.split("=", 2);
+        if (parts.length < 2) {
+            throw new IllegalArgumentException("Invalid condition " + condition);
+        }
+        return new Equals(columns.indexOf(parts[0].trim()), parts[1].trim());
+    }
+
+    /**
+     Keeps the rows of the batch matching the filter among the selected ones.
+     @param batch the batch, whose selection is narrowed
+     */
+    public void apply(RowBatch batch) {
+        batch.setSelected(select(batch, batch.selection(), batch.selected(), batch.selection()));
+    }
+
+    /**
+     Writes the positions of the matching rows among the given ones.
+     @param batch the batch holding the rows
+     @param in the positions of the rows to check, in ascending order
+     @param count the number of positions in "in"
+     @param out receives the positions of the matching rows in ascending order, may be "in" itself
+     @return the number of matching rows
+     */
+    abstract int select(RowBatch batch, int[] in, int count, int[] out);
+
+    private static class Equals extends BatchFilter {
+        private final int column;
+        private final String value;
+        private final boolean exactInt;
+        private final int intValue;
+
+        Equals(int column, String value) {
+            this.column = column;
+            this.value = value;
+            Integer parsed = parseExactInt(value);
+            this.exactInt = parsed != null;
+            this.intValue = parsed == null ? 0 : parsed;
+        }
+
+        @Override
+        int select(RowBatch batch, int[] in, int count, int[] out) {
+            if (column < 0) {
+                // a column the table does not have matches no row
+                return 0;
+            }
+            int selected = 0;
+            if (batch.isIntColumn(column) && exactInt) {
+                int[] ints = batch.ints(column);
+                boolean[] exact = batch.exactInts(column);
+                for (int i = 0; i < count; i++) {
+                    int row = in[i];
+                    out[selected] = row;
+                    selected += exact[row] & ints[row] == intValue ? 1 : 0;
+                }
+                return selected;
+            }
+            int[] starts = batch.starts(column);
+            int[] ends = batch.ends(column);
+            int length = value.length();
+            for (int i = 0; i < count; i++) {
+                int row = in[i];
+                int start = starts[row];
+                if (ends[row] - start == length && batch.line(row).regionMatches(true, start, value, 0, length)) {
+                    out[selected++] = row;
+                }
+            }
+            return selected;
+        }
+
+        private static Integer parseExactInt(String value) {
+            try {
+                int number = Integer.parseInt(value);
+                return Integer.toString(number).equals(value) ? number : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static class And extends BatchFilter {
+        private final BatchFilter first;
+        private final BatchFilter second;
+
+        And(BatchFilter first, BatchFilter second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        int select(RowBatch batch, int[] in, int count, int[] out) {
+            int selected = first.select(batch, in, count, out);
+            return second.select(batch, out, selected, out);
+        }
+    }
+
+    private static class Or extends BatchFilter {
+        private final BatchFilter first;
+        private final BatchFilter second;
+        private final int[] firstRows = new int[RowBatch.CAPACITY];
+        private final int[] secondRows = new int[RowBatch.CAPACITY];
+
+        Or(BatchFilter first, BatchFilter second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        int select(RowBatch batch, int[] in, int count, int[] out) {
+            int firstCount = first.select(batch, in, count, firstRows);
+            int secondCount = second.select(batch, in, count, secondRows);
+            // both lists are ascending, their union is merged in order
+            int selected = 0;
+            int i = 0;
+            int j = 0;
+            while (i < firstCount || j < secondCount) {
+                int row;
+                if (j == secondCount || (i < firstCount && firstRows[i] < secondRows[j])) {
+                    row = firstRows[i++];
+                } else if (i == firstCount || secondRows[j] < firstRows[i]) {
+                    row = secondRows[j++];
+                } else {
+                    row = firstRows[i++];
+                    j++;
+                }
+                out[selected++] = row;
+            }
+            return selected;
+        }
+    }
+}
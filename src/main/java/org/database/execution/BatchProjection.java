@@ -0,0 +1,59 @@
+package org.database.execution;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The BatchProjection class formats the selected rows of a RowBatch the way Utils.formatRow does, copying the fields
+ of the SELECT list straight from the row text into one buffer per batch.
+ */
+public class BatchProjection {
+    private final int[] columns;
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     @param fields the comma-separated SELECT list, or "*" for all columns
+     @param columns the column names of the table, in storage order
+     @throws IllegalArgumentException if a field is not a column of the table
+     */
+    public BatchProjection(String fields, List<String> columns) {
+        List<Integer> positions = new ArrayList<>();
+        if (fields.equals("*")) {
+            for (int i = 0; i < columns.size(); i++) {
+                positions.add(i);
+            }
+        } else {
+            for (String field : fields.split(",")) {
+                int position = columns.indexOf(field.trim());
+                if (position < 0) throw new IllegalArgumentException(field + " not exist!");
+                positions.add(position);
+            }
+        }
+        this.columns = positions.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     Formats the selected rows of a batch.
+     @param batch the batch
+     @param lines receives each formatted row when not null, e.g. for the result cache
+     @return the formatted rows, each one followed by a line separator
+     */
+    public String format(RowBatch batch, List<String> lines) {
+        output.setLength(0);
+        int[] selection = batch.selection();
+        String separator = System.lineSeparator();
+        for (int i = 0; i < batch.selected(); i++) {
+            int row = selection[i];
+            String line = batch.line(row);
+            int lineStart = output.length();
+            for (int c = 0; c < columns.length; c++) {
+                if (c > 0) output.append(" | ");
+                int column = columns[c];
+                output.append(line, batch.starts(column)[row], batch.ends(column)[row]);
+            }
+            if (lines != null) lines.add(output.substring(lineStart));
+            output.append(separator);
+        }
+        return output.toString();
+    }
+}
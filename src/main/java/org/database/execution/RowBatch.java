@@ -0,0 +1,189 @@
+package org.database.execution;
+
+import org.database.Utils.Config;
+
+import java.util.List;
+
+/**
+ The RowBatch class holds up to lightdb.execution.batchRows rows of a scan in column form, so that the operators
+ of a SELECT run one tight loop per column over the whole batch instead of building a map per row.
+
+ The rows stay the text lines the store returned; splitting a line only records where each of its fields starts
+ and ends, in one int vector per column. An int column is parsed once per batch into an int vector, next to a
+ flag telling whether the text of the value is exactly the one of its number, since conditions compare the text.
+ The selection vector lists the positions of the rows that passed the filter so far, in ascending order.
+ */
+public class RowBatch {
+    public static final int CAPACITY = (int) Math.max(16, Config.getLong("execution.batchRows", 1024));
+
+    private final int columnCount;
+    private final boolean[] intColumns;
+    private final String[] lines = new String[CAPACITY];
+    private final int[][] starts;
+    private final int[][] ends;
+    private final int[][] ints;
+    private final boolean[][] exactInts;
+    private final boolean[] intsParsed;
+    private final int[] selection = new int[CAPACITY];
+    private int size;
+    private int selected;
+
+    /**
+     @param types the type of each column of the table, in storage order
+     */
+    public RowBatch(List<String> types) {
+        this.columnCount = types.size();
+        this.intColumns = new boolean[columnCount];
+        for (int column = 0; column < columnCount; column++) {
+            intColumns[column] = types.get(column).equals("int");
+        }
+        this.starts = new int[columnCount][CAPACITY];
+        this.ends = new int[columnCount][CAPACITY];
+        this.ints = new int[columnCount][];
+        this.exactInts = new boolean[columnCount][];
+        this.intsParsed = new boolean[columnCount];
+    }
+
+    /**
+     Adds a row and records the bounds of its fields. A row holding fewer fields than the table has columns gets
+     empty values for the missing ones.
+     @param line the row, as returned by the store
+     @return true if the batch is full
+     */
+    public boolean add(String line) {
+        int row = size++;
+        lines[row] = line;
+        int length = line.length();
+        int start = 0;
+        int column = 0;
+        for (int i = 0; i < length && column < columnCount; i++) {
+            if (line.charAt(i) == '|') {
+                starts[column][row] = start;
+                ends[column][row] = i;
+                column++;
+                start = i + 1;
+            }
+        }
+        for (; column < columnCount; column++) {
+            starts[column][row] = Math.min(start, length);
+            ends[column][row] = length;
+            start = length;
+        }
+        return size == CAPACITY;
+    }
+
+    /**
+     Empties the batch for the next rows of the scan.
+     */
+    public void clear() {
+        size = 0;
+        selected = 0;
+        for (int column = 0; column < columnCount; column++) {
+            intsParsed[column] = false;
+        }
+    }
+
+    /**
+     Selects every row of the batch, before the filter narrows the selection.
+     */
+    public void selectAll() {
+        for (int i = 0; i < size; i++) {
+            selection[i] = i;
+        }
+        selected = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] selection() {
+        return selection;
+    }
+
+    public int selected() {
+        return selected;
+    }
+
+    public void setSelected(int selected) {
+        this.selected = selected;
+    }
+
+    public String line(int row) {
+        return lines[row];
+    }
+
+    public int[] starts(int column) {
+        return starts[column];
+    }
+
+    public int[] ends(int column) {
+        return ends[column];
+    }
+
+    public String value(int row, int column) {
+        return lines[row].substring(starts[column][row], ends[column][row]);
+    }
+
+    /**
+     Returns the values of an int column parsed as numbers, parsing them on first use in the batch.
+     @param column the position of the column
+     @return the numbers, meaningful where exactInts is true
+     */
+    public int[] ints(int column) {
+        parseInts(column);
+        return ints[column];
+    }
+
+    /**
+     Tells, per row, whether the value of an int column is written exactly the way Integer.toString writes its
+     number, so that comparing numbers gives the same answer as comparing the text.
+     @param column the position of the column
+     @return the flags
+     */
+    public boolean[] exactInts(int column) {
+        parseInts(column);
+        return exactInts[column];
+    }
+
+    public boolean isIntColumn(int column) {
+        return intColumns[column];
+    }
+
+    private void parseInts(int column) {
+        if (intsParsed[column]) return;
+        if (ints[column] == null) {
+            ints[column] = new int[CAPACITY];
+            exactInts[column] = new boolean[CAPACITY];
+        }
+        int[] values = ints[column];
+        boolean[] exact = exactInts[column];
+        int[] columnStarts = starts[column];
+        int[] columnEnds = ends[column];
+        for (int row = 0; row < size; row++) {
+            String line = lines[row];
+            int start = columnStarts[row];
+            int end = columnEnds[row];
+            boolean negative = start < end && line.charAt(start) == '-';
+            int digits = end - start - (negative ? 1 : 0);
+            int first = negative ? start + 1 : start;
+            // no sign alone, no leading zero, no "-0" and at most 10 digits, checked against overflow below
+            boolean valid = digits > 0 && digits <= 10 && (digits == 1 || line.charAt(first) != '0')
+                    && !(negative && digits == 1 && line.charAt(first) == '0');
+            long number = 0;
+            for (int i = first; valid && i < end; i++) {
+                char c = line.charAt(i);
+                if (c < '0' || c > '9') {
+                    valid = false;
+                } else {
+                    number = number * 10 + (c - '0');
+                }
+            }
+            if (negative) number = -number;
+            valid = valid && number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE;
+            values[row] = valid ? (int) number : 0;
+            exact[row] = valid;
+        }
+        intsParsed[column] = true;
+    }
+}
@@ -0,0 +1,64 @@
+package org.database.load;
+
+import org.database.query.QueryManager;
+import org.database.query.QueryUtils;
+import org.database.server.QueryClient;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ The LoadClient interface is one simulated client of the load driver, running its statements either
+ in the driver's own process or against a QueryServer.
+ */
+public interface LoadClient extends Closeable {
+    /**
+     Executes one statement.
+     @param query the statement to be executed
+     @return true if the statement succeeded, false otherwise
+     @throws IOException if the connection to the server fails
+     */
+    boolean execute(String query) throws IOException;
+
+    /**
+     Runs the statements against a QueryManager of the current process.
+     */
+    class InProcess implements LoadClient {
+        private final QueryManager queryManager = new QueryManager();
+        private final QueryUtils queryUtils = new QueryUtils();
+
+        @Override
+        public boolean execute(String query) {
+            return queryManager.runner(query, queryUtils) == 1 && queryManager.isLastQuerySuccessful();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     Runs the statements against a QueryServer over a socket.
+     */
+    class Remote implements LoadClient {
+        private final QueryClient queryClient;
+
+        public Remote(String host, int port, String username, String password, String answer) throws IOException {
+            queryClient = new QueryClient(host, port);
+            if (!queryClient.login(username, password, answer)) {
+                queryClient.close();
+                throw new IOException("Login refused for user " + username);
+            }
+        }
+
+        @Override
+        public boolean execute(String query) throws IOException {
+            return queryClient.execute(query).isSuccess();
+        }
+
+        @Override
+        public void close() throws IOException {
+            queryClient.close();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.database.load;
+
+import org.database.metrics.Histogram;
+import org.database.server.ConsoleRouter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ The LoadDriver class replays a configurable mix of statements from several concurrent clients and reports
+ throughput, latency percentiles and error rates per operation.
+
+ Usage: LoadDriver [--clients 8] [--duration 30] [--warmup 5] [--rows 10000]
+                   [--mix select=60,insert=20,update=10,delete=5,transaction=5]
+                   [--mode inprocess|socket] [--host localhost] [--port 5432]
+                   [--user name] [--password secret] [--answer answer]
+ */
+public class LoadDriver {
+    private final Map<String, String> options;
+    private final Map<Workload.Operation, Histogram> latencies = new EnumMap<>(Workload.Operation.class);
+    private final Map<Workload.Operation, LongAdder> errors = new EnumMap<>(Workload.Operation.class);
+    private volatile boolean measuring;
+    private volatile boolean running = true;
+
+    public LoadDriver(Map<String, String> options) {
+        this.options = options;
+        for (Workload.Operation operation : Workload.Operation.values()) {
+            latencies.put(operation, new Histogram());
+            errors.put(operation, new LongAdder());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        new LoadDriver(options).run();
+        System.exit(0);
+    }
+
+    /**
+     Prepares the workload, runs the clients for the warmup and measurement periods and prints the report.
+     @throws Exception if the workload cannot be prepared or a client cannot connect
+     */
+    public void run() throws Exception {
+        int clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        Workload workload = new Workload(Integer.parseInt(options.getOrDefault("rows", "10000")),
+                Workload.parseMix(options.getOrDefault("mix", "select=60,insert=20,update=10,delete=5,transaction=5")));
+
+        ConsoleRouter.install();
+        System.out.println("Loading " + workload.getCompanyTable() + " and " + workload.getPersonTable());
+        try (LoadClient loader = newClient()) {
+            ConsoleRouter.route(OutputStream.nullOutputStream());
+            workload.load(loader);
+        } finally {
+            ConsoleRouter.route(null);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch ready = new CountDownLatch(clients);
+        for (int i = 0; i < clients; i++) {
+            int clientIndex = i;
+            LoadClient client = newClient();
+            Thread thread = new Thread(() -> runClient(client, workload, clientIndex, clients, ready), "load-client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        ready.await();
+        Thread.sleep(warmup * 1000L);
+        measuring = true;
+        long start = System.nanoTime();
+        Thread.sleep(duration * 1000L);
+        measuring = false;
+        long elapsed = System.nanoTime() - start;
+        running = false;
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        report(clients, elapsed);
+    }
+
+    private LoadClient newClient() throws IOException {
+        if (options.getOrDefault("mode", "inprocess").equalsIgnoreCase("socket")) {
+            return new LoadClient.Remote(options.getOrDefault("host", "localhost"),
+                    Integer.parseInt(options.getOrDefault("port", "5432")),
+                    options.getOrDefault("user", ""), options.getOrDefault("password", ""),
+                    options.getOrDefault("answer", ""));
+        }
+        return new LoadClient.InProcess();
+    }
+
+    private void runClient(LoadClient client, Workload workload, int clientIndex, int clients, CountDownLatch ready) {
+        ConsoleRouter.route(OutputStream.nullOutputStream());
+        Random random = new Random(clientIndex);
+        int nextKey = Integer.MAX_VALUE / 2 + clientIndex;
+        ready.countDown();
+        try (client) {
+            while (running) {
+                Workload.Operation operation = workload.nextOperation(random);
+                List<String> statements = workload.statements(operation, random, nextKey);
+                nextKey += clients;
+
+                boolean success = true;
+                long start = System.nanoTime();
+                for (String statement : statements) {
+                    success &= client.execute(statement);
+                }
+                long elapsed = System.nanoTime() - start;
+                if (measuring) {
+                    latencies.get(operation).record(elapsed);
+                    if (!success) errors.get(operation).increment();
+                }
+            }
+        } catch (IOException e) {
+            ConsoleRouter.route(null);
+            System.out.println("Client " + clientIndex + " stopped: " + e.getMessage());
+        } finally {
+            ConsoleRouter.route(null);
+        }
+    }
+
+    private void report(int clients, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        Histogram total = new Histogram();
+        long totalErrors = 0;
+        System.out.println("Clients: " + clients + ", measured for " + String.format("%.1f", seconds) + " s");
+        System.out.println("Operation | count | ops/s | errors | error % | p50 ms | p99 ms | p99.9 ms | max ms");
+        for (Workload.Operation operation : Workload.Operation.values()) {
+            Histogram histogram = latencies.get(operation);
+            long errorCount = errors.get(operation).sum();
+            if (histogram.getCount() == 0) continue;
+            total.add(histogram);
+            totalErrors += errorCount;
+            System.out.println(format(operation.name(), histogram, errorCount, seconds));
+        }
+        System.out.println(format("TOTAL", total, totalErrors, seconds));
+    }
+
+    private static String format(String name, Histogram histogram, long errorCount, double seconds) {
+        long count = histogram.getCount();
+        return name + " | " + count
+                + " | " + String.format("%.1f", count / seconds)
+                + " | " + errorCount
+                + " | " + String.format("%.2f", count == 0 ? 0.0 : 100.0 * errorCount / count)
+                + " | " + millis(histogram.getValueAtPercentile(50))
+                + " | " + millis(histogram.getValueAtPercentile(99))
+                + " | " + millis(histogram.getValueAtPercentile(99.9))
+                + " | " + millis(histogram.getMax());
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+}
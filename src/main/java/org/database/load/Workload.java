@@ -0,0 +1,144 @@
+package org.database.load;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ The Workload class generates the schema, the initial data and the statement mix replayed by the load driver.
+ It creates a Company-like table and a person-like table whose names carry a random suffix, so every run
+ starts from fresh tables, and draws statements according to the configured weights.
+ */
+public class Workload {
+    public enum Operation {
+        SELECT,
+        INSERT,
+        UPDATE,
+        DELETE,
+        TRANSACTION
+    }
+
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    private final String companyTable;
+    private final String personTable;
+    private final int rows;
+    private final Map<Operation, Integer> weights;
+    private final int totalWeight;
+
+    public Workload(int rows, Map<Operation, Integer> weights) {
+        String suffix = randomSuffix(new Random());
+        this.companyTable = "load_company_" + suffix;
+        this.personTable = "load_person_" + suffix;
+        this.rows = rows;
+        this.weights = new EnumMap<>(weights);
+        this.totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     Parses a statement mix such as "select=60,insert=20,update=10,delete=5,transaction=5".
+     @param mix the comma-separated list of operation weights
+     @return the weight of every listed operation
+     */
+    public static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] keyValue = entry.split("=");
+            weights.put(Operation.valueOf(keyValue[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(keyValue[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     Creates the tables and fills them with the initial rows using multi-row inserts.
+     @param client the client used to run the statements
+     @throws IOException if a statement fails
+     */
+    public void load(LoadClient client) throws IOException {
+        run(client, "CREATE TABLE " + companyTable + " (id int primarykey, name varchar, city varchar, rank int)");
+        run(client, "CREATE TABLE " + personTable + " (id int primarykey, name varchar)");
+        for (int start = 0; start < rows; start += LOAD_BATCH_SIZE) {
+            List<String> companies = new ArrayList<>();
+            List<String> persons = new ArrayList<>();
+            for (int id = start; id < Math.min(rows, start + LOAD_BATCH_SIZE); id++) {
+                companies.add("(" + companyRow(id, id) + ")");
+                persons.add("(" + id + ",person" + id + ")");
+            }
+            run(client, "INSERT INTO " + companyTable + " VALUES " + String.join(",", companies));
+            run(client, "INSERT INTO " + personTable + " VALUES " + String.join(",", persons));
+        }
+    }
+
+    private void run(LoadClient client, String query) throws IOException {
+        if (!client.execute(query)) {
+            throw new IOException("Unable to prepare the workload: " + query);
+        }
+    }
+
+    /**
+     Draws the next operation according to the weights of the mix.
+     @param random the random generator of the calling client
+     @return the drawn operation
+     */
+    public Operation nextOperation(Random random) {
+        int draw = random.nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            draw -= entry.getValue();
+            if (draw < 0) return entry.getKey();
+        }
+        return Operation.SELECT;
+    }
+
+    /**
+     Builds the statements of one operation.
+     @param operation the operation to build
+     @param random the random generator of the calling client
+     @param newKey a primary key never used before, for the rows inserted by the operation
+     @return the statements to run, in order
+     */
+    public List<String> statements(Operation operation, Random random, int newKey) {
+        int key = random.nextInt(Math.max(1, rows));
+        switch (operation) {
+            case INSERT:
+                return List.of("INSERT INTO " + companyTable + " VALUES (" + companyRow(newKey, random.nextInt(1000)) + ")");
+            case UPDATE:
+                return List.of("UPDATE " + companyTable + " SET rank=" + random.nextInt(100) + " WHERE id=" + key);
+            case DELETE:
+                return List.of("DELETE FROM " + companyTable + " WHERE id=" + key);
+            case TRANSACTION:
+                return List.of("BEGIN TRANSACTION;",
+                        "INSERT INTO " + personTable + " VALUES (" + newKey + ",person" + newKey + ")",
+                        "UPDATE " + companyTable + " SET rank=" + random.nextInt(100) + " WHERE id=" + key,
+                        "END TRANSACTION;",
+                        "COMMIT;");
+            default:
+                return random.nextBoolean()
+                        ? List.of("SELECT * FROM " + companyTable + " WHERE id=" + key)
+                        : List.of("SELECT name FROM " + personTable + " WHERE id=" + key);
+        }
+    }
+
+    private static String companyRow(int id, int seed) {
+        return id + ",company" + id + ",city" + (seed % 50) + "," + (seed % 100);
+    }
+
+    private static String randomSuffix(Random random) {
+        StringBuilder suffix = new StringBuilder();
+        for (int i = 0; i < 6; i++) {
+            suffix.append((char) ('a' + random.nextInt(26)));
+        }
+        return suffix.toString();
+    }
+
+    public String getCompanyTable() {
+        return companyTable;
+    }
+
+    public String getPersonTable() {
+        return personTable;
+    }
+}
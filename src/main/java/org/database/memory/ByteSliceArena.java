@@ -0,0 +1,75 @@
+package org.database.memory;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The ByteSliceArena class stores byte strings, such as encoded keys, one after the other in off-heap chunks.
+ Each slice is prefixed with its length and known by its address: the chunk number in the high 32 bits and the
+ offset in the chunk in the low 32 bits. Slices are never freed one by one; the whole arena is freed at once.
+ */
+public class ByteSliceArena implements AutoCloseable {
+    private static final int CHUNK_BYTES = 1024 * 1024;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private ByteBuffer current;
+
+    /**
+     Copies a slice into the arena.
+     @param bytes the slice
+     @return the address of the slice
+     */
+    public long add(byte[] bytes) {
+        int needed = 4 + bytes.length;
+        if (current == null || current.remaining() < needed) {
+            current = OffHeapMemory.allocate(Math.max(CHUNK_BYTES, needed));
+            chunks.add(current);
+        }
+        long address = ((long) (chunks.size() - 1) << 32) | current.position();
+        current.putInt(bytes.length);
+        current.put(bytes);
+        return address;
+    }
+
+    /**
+     Compares a stored slice with the given bytes, without copying it back to the heap.
+     @param address the address of the stored slice
+     @param bytes the bytes to compare with
+     @return true if the slice holds exactly the given bytes
+     */
+    public boolean equals(long address, byte[] bytes) {
+        ByteBuffer chunk = chunks.get((int) (address >>> 32));
+        int offset = (int) address;
+        if (chunk.getInt(offset) != bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + 4 + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     Copies a stored slice back to the heap.
+     @param address the address of the slice
+     @return the bytes of the slice
+     */
+    public byte[] get(long address) {
+        ByteBuffer chunk = chunks.get((int) (address >>> 32));
+        int offset = (int) address;
+        byte[] bytes = new byte[chunk.getInt(offset)];
+        chunk.get(offset + 4, bytes);
+        return bytes;
+    }
+
+    /**
+     Gives the memory of every slice back. The arena must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        for (ByteBuffer chunk : chunks) {
+            OffHeapMemory.free(chunk);
+        }
+        chunks.clear();
+        current = null;
+    }
+}
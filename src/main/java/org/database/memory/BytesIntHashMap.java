@@ -0,0 +1,110 @@
+package org.database.memory;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ The BytesIntHashMap class maps byte string keys to int values in off-heap memory. The keys are kept in a
+ ByteSliceArena, and the open addressing table holds, per slot, the hash code of the key, its arena address plus one
+ (0 marks an empty slot) and its value, so that probing only reads the arena when the hash codes match.
+ */
+public class BytesIntHashMap implements AutoCloseable {
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+    private static final int SLOT_BYTES = 16;
+
+    private final ByteSliceArena arena = new ByteSliceArena();
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+
+    public BytesIntHashMap() {
+        this(1024);
+    }
+
+    /**
+     @param expectedSize the number of keys the map is sized for
+     */
+    public BytesIntHashMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+    }
+
+    /**
+     Returns the value of a key.
+     @param key the key
+     @return the value, or NO_VALUE if the key is not in the map
+     */
+    public int get(byte[] key) {
+        int slot = find(key, hash(key));
+        return slots.getLong(slot * SLOT_BYTES) == 0 ? NO_VALUE : slots.getInt(slot * SLOT_BYTES + 12);
+    }
+
+    /**
+     Adds a key unless it is already in the map.
+     @param key the key
+     @param value the value of the key
+     @return the value the key already had, or NO_VALUE if it was added
+     */
+    public int putIfAbsent(byte[] key, int value) {
+        int hash = hash(key);
+        int slot = find(key, hash);
+        int offset = slot * SLOT_BYTES;
+        if (slots.getLong(offset) != 0) return slots.getInt(offset + 12);
+        slots.putLong(offset, arena.add(key) + 1);
+        slots.putInt(offset + 8, hash);
+        slots.putInt(offset + 12, value);
+        if (++size * 2 > mask + 1) grow();
+        return NO_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     Gives the memory of the map and of its keys back. The map must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        OffHeapMemory.free(slots);
+        slots = null;
+        arena.close();
+    }
+
+    private int find(byte[] key, int hash) {
+        int slot = (int) OffHeapMemory.mix(hash) & mask;
+        while (true) {
+            int offset = slot * SLOT_BYTES;
+            long address = slots.getLong(offset);
+            if (address == 0 || (slots.getInt(offset + 8) == hash && arena.equals(address - 1, key))) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int hash(byte[] key) {
+        return Arrays.hashCode(key);
+    }
+
+    private void allocate(int capacity) {
+        slots = OffHeapMemory.allocate(capacity * SLOT_BYTES);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        ByteBuffer oldSlots = slots;
+        int oldCapacity = mask + 1;
+        allocate(oldCapacity * 2);
+        for (int i = 0; i < oldCapacity; i++) {
+            long address = oldSlots.getLong(i * SLOT_BYTES);
+            if (address == 0) continue;
+            int hash = oldSlots.getInt(i * SLOT_BYTES + 8);
+            int slot = (int) OffHeapMemory.mix(hash) & mask;
+            while (slots.getLong(slot * SLOT_BYTES) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots.putLong(slot * SLOT_BYTES, address);
+            slots.putInt(slot * SLOT_BYTES + 8, hash);
+            slots.putInt(slot * SLOT_BYTES + 12, oldSlots.getInt(i * SLOT_BYTES + 12));
+        }
+        OffHeapMemory.free(oldSlots);
+    }
+}
@@ -0,0 +1,113 @@
+package org.database.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ The LongIntHashMap class maps long keys to int values in off-heap memory, without boxing them. It uses open
+ addressing with linear probing over two direct buffers, one for the keys and one for the values, and doubles
+ them once they are half full. Key 0 marks an empty slot, so it is kept in a field of its own.
+ */
+public class LongIntHashMap implements AutoCloseable {
+    public static final int NO_VALUE = Integer.MIN_VALUE;
+
+    private ByteBuffer keys;
+    private ByteBuffer values;
+    private int mask;
+    private int size;
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(1024);
+    }
+
+    /**
+     @param expectedSize the number of keys the map is sized for
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1);
+    }
+
+    /**
+     Returns the value of a key.
+     @param key the key
+     @return the value, or NO_VALUE if the key is not in the map
+     */
+    public int get(long key) {
+        if (key == 0) return hasZeroKey ? zeroValue : NO_VALUE;
+        int slot = find(key);
+        return keys.getLong(slot * 8) == 0 ? NO_VALUE : values.getInt(slot * 4);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NO_VALUE;
+    }
+
+    /**
+     Adds a key unless it is already in the map.
+     @param key the key
+     @param value the value of the key
+     @return the value the key already had, or NO_VALUE if it was added
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == 0) {
+            if (hasZeroKey) return zeroValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            size++;
+            return NO_VALUE;
+        }
+        int slot = find(key);
+        if (keys.getLong(slot * 8) != 0) return values.getInt(slot * 4);
+        keys.putLong(slot * 8, key);
+        values.putInt(slot * 4, value);
+        if (++size * 2 > mask + 1) grow();
+        return NO_VALUE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     Gives the memory of the map back. The map must not be used afterwards.
+     */
+    @Override
+    public void close() {
+        OffHeapMemory.free(keys);
+        OffHeapMemory.free(values);
+        keys = null;
+        values = null;
+    }
+
+    private int find(long key) {
+        int slot = (int) OffHeapMemory.mix(key) & mask;
+        long slotKey;
+        while ((slotKey = keys.getLong(slot * 8)) != 0 && slotKey != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = OffHeapMemory.allocate(capacity * 8);
+        values = OffHeapMemory.allocate(capacity * 4);
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        ByteBuffer oldKeys = keys;
+        ByteBuffer oldValues = values;
+        int oldCapacity = mask + 1;
+        allocate(oldCapacity * 2);
+        for (int i = 0; i < oldCapacity; i++) {
+            long key = oldKeys.getLong(i * 8);
+            if (key == 0) continue;
+            int slot = find(key);
+            keys.putLong(slot * 8, key);
+            values.putInt(slot * 4, oldValues.getInt(i * 4));
+        }
+        OffHeapMemory.free(oldKeys);
+        OffHeapMemory.free(oldValues);
+    }
+}
@@ -0,0 +1,62 @@
+package org.database.memory;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ The OffHeapKeySet class is a set of column values kept off the heap, e.g. the primary keys of a table checked by
+ an INSERT. Values written as plain integers go to a LongIntHashMap, all others to a BytesIntHashMap, so that the
+ common integer keys take 12 bytes each and no object at all. A value such as "01" is not written the way its
+ number is, so it is kept as bytes and stays distinct from "1", as it is when values are compared as strings.
+ */
+public class OffHeapKeySet implements AutoCloseable {
+    private final LongIntHashMap numbers = new LongIntHashMap();
+    private final BytesIntHashMap strings = new BytesIntHashMap();
+
+    /**
+     Adds a value unless it is already in the set.
+     @param value the value
+     @return true if the value was added, false if it was already in the set
+     */
+    public boolean add(String value) {
+        Long number = asNumber(value);
+        if (number != null) return numbers.putIfAbsent(number, 1) == LongIntHashMap.NO_VALUE;
+        return strings.putIfAbsent(value.getBytes(StandardCharsets.UTF_8), 1) == BytesIntHashMap.NO_VALUE;
+    }
+
+    public boolean contains(String value) {
+        Long number = asNumber(value);
+        if (number != null) return numbers.containsKey(number);
+        return strings.get(value.getBytes(StandardCharsets.UTF_8)) != BytesIntHashMap.NO_VALUE;
+    }
+
+    public int size() {
+        return numbers.size() + strings.size();
+    }
+
+    @Override
+    public void close() {
+        numbers.close();
+        strings.close();
+    }
+
+    /**
+     Reads a value written exactly the way Long.toString writes its number.
+     */
+    private static Long asNumber(String value) {
+        int length = value.length();
+        if (length == 0 || length > 19) return null;
+        int start = value.charAt(0) == '-' ? 1 : 0;
+        if (start == length || (value.charAt(start) == '0' && length > start + 1)) return null;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') return null;
+        }
+        if (start == 1 && length == 2 && value.charAt(1) == '0') return null;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            // out of the range of a long
+            return null;
+        }
+    }
+}
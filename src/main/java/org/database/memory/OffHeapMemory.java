@@ -0,0 +1,96 @@
+package org.database.memory;
+
+import org.database.Utils.Config;
+import org.database.metrics.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ The OffHeapMemory class allocates the memory of the off-heap structures and accounts for it apart from the heap.
+ The bytes held by live structures and the highest amount held at once are reported as the offheap.reservedBytes
+ and offheap.peakBytes gauges in SHOW STATS.
+
+ The JVM only gives the memory of a direct buffer back once the buffer is garbage collected, and it runs a full
+ collection when -XX:MaxDirectMemorySize is reached. Freed buffers are therefore kept in a pool, up to
+ lightdb.offheap.poolBytes, and handed out again zeroed to the next allocation of the same size, so that the
+ structures built by every statement, such as the key set of an INSERT, reuse the same memory instead of
+ leaving it to the collector. The pooled bytes are reported as the offheap.pooledBytes gauge.
+ */
+public class OffHeapMemory {
+    private static final long POOL_BYTES = Config.getLong("offheap.poolBytes", 64L * 1024 * 1024);
+    private static final AtomicLong RESERVED = new AtomicLong();
+    private static final AtomicLong PEAK = new AtomicLong();
+    private static final AtomicLong POOLED = new AtomicLong();
+    private static final Map<Integer, Deque<ByteBuffer>> POOL = new ConcurrentHashMap<>();
+    private static final byte[] ZEROS = new byte[64 * 1024];
+
+    static {
+        MetricsRegistry.getInstance().registerGauge("offheap.reservedBytes", RESERVED::get);
+        MetricsRegistry.getInstance().registerGauge("offheap.peakBytes", PEAK::get);
+        MetricsRegistry.getInstance().registerGauge("offheap.pooledBytes", POOLED::get);
+    }
+
+    /**
+     Allocates zeroed off-heap memory.
+     @param bytes the size of the memory
+     @return a direct buffer of the given capacity, in the native byte order
+     */
+    public static ByteBuffer allocate(int bytes) {
+        Deque<ByteBuffer> pooled = POOL.get(bytes);
+        ByteBuffer buffer = pooled == null ? null : pooled.pollFirst();
+        if (buffer != null) {
+            POOLED.addAndGet(-bytes);
+            zero(buffer);
+        } else {
+            buffer = ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+        PEAK.accumulateAndGet(RESERVED.addAndGet(bytes), Math::max);
+        return buffer;
+    }
+
+    /**
+     Gives back a buffer returned by allocate, which must not be used anymore. The buffer goes to the pool, or to
+     the garbage collector when the pool is full.
+     @param buffer the buffer
+     */
+    public static void free(ByteBuffer buffer) {
+        if (buffer == null) return;
+        int bytes = buffer.capacity();
+        RESERVED.addAndGet(-bytes);
+        if (POOLED.addAndGet(bytes) > POOL_BYTES) {
+            POOLED.addAndGet(-bytes);
+            return;
+        }
+        POOL.computeIfAbsent(bytes, key -> new ConcurrentLinkedDeque<>()).offerFirst(buffer);
+    }
+
+    public static long getReservedBytes() {
+        return RESERVED.get();
+    }
+
+    private static void zero(ByteBuffer buffer) {
+        buffer.clear();
+        for (int offset = 0; offset < buffer.capacity(); offset += ZEROS.length) {
+            buffer.put(offset, ZEROS, 0, Math.min(ZEROS.length, buffer.capacity() - offset));
+        }
+    }
+
+    /**
+     Spreads the bits of a hash code, so that keys differing only in their high bits use different slots.
+     @param hash the hash code
+     @return the mixed hash code
+     */
+    static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+}
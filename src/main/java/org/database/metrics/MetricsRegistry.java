@@ -0,0 +1,229 @@
+package org.database.metrics;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ The MetricsRegistry class collects the runtime statistics of the database: a latency histogram and an error
+ count per statement type, rows scanned and returned, bytes read and written, and temporary file rewrites,
+ both in total and per table. A single shared instance is used by the whole process.
+ */
+public class MetricsRegistry {
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final Map<StatementType, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<StatementType, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, TableMetrics> tables = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final LongAdder compressionInput = new LongAdder();
+    private final LongAdder compressionOutput = new LongAdder();
+    private final LongAdder decompressedBytes = new LongAdder();
+    private final LongAdder decompressionNanos = new LongAdder();
+    private final TableMetrics total = new TableMetrics();
+    private ScheduledExecutorService dumpExecutor;
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     Records the execution of a statement.
+     @param type the type of the executed statement
+     @param elapsedNanos the time spent executing the statement, in nanoseconds
+     @param success false if the statement failed
+     */
+    public void recordStatement(StatementType type, long elapsedNanos, boolean success) {
+        latencies.computeIfAbsent(type, key -> new Histogram()).record(elapsedNanos);
+        if (!success) errors.computeIfAbsent(type, key -> new LongAdder()).increment();
+    }
+
+    public void recordRowsScanned(String tableName, long rows) {
+        total.rowsScanned.add(rows);
+        table(tableName).rowsScanned.add(rows);
+    }
+
+    public void recordRowsReturned(String tableName, long rows) {
+        total.rowsReturned.add(rows);
+        table(tableName).rowsReturned.add(rows);
+    }
+
+    public void recordBytesRead(String tableName, long bytes) {
+        total.bytesRead.add(bytes);
+        table(tableName).bytesRead.add(bytes);
+    }
+
+    public void recordBytesWritten(String tableName, long bytes) {
+        total.bytesWritten.add(bytes);
+        table(tableName).bytesWritten.add(bytes);
+    }
+
+    public void recordTempRewrite(String tableName) {
+        total.tempRewrites.increment();
+        table(tableName).tempRewrites.increment();
+    }
+
+    /**
+     Records the compression of a block of table data.
+     @param uncompressedBytes the size of the data before compression
+     @param compressedBytes the size of the data after compression
+     */
+    public void recordCompression(long uncompressedBytes, long compressedBytes) {
+        compressionInput.add(uncompressedBytes);
+        compressionOutput.add(compressedBytes);
+    }
+
+    /**
+     Records the decompression of a block of table data.
+     @param uncompressedBytes the size of the decompressed data
+     @param elapsedNanos the time spent decompressing, in nanoseconds
+     */
+    public void recordDecompression(long uncompressedBytes, long elapsedNanos) {
+        decompressedBytes.add(uncompressedBytes);
+        decompressionNanos.add(elapsedNanos);
+    }
+
+    /**
+     Adds to a named counter, such as the hits of a cache.
+     @param name the name of the counter
+     @param delta the value to add
+     */
+    public void recordCounter(String name, long delta) {
+        counters.computeIfAbsent(name, key -> new LongAdder()).add(delta);
+    }
+
+    /**
+     Registers a value read each time a report is built, such as the replication lag of a replica.
+     Registering a gauge again under the same name replaces it.
+     @param name the name of the gauge
+     @param gauge supplies the current value
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public Histogram getLatency(StatementType type) {
+        return latencies.get(type);
+    }
+
+    private TableMetrics table(String tableName) {
+        return tables.computeIfAbsent(tableName, key -> new TableMetrics());
+    }
+
+    /**
+     Builds a human readable report of every collected statistic.
+     @return the lines of the report
+     */
+    public List<String> snapshot() {
+        List<String> lines = new ArrayList<>();
+        lines.add("Statement | count | errors | mean ms | p50 ms | p99 ms | p99.9 ms | max ms");
+        for (StatementType type : StatementType.values()) {
+            Histogram histogram = latencies.get(type);
+            if (histogram == null) continue;
+            LongAdder errorCount = errors.get(type);
+            lines.add(type + " | " + histogram.getCount() + " | " + (errorCount == null ? 0 : errorCount.sum())
+                    + " | " + millis(histogram.getMean())
+                    + " | " + millis(histogram.getValueAtPercentile(50))
+                    + " | " + millis(histogram.getValueAtPercentile(99))
+                    + " | " + millis(histogram.getValueAtPercentile(99.9))
+                    + " | " + millis(histogram.getMax()));
+        }
+        lines.add("Table | rows scanned | rows returned | bytes read | bytes written | temp rewrites");
+        lines.add("*" + total.format());
+        for (Map.Entry<String, TableMetrics> entry : new TreeMap<>(tables).entrySet()) {
+            lines.add(entry.getKey() + entry.getValue().format());
+        }
+        if (compressionOutput.sum() > 0 || decompressedBytes.sum() > 0) {
+            long output = compressionOutput.sum();
+            long nanos = decompressionNanos.sum();
+            lines.add("Compression | input bytes | output bytes | ratio | decoded bytes | decode MB/s");
+            lines.add("* | " + compressionInput.sum() + " | " + output
+                    + " | " + String.format("%.2f", output == 0 ? 0.0 : (double) compressionInput.sum() / output)
+                    + " | " + decompressedBytes.sum()
+                    + " | " + String.format("%.1f", nanos == 0 ? 0.0 : decompressedBytes.sum() * 1000.0 / nanos));
+        }
+        if (!counters.isEmpty()) {
+            lines.add("Counter | value");
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+                lines.add(entry.getKey() + " | " + entry.getValue().sum());
+            }
+        }
+        if (!gauges.isEmpty()) {
+            lines.add("Gauge | value");
+            for (Map.Entry<String, LongSupplier> entry : new TreeMap<>(gauges).entrySet()) {
+                lines.add(entry.getKey() + " | " + entry.getValue().getAsLong());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     Starts writing the report to the given file at a fixed interval, replacing the previous content each time.
+     Calling this method again replaces the running schedule.
+     @param file the file receiving the report
+     @param intervalSeconds the number of seconds between two dumps, nothing is scheduled if not positive
+     */
+    public synchronized void startPeriodicDump(File file, long intervalSeconds) {
+        if (dumpExecutor != null) dumpExecutor.shutdownNow();
+        if (intervalSeconds <= 0) return;
+        dumpExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lightdb-stats-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleAtFixedRate(() -> dump(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     Writes the report to the given file.
+     @param file the file receiving the report
+     */
+    public void dump(File file) {
+        try (PrintWriter printWriter = new PrintWriter(new FileWriter(file))) {
+            printWriter.println("# " + LocalDateTime.now());
+            for (String line : snapshot()) {
+                printWriter.println(line);
+            }
+        } catch (IOException e) {
+            System.out.println("Unable to write statistics to " + file);
+        }
+    }
+
+    private static String millis(double nanos) {
+        return String.format("%.3f", nanos / 1_000_000.0);
+    }
+
+    private static class TableMetrics {
+        private final LongAdder rowsScanned = new LongAdder();
+        private final LongAdder rowsReturned = new LongAdder();
+        private final LongAdder bytesRead = new LongAdder();
+        private final LongAdder bytesWritten = new LongAdder();
+        private final LongAdder tempRewrites = new LongAdder();
+
+        private String format() {
+            return " | " + rowsScanned.sum() + " | " + rowsReturned.sum() + " | " + bytesRead.sum()
+                    + " | " + bytesWritten.sum() + " | " + tempRewrites.sum();
+        }
+    }
+}
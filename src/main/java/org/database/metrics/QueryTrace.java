@@ -0,0 +1,137 @@
+package org.database.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ The QueryTrace class captures how a single statement was executed: the tables it touched, the access path
+ that was chosen, the time and row count of each operator, and the temporary files it rewrote.
+ The trace of the running statement is bound to the executing thread, so the static recording methods
+ can be called from anywhere below the QueryManager and do nothing when no statement is being traced.
+ */
+public class QueryTrace {
+    private static final ThreadLocal<QueryTrace> CURRENT = new ThreadLocal<>();
+
+    private final String query;
+    private final QueryTrace parent;
+    private final Set<String> tables = new LinkedHashSet<>();
+    private final Set<String> accessPaths = new LinkedHashSet<>();
+    private final List<Operator> operators = new ArrayList<>();
+    private final List<String> tempFiles = new ArrayList<>();
+
+    private QueryTrace(String query, QueryTrace parent) {
+        this.query = query;
+        this.parent = parent;
+    }
+
+    /**
+     Starts tracing a statement on the current thread. A statement started while another one is traced
+     (e.g. the pending queries run by a COMMIT) gets its own trace and hands the thread back on end.
+     @param query the text of the statement
+     @return the new trace
+     */
+    public static QueryTrace begin(String query) {
+        QueryTrace trace = new QueryTrace(query, CURRENT.get());
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     Stops tracing the given statement and restores the trace of the enclosing statement, if any.
+     @param trace the trace returned by begin
+     */
+    public static void end(QueryTrace trace) {
+        if (trace.parent == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(trace.parent);
+        }
+    }
+
+    public static void table(String tableName) {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) trace.tables.add(tableName);
+    }
+
+    public static void accessPath(String accessPath) {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) trace.accessPaths.add(accessPath);
+    }
+
+    /**
+     Records the execution of one operator of the current statement.
+     @param name the name of the operator
+     @param elapsedNanos the time spent in the operator, in nanoseconds
+     @param rows the number of rows the operator processed
+     */
+    public static void operator(String name, long elapsedNanos, long rows) {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.operators.add(new Operator(name, elapsedNanos, rows));
+        }
+    }
+
+    public static void tempFile(String fileName) {
+        QueryTrace trace = CURRENT.get();
+        if (trace != null) trace.tempFiles.add(fileName);
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public List<String> getAccessPaths() {
+        return new ArrayList<>(accessPaths);
+    }
+
+    public List<Operator> getOperators() {
+        return new ArrayList<>(operators);
+    }
+
+    /**
+     Formats the trace as a single slow query log entry.
+     @param elapsedNanos the total time spent executing the statement, in nanoseconds
+     @return the log entry
+     */
+    public String format(long elapsedNanos) {
+        StringJoiner output = new StringJoiner(" | ");
+        output.add(String.format("%.3f ms", elapsedNanos / 1_000_000.0));
+        output.add(normalize(query));
+        output.add("tables=" + String.join(",", tables));
+        output.add("access=" + (accessPaths.isEmpty() ? "none" : String.join(",", accessPaths)));
+        StringJoiner operatorList = new StringJoiner("; ");
+        for (Operator operator : operators) {
+            operatorList.add(operator.name() + " " + String.format("%.3f", operator.elapsedNanos() / 1_000_000.0) + " ms rows=" + operator.rows());
+        }
+        output.add("operators=[" + operatorList + "]");
+        output.add("temp=[" + String.join(",", tempFiles) + "]");
+        return output.toString();
+    }
+
+    /**
+     Normalizes a statement by collapsing white space and replacing literal values with placeholders,
+     so that statements differing only in their values are logged identically.
+     @param query the text of the statement
+     @return the normalized statement
+     */
+    public static String normalize(String query) {
+        String normalized = query.trim().replaceAll("\\s+", " ");
+        normalized = normalized.replaceAll("\\s*=\\s*[^\\s,()]+", "=?");
+        if (normalized.matches("(?i).*\\svalues\\s.*")) {
+            normalized = normalized.replaceAll("\\(([^()]*)\\)", "(?)");
+        }
+        return normalized;
+    }
+
+    /**
+     One executed operator of a statement.
+     @param name the name of the operator
+     @param elapsedNanos the time spent in the operator, in nanoseconds
+     @param rows the number of rows the operator processed
+     */
+    public record Operator(String name, long elapsedNanos, long rows) {
+    }
+}
@@ -0,0 +1,89 @@
+package org.database.metrics;
+
+import org.database.Utils.Config;
+import org.database.Utils.Utils;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ The SlowQueryLog class appends the trace of every statement slower than a configurable threshold
+ to database/slow_query.log. Entries go through a bounded queue drained by a background thread, so a query
+ thread never waits for the log file; when the queue is full the entry is dropped and counted instead, reported
+ by the slowQuery.dropped gauge. The thread is started by the first slow statement.
+ */
+public class SlowQueryLog {
+    private static final SlowQueryLog INSTANCE = new SlowQueryLog(
+            Config.getString("slowQuery.file", Utils.getDataFileName("slow_query.log")),
+            Config.getLong("slowQuery.thresholdMillis", 1000),
+            (int) Config.getLong("slowQuery.queueSize", 1024));
+
+    private final String fileName;
+    private final long thresholdNanos;
+    private final BlockingQueue<String> queue;
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean writerStarted;
+
+    private SlowQueryLog(String fileName, long thresholdMillis, int queueSize) {
+        this.fileName = fileName;
+        this.thresholdNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1_000_000;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        MetricsRegistry.getInstance().registerGauge("slowQuery.dropped", this::getDroppedCount);
+    }
+
+    public static SlowQueryLog getInstance() {
+        return INSTANCE;
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     Logs the given statement if it ran for longer than the threshold. A negative threshold disables the log.
+     @param trace the trace of the finished statement
+     @param elapsedNanos the time spent executing the statement, in nanoseconds
+     */
+    public void submit(QueryTrace trace, long elapsedNanos) {
+        if (thresholdNanos < 0 || elapsedNanos < thresholdNanos) return;
+        if (!writerStarted) startWriter();
+        if (!queue.offer(LocalDateTime.now() + " | " + trace.format(elapsedNanos))) {
+            dropped.increment();
+        }
+    }
+
+    private synchronized void startWriter() {
+        if (writerStarted) return;
+        Thread writer = new Thread(this::drain, "lightdb-slow-query-log");
+        writer.setDaemon(true);
+        writer.start();
+        writerStarted = true;
+    }
+
+    private void drain() {
+        List<String> entries = new ArrayList<>();
+        while (true) {
+            try {
+                entries.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(entries);
+            try (PrintWriter printWriter = new PrintWriter(new FileWriter(fileName, true))) {
+                for (String entry : entries) {
+                    printWriter.println(entry);
+                }
+            } catch (IOException e) {
+                dropped.add(entries.size());
+            }
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.database.metrics;
+
+public enum StatementType {
+    CREATE,
+    SELECT,
+    INSERT,
+    UPDATE,
+    DELETE,
+    TRANSACTION,
+    SHOW,
+    ANALYZE,
+    EXPLAIN,
+    ALTER
+}
@@ -0,0 +1,123 @@
+package org.database.planner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ The ColumnStatistics class describes the values of one column as ANALYZE found them: the estimated number of
+ distinct values, the smallest and largest value and an equi-depth histogram, whose bounds split the sorted values
+ into buckets holding the same number of rows. A value repeated over several bounds fills whole buckets, which
+ tells the planner how frequent it is better than the number of distinct values does.
+ */
+public class ColumnStatistics {
+    private final String column;
+    private final String type;
+    private final long distinct;
+    private final List<String> bounds;
+
+    /**
+     @param column the name of the column
+     @param type the type of the column, int or varchar
+     @param distinct the estimated number of distinct values
+     @param bounds the histogram bounds in ascending order, the first and last being the smallest and largest value
+     */
+    public ColumnStatistics(String column, String type, long distinct, List<String> bounds) {
+        this.column = column;
+        this.type = type;
+        this.distinct = distinct;
+        this.bounds = bounds;
+    }
+
+    /**
+     Builds the statistics of a column from a sample of its values.
+     @param column the name of the column
+     @param type the type of the column, int or varchar
+     @param distinct the estimated number of distinct values of the whole column
+     @param sample the sampled values, sorted in place
+     @param buckets the number of histogram buckets
+     @return the statistics
+     */
+    public static ColumnStatistics build(String column, String type, long distinct, List<String> sample, int buckets) {
+        List<String> bounds = new ArrayList<>();
+        if (!sample.isEmpty()) {
+            sample.sort(comparator(type));
+            int count = Math.min(buckets, sample.size());
+            for (int i = 0; i <= count; i++) {
+                bounds.add(sample.get((int) ((long) i * (sample.size() - 1) / count)).trim());
+            }
+        }
+        return new ColumnStatistics(column, type, distinct, bounds);
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    public long getDistinct() {
+        return distinct;
+    }
+
+    /**
+     Estimates the fraction of rows whose value equals the given one, the way conditions compare values.
+     @param value the value of the condition
+     @return the estimated fraction, between 0 and 1
+     */
+    public double equalitySelectivity(String value) {
+        if (bounds.isEmpty() || distinct == 0) return 0;
+        Comparator<String> comparator = comparator(type);
+        String trimmed = value.trim();
+        if (comparator.compare(trimmed, bounds.get(0)) < 0 || comparator.compare(trimmed, bounds.get(bounds.size() - 1)) > 0) {
+            return 0;
+        }
+        int equalBounds = 0;
+        for (String bound : bounds) {
+            if (comparator.compare(trimmed, bound) == 0) equalBounds++;
+        }
+        double uniform = 1.0 / distinct;
+        if (equalBounds < 2) return uniform;
+        return Math.max(uniform, (equalBounds - 1) / (double) (bounds.size() - 1));
+    }
+
+    /**
+     Formats the statistics as one line of the statistics file.
+     @return the line
+     */
+    public String format() {
+        return column + "|" + type + "|" + distinct + "|" + String.join(",", bounds);
+    }
+
+    /**
+     Reads the statistics from a line written by format.
+     @param line the line
+     @return the statistics, or null if the line is malformed
+     */
+    public static ColumnStatistics parse(String line) {
+        String[] parts = line.split("\\|", -1);
+        if (parts.length != 4) return null;
+        try {
+            List<String> bounds = parts[3].isEmpty() ? List.of() : List.of(parts[3].split(","));
+            return new ColumnStatistics(parts[0], parts[1], Long.parseLong(parts[2]), bounds);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     Orders values of an int column by number, values that are not numbers last, and the others as strings
+     ignoring case.
+     */
+    private static Comparator<String> comparator(String type) {
+        if (!type.equals("int")) return String.CASE_INSENSITIVE_ORDER;
+        return Comparator.comparing(ColumnStatistics::asNumber, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    private static Long asNumber(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
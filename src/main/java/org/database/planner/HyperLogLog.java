@@ -0,0 +1,44 @@
+package org.database.planner;
+
+/**
+ The HyperLogLog class estimates the number of distinct values of a column in one pass and a fixed amount of
+ memory: 2^14 one-byte registers, giving a standard error of about 0.8%. Values are added by their BloomFilter
+ hash, so that values equal to a condition, trimmed and ignoring case, are counted once.
+ */
+public class HyperLogLog {
+    private static final int PRECISION = 14;
+    private static final int REGISTERS = 1 << PRECISION;
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /**
+     Adds a value given by its 64-bit hash.
+     @param hash the hash of the value
+     */
+    public void addHash(long hash) {
+        int register = (int) (hash >>> (64 - PRECISION));
+        // the marker bit bounds the count of leading zeros of the remaining bits
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        if (rank > registers[register]) registers[register] = (byte) rank;
+    }
+
+    /**
+     Returns the estimated number of distinct values added.
+     @return the estimate
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) zeros++;
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTERS);
+        double estimate = alpha * REGISTERS * REGISTERS / sum;
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            // few values leave registers empty, linear counting is more accurate then
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+        return Math.round(estimate);
+    }
+}
@@ -0,0 +1,107 @@
+package org.database.planner;
+
+import org.database.metrics.QueryTrace;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ The Plan class is the way the Planner chose to execute a SELECT: the equalities handed to the store of the table,
+ the access path they give, and the estimated rows and cumulative cost of each operator. The operators are named
+ like the ones the query handler records in the QueryTrace, scan, filter and aggregate, so that EXPLAIN ANALYZE
+ can put the actual rows and time of each next to its estimates.
+ */
+public class Plan {
+    private final String tableName;
+    private final TableStatistics statistics;
+    private final double tableRows;
+    private final Map<String, String> equalities;
+    private final List<String> indexes;
+    private final double scanRows;
+    private final double scanCost;
+    private final String conditions;
+    private final double resultRows;
+    private final boolean aggregate;
+    private final String groupBy;
+    private final double groups;
+
+    Plan(String tableName, TableStatistics statistics, double tableRows, Map<String, String> equalities, List<String> indexes,
+         double scanRows, double scanCost, String conditions, double resultRows, boolean aggregate, String groupBy, double groups) {
+        this.tableName = tableName;
+        this.statistics = statistics;
+        this.tableRows = tableRows;
+        this.equalities = equalities;
+        this.indexes = indexes;
+        this.scanRows = scanRows;
+        this.scanCost = scanCost;
+        this.conditions = conditions;
+        this.resultRows = resultRows;
+        this.aggregate = aggregate;
+        this.groupBy = groupBy;
+        this.groups = groups;
+    }
+
+    /**
+     Returns the equalities to hand to TableStore.scan, the ones of the WHERE clause the chosen access path uses.
+     @return the column values every matching row has
+     */
+    public Map<String, String> getEqualities() {
+        return equalities;
+    }
+
+    public String getAccessPath() {
+        return indexes.isEmpty() ? "full scan" : "index scan";
+    }
+
+    /**
+     Returns the estimated number of groups of an aggregate, to size its hash table.
+     @return the number of groups, at least 1
+     */
+    public int getEstimatedGroups() {
+        return (int) Math.max(1, Math.min(1 << 16, groups));
+    }
+
+    /**
+     Describes the plan as EXPLAIN prints it, one line per operator from the root down.
+     @param operators the operators recorded while executing the statement for EXPLAIN ANALYZE, or null
+     @return the lines
+     */
+    public List<String> explain(List<QueryTrace.Operator> operators) {
+        List<String> lines = new ArrayList<>();
+        double filterCost = scanCost + (conditions == null ? 0 : scanRows * Planner.FILTER_COST);
+        if (aggregate) {
+            double aggregateCost = filterCost + resultRows * Planner.AGGREGATE_COST;
+            lines.add(node("Aggregate" + (groupBy == null ? "" : " group by " + groupBy), aggregateCost, groups, "aggregate", operators));
+        }
+        if (conditions != null) {
+            lines.add(node("Filter " + conditions.trim(), filterCost, resultRows, "filter", operators));
+        }
+        String scan = indexes.isEmpty() ? "Full scan on " + tableName : "Index scan on " + tableName + " using " + String.join(", ", indexes);
+        lines.add(node(scan, scanCost, scanRows, "scan", operators));
+        for (int i = 1; i < lines.size(); i++) {
+            lines.set(i, "  ".repeat(i) + "-> " + lines.get(i));
+        }
+        if (statistics == null) {
+            lines.add("Statistics: none, " + Math.round(tableRows) + " rows estimated from the table size, run ANALYZE " + tableName);
+        } else {
+            lines.add("Statistics: " + statistics.getRowCount() + " rows analyzed "
+                    + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(statistics.getAnalyzedAt()))
+                    + ", " + Math.round(tableRows) + " rows estimated now");
+        }
+        return lines;
+    }
+
+    private static String node(String label, double cost, double rows, String operator, List<QueryTrace.Operator> operators) {
+        String line = label + "  (cost=" + String.format("%.2f", cost) + " rows=" + Math.round(rows) + ")";
+        if (operators == null) return line;
+        for (QueryTrace.Operator executed : operators) {
+            if (executed.name().equals(operator)) {
+                return line + " (actual rows=" + executed.rows() + " time=" + String.format("%.3f", executed.elapsedNanos() / 1_000_000.0) + " ms)";
+            }
+        }
+        return line + " (never executed)";
+    }
+}
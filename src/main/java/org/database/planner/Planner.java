@@ -0,0 +1,148 @@
+package org.database.planner;
+
+import org.database.Utils.Config;
+import org.database.query.QueryUtils;
+import org.database.storage.LsmTableStore;
+import org.database.storage.PartitionedTableStore;
+import org.database.storage.TableOptions;
+import org.database.storage.TableStores;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ The Planner class decides how a SELECT reads its table. The store of a table can narrow a scan with the
+ equalities of the WHERE clause: an LSM or memory table looks its primary key up, a compressed table reads only the blocks
+ whose key range holds it, a partitioned table reads only the partition of its partition column and a Bloom
+ filter skips the scan of a value it has never seen. The planner estimates, from the statistics saved by ANALYZE,
+ how many rows each of these reads and what it costs, and passes the store only the equalities worth using.
+
+ Costs are counted in rows read: reading and parsing a row costs 1, probing a Bloom filter or a key index costs
+ about as much as one row, and filtering or aggregating a row a fraction of it. Tables that were never analyzed
+ are planned from the size of their files and default selectivities.
+ */
+public class Planner {
+    static final int DEFAULT_ROW_BYTES = 32;
+    static final double ROW_COST = 1.0;
+    static final double PROBE_COST = 1.0;
+    static final double LOOKUP_COST = 4.0;
+    static final double FILTER_COST = 0.25;
+    static final double AGGREGATE_COST = 0.25;
+    private static final double DEFAULT_EQUALITY_SELECTIVITY = 0.005;
+    private static final double DEFAULT_PRESENCE = 0.5;
+    private static final int DEFAULT_GROUPS = 200;
+    private static final long BLOCK_BYTES = Config.getLong("compression.blockBytes", 64 * 1024);
+
+    /**
+     Plans the read of a table.
+     @param tableName the name of the table
+     @param conditions the conditions of the WHERE clause, or null
+     @param groupBy the column the rows are grouped by, null for a plain SELECT or an aggregate of all rows
+     @param aggregate true to plan an aggregate SELECT
+     @return the plan
+     @throws IOException if the metadata, options or statistics of the table cannot be read
+     */
+    public static Plan plan(String tableName, String conditions, String groupBy, boolean aggregate) throws IOException {
+        QueryUtils queryUtils = new QueryUtils();
+        List<String> columns = new ArrayList<>(queryUtils.getMetaData(tableName).keySet());
+        String primaryKeyField = queryUtils.getPrimaryKeyField();
+        TableOptions options = TableOptions.load(tableName);
+        TableStatistics statistics = TableStatistics.load(tableName);
+        long tableBytes = TableStatistics.tableBytes(tableName);
+        double tableRows = statistics == null ? tableBytes / (double) DEFAULT_ROW_BYTES : statistics.estimateRows(tableBytes);
+        double rowBytes = tableRows < 1 ? DEFAULT_ROW_BYTES : Math.max(1, tableBytes / tableRows);
+
+        Map<String, String> candidates = queryUtils.getEqualityConditions(conditions);
+        Map<String, String> equalities = new LinkedHashMap<>();
+        List<String> indexes = new ArrayList<>();
+        double readRows = tableRows;
+        double probeCost = 0;
+
+        String key = primaryKeyField == null ? null : candidates.get(primaryKeyField);
+        if (key != null && "lsm".equals(options.get(TableOptions.ENGINE)) && LsmTableStore.isCaseless(key)) {
+            equalities.put(primaryKeyField, key);
+            indexes.add("primary key lookup");
+            readRows = Math.min(readRows, 1);
+            probeCost += LOOKUP_COST;
+        } else if (key != null && "memory".equals(options.get(TableOptions.ENGINE)) && LsmTableStore.isCaseless(key)) {
+            equalities.put(primaryKeyField, key);
+            indexes.add("primary key hash lookup");
+            readRows = Math.min(readRows, 1);
+            probeCost += PROBE_COST;
+        } else if (key != null && "deflate".equals(options.get(TableOptions.COMPRESSION))) {
+            equalities.put(primaryKeyField, key);
+            indexes.add("block index");
+            readRows = Math.min(readRows, BLOCK_BYTES / rowBytes);
+            probeCost += LOOKUP_COST;
+        }
+
+        String partitionColumn = options.get(TableOptions.PARTITION_COLUMN);
+        if (options.get(TableOptions.PARTITION) != null && candidates.containsKey(partitionColumn)) {
+            equalities.put(partitionColumn, candidates.get(partitionColumn));
+            indexes.add("partition pruning");
+            readRows /= PartitionedTableStore.partitionCount(options);
+        }
+
+        for (String column : TableStores.bloomFilteredColumns(options, columns, primaryKeyField)) {
+            String value = candidates.get(column);
+            if (value == null) continue;
+            // probing only pays off when the value is likely missing, a present value is scanned anyway
+            double presence = presence(statistics, column, value, tableRows);
+            if ((1 - presence) * readRows * ROW_COST > PROBE_COST) {
+                equalities.put(column, value);
+                indexes.add("bloom filter on " + column);
+                readRows *= presence;
+                probeCost += PROBE_COST;
+            }
+        }
+
+        double resultRows = Math.min(readRows, tableRows * selectivity(statistics, conditions));
+        double groups = 0;
+        if (aggregate) {
+            ColumnStatistics groupColumn = statistics == null || groupBy == null ? null : statistics.getColumn(groupBy);
+            groups = groupBy == null ? 1 : groupColumn == null ? DEFAULT_GROUPS : groupColumn.getDistinct();
+            groups = Math.max(1, Math.min(groups, Math.ceil(resultRows)));
+        }
+        return new Plan(tableName, statistics, tableRows, equalities, indexes, readRows, probeCost + readRows * ROW_COST,
+                conditions, resultRows, aggregate, groupBy, groups);
+    }
+
+    /**
+     Estimates the fraction of rows matching the conditions, following the AND/OR rules of
+     QueryUtils.handleAndOrConditions and assuming conditions on different columns are independent.
+     */
+    static double selectivity(TableStatistics statistics, String conditions) {
+        if (conditions == null) return 1;
+        conditions = conditions.trim();
+        if (conditions.contains("and")) {
+            String[] conditionsArr = conditions.split("and", 2);
+            return conditionSelectivity(statistics, conditionsArr[0]) * conditionSelectivity(statistics, conditionsArr[1]);
+        } else if (conditions.contains("or")) {
+            String[] conditionsArr = conditions.split("or", 2);
+            double first = conditionSelectivity(statistics, conditionsArr[0]);
+            double second = conditionSelectivity(statistics, conditionsArr[1]);
+            return first + second - first * second;
+        }
+        return conditionSelectivity(statistics, conditions);
+    }
+
+    private static double conditionSelectivity(TableStatistics statistics, String condition) {
+        String[] parts = condition.split("=", 2);
+        if (parts.length < 2) return 1;
+        ColumnStatistics column = statistics == null ? null : statistics.getColumn(parts[0].trim());
+        return column == null ? DEFAULT_EQUALITY_SELECTIVITY : column.equalitySelectivity(parts[1]);
+    }
+
+    /**
+     Estimates the probability that a table holds a value in a column: close to 1 when the statistics expect at
+     least one matching row, and the expected number of matching rows below that.
+     */
+    private static double presence(TableStatistics statistics, String column, String value, double tableRows) {
+        ColumnStatistics columnStatistics = statistics == null ? null : statistics.getColumn(column);
+        if (columnStatistics == null) return DEFAULT_PRESENCE;
+        return Math.min(1, tableRows * columnStatistics.equalitySelectivity(value));
+    }
+}
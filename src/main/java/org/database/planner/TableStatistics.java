@@ -0,0 +1,202 @@
+package org.database.planner;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.query.QueryUtils;
+import org.database.storage.BloomFilter;
+import org.database.storage.TableStores;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ The TableStatistics class holds what ANALYZE found about a table: its number of rows, the size of its files and
+ the ColumnStatistics of each column. They are saved in name_stats.txt next to the metadata of the table, and
+ kept in memory until the file changes.
+
+ The distinct values of a column are counted over every row with a HyperLogLog, while the histograms are built
+ from a uniform sample of lightdb.planner.sampleRows rows, so analyzing a large table takes one scan and bounded
+ memory.
+ */
+public class TableStatistics {
+    private static final int SAMPLE_ROWS = (int) Math.max(100, Config.getLong("planner.sampleRows", 30000));
+    private static final int BUCKETS = (int) Math.max(1, Config.getLong("planner.histogramBuckets", 32));
+    private static final Map<String, TableStatistics> LOADED = new ConcurrentHashMap<>();
+
+    private final long rowCount;
+    private final long tableBytes;
+    private final long analyzedAt;
+    private final Map<String, ColumnStatistics> columns;
+    private long fileModified;
+
+    private TableStatistics(long rowCount, long tableBytes, long analyzedAt, Map<String, ColumnStatistics> columns) {
+        this.rowCount = rowCount;
+        this.tableBytes = tableBytes;
+        this.analyzedAt = analyzedAt;
+        this.columns = columns;
+    }
+
+    /**
+     Scans a table and computes its statistics. Called while the table lock is held.
+     @param tableName the name of the table
+     @return the statistics
+     @throws IOException if an I/O error occurs while reading the table
+     */
+    public static TableStatistics collect(String tableName) throws IOException {
+        Map<String, String> fieldEntry = new QueryUtils().getMetaData(tableName);
+        List<String> names = new ArrayList<>(fieldEntry.keySet());
+        HyperLogLog[] distinct = new HyperLogLog[names.size()];
+        for (int i = 0; i < distinct.length; i++) {
+            distinct[i] = new HyperLogLog();
+        }
+        List<String[]> sample = new ArrayList<>();
+        long[] rows = new long[1];
+        TableStores.get(tableName).scan(Map.of(), line -> {
+            String[] rowValues = line.split("\\|");
+            for (int i = 0; i < distinct.length; i++) {
+                distinct[i].addHash(BloomFilter.hash(i < rowValues.length ? rowValues[i] : ""));
+            }
+            // reservoir sampling keeps each row seen so far with the same probability
+            long row = rows[0]++;
+            if (row < SAMPLE_ROWS) {
+                sample.add(rowValues);
+            } else {
+                long slot = ThreadLocalRandom.current().nextLong(row + 1);
+                if (slot < SAMPLE_ROWS) sample.set((int) slot, rowValues);
+            }
+            return true;
+        });
+
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        for (int i = 0; i < names.size(); i++) {
+            List<String> values = new ArrayList<>(sample.size());
+            for (String[] rowValues : sample) {
+                values.add(i < rowValues.length ? rowValues[i] : "");
+            }
+            long distinctValues = rows[0] == 0 ? 0 : Math.max(1, Math.min(rows[0], distinct[i].estimate()));
+            String name = names.get(i);
+            columns.put(name, ColumnStatistics.build(name, fieldEntry.get(name), distinctValues, values, BUCKETS));
+        }
+        return new TableStatistics(rows[0], tableBytes(tableName), System.currentTimeMillis(), columns);
+    }
+
+    /**
+     Returns the saved statistics of a table.
+     @param tableName the name of the table
+     @return the statistics, or null if the table was never analyzed
+     @throws IOException if an I/O error occurs while reading the statistics
+     */
+    public static TableStatistics load(String tableName) throws IOException {
+        File file = new File(Utils.getFileName(tableName, FileTypes.TABLE_STATISTICS));
+        String key = file.getPath();
+        if (!file.exists()) {
+            LOADED.remove(key);
+            return null;
+        }
+        TableStatistics statistics = LOADED.get(key);
+        long modified = file.lastModified();
+        if (statistics != null && statistics.fileModified == modified) return statistics;
+
+        long rowCount = 0;
+        long tableBytes = 0;
+        long analyzedAt = 0;
+        Map<String, ColumnStatistics> columns = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] keyValue = line.split("\\|", 2);
+            if (keyValue.length < 2) continue;
+            switch (keyValue[0]) {
+                case "rows" -> rowCount = Long.parseLong(keyValue[1]);
+                case "bytes" -> tableBytes = Long.parseLong(keyValue[1]);
+                case "analyzedat" -> analyzedAt = Long.parseLong(keyValue[1]);
+                case "column" -> {
+                    ColumnStatistics column = ColumnStatistics.parse(keyValue[1]);
+                    if (column != null) columns.put(column.getColumn(), column);
+                }
+                default -> {
+                    // written by a later version, ignored
+                }
+            }
+        }
+        statistics = new TableStatistics(rowCount, tableBytes, analyzedAt, columns);
+        statistics.fileModified = modified;
+        LOADED.put(key, statistics);
+        return statistics;
+    }
+
+    /**
+     Saves the statistics of a table, replacing the previous ones.
+     @param tableName the name of the table
+     @throws IOException if an I/O error occurs while writing the statistics
+     */
+    public void save(String tableName) throws IOException {
+        File file = new File(Utils.getFileName(tableName, FileTypes.TABLE_STATISTICS));
+        File tempFile = new File(file.getPath() + "-temp");
+        try (PrintWriter printWriter = new PrintWriter(new FileWriter(tempFile))) {
+            printWriter.println("rows|" + rowCount);
+            printWriter.println("bytes|" + tableBytes);
+            printWriter.println("analyzedat|" + analyzedAt);
+            for (ColumnStatistics column : columns.values()) {
+                printWriter.println("column|" + column.format());
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOADED.remove(file.getPath());
+    }
+
+    /**
+     Estimates the number of rows the table holds now, scaling the analyzed row count by how much its files
+     grew or shrank since.
+     @param currentBytes the current size of the files of the table
+     @return the estimated number of rows
+     */
+    public double estimateRows(long currentBytes) {
+        if (tableBytes == 0 || rowCount == 0) return currentBytes / (double) Planner.DEFAULT_ROW_BYTES;
+        return rowCount * (currentBytes / (double) tableBytes);
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getAnalyzedAt() {
+        return analyzedAt;
+    }
+
+    /**
+     Returns the statistics of a column.
+     @param column the name of the column
+     @return the statistics, or null if the column was not analyzed
+     */
+    public ColumnStatistics getColumn(String column) {
+        return columns.get(column);
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    /**
+     Sums the sizes of the files holding the rows of a table.
+     @param tableName the name of the table
+     @return the size in bytes
+     @throws IOException if the store of the table cannot be opened
+     */
+    public static long tableBytes(String tableName) throws IOException {
+        long bytes = 0;
+        for (File file : TableStores.get(tableName).files()) {
+            bytes += file.length();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,182 @@
+package org.database.query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ The Aggregate class is one field of an aggregate SELECT query: either an aggregate function such as COUNT(*),
+ SUM(col), MIN(col), MAX(col) or AVG(col), or the plain GROUP BY column. Its accumulator collects the values
+ of one group, either from table rows or from partial results computed elsewhere, e.g. on the shards.
+ */
+public class Aggregate {
+    public static final String COUNT = "count";
+    public static final String SUM = "sum";
+    public static final String MIN = "min";
+    public static final String MAX = "max";
+    public static final String AVG = "avg";
+
+    private static final Pattern FUNCTION_PATTERN = Pattern.compile(
+            "([a-zA-Z_]+)\\s*\\(\\s*(\\*|[a-zA-Z_]+)\\s*\\)"
+    );
+
+    private final String function;
+    private final String column;
+
+    private Aggregate(String function, String column) {
+        this.function = function;
+        this.column = column;
+    }
+
+    /**
+     Parses the field list of an aggregate SELECT query.
+     @param fields the comma-separated fields, e.g. "city, count(*), avg(salary)"
+     @return the parsed fields, or null if a field is neither a supported function nor a column name
+     */
+    public static List<Aggregate> parse(String fields) {
+        List<Aggregate> aggregates = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            field = field.trim();
+            Matcher matcher = FUNCTION_PATTERN.matcher(field);
+            if (matcher.matches()) {
+                String function = matcher.group(1).toLowerCase(Locale.ROOT);
+                if (!List.of(COUNT, SUM, MIN, MAX, AVG).contains(function)) return null;
+                if (!function.equals(COUNT) && matcher.group(2).equals("*")) return null;
+                aggregates.add(new Aggregate(function, matcher.group(2)));
+            } else if (field.matches("[a-zA-Z_]+")) {
+                aggregates.add(new Aggregate(null, field));
+            } else {
+                return null;
+            }
+        }
+        return aggregates;
+    }
+
+    public boolean isFunction() {
+        return function != null;
+    }
+
+    public String getFunction() {
+        return function;
+    }
+
+    public String getColumn() {
+        return column;
+    }
+
+    /**
+     Returns the functions computing the partial results this field is merged from; AVG is computed from
+     the partial SUM and COUNT of its column.
+     @return the partial functions, e.g. "sum" and "count" for "avg(salary)", empty for the GROUP BY column
+     */
+    public List<String> partialFunctions() {
+        if (!isFunction()) return List.of();
+        if (function.equals(AVG)) return List.of(SUM, COUNT);
+        return List.of(function);
+    }
+
+    public Accumulator newAccumulator() {
+        return new Accumulator();
+    }
+
+    @Override
+    public String toString() {
+        return isFunction() ? function + "(" + column + ")" : column;
+    }
+
+    /**
+     The Accumulator class holds the running value of an aggregate field for one group.
+     */
+    public class Accumulator {
+        private long count;
+        private double sum;
+        private boolean hasSum;
+        private boolean integral = true;
+        private String min;
+        private String max;
+        private String value;
+
+        /**
+         Adds the value of one table row.
+         @param rowValue the value of the column of the field, ignored by COUNT(*)
+         */
+        public void add(String rowValue) {
+            count++;
+            if (function == null) {
+                value = rowValue;
+                return;
+            }
+            if (rowValue == null || function.equals(COUNT)) return;
+            if (function.equals(SUM) || function.equals(AVG)) addToSum(rowValue);
+            if (min == null || compare(rowValue, min) < 0) min = rowValue;
+            if (max == null || compare(rowValue, max) > 0) max = rowValue;
+        }
+
+        /**
+         Merges a partial result computed by one of the functions returned by partialFields.
+         @param partialFunction the function that computed the partial result
+         @param partialValue the partial result, "null" when it covered no rows
+         */
+        public void combine(String partialFunction, String partialValue) {
+            if (function == null) {
+                value = partialValue;
+                return;
+            }
+            if (partialValue == null || partialValue.equals("null")) return;
+            switch (partialFunction) {
+                case COUNT -> count += Long.parseLong(partialValue);
+                case SUM -> addToSum(partialValue);
+                case MIN -> {
+                    if (min == null || compare(partialValue, min) < 0) min = partialValue;
+                }
+                case MAX -> {
+                    if (max == null || compare(partialValue, max) > 0) max = partialValue;
+                }
+                default -> throw new IllegalArgumentException("Unknown aggregate " + partialFunction);
+            }
+        }
+
+        /**
+         Returns the final value of the field for the group.
+         @return the value, "null" for SUM, MIN, MAX and AVG over no values
+         */
+        public String result() {
+            if (function == null) return value;
+            return switch (function) {
+                case COUNT -> String.valueOf(count);
+                case SUM -> hasSum ? formatNumber(sum, integral) : "null";
+                case MIN -> String.valueOf(min);
+                case MAX -> String.valueOf(max);
+                default -> count == 0 ? "null" : formatNumber(sum / count, false);
+            };
+        }
+
+        private void addToSum(String number) {
+            hasSum = true;
+            Double parsed = QueryUtils.doubleValueParser(number.trim());
+            if (parsed == null) return;
+            sum += parsed;
+            if (integral && !number.trim().matches("-?\\d+")) integral = false;
+        }
+    }
+
+    /**
+     Compares two values the way MIN and MAX do: as numbers when both are numbers, as text otherwise.
+     @param first the first value
+     @param second the second value
+     @return a negative number, zero or a positive number as the first value is lower, equal or greater
+     */
+    public static int compare(String first, String second) {
+        Double firstNumber = QueryUtils.doubleValueParser(first.trim());
+        Double secondNumber = QueryUtils.doubleValueParser(second.trim());
+        if (firstNumber != null && secondNumber != null) return Double.compare(firstNumber, secondNumber);
+        return first.compareTo(second);
+    }
+
+    private static String formatNumber(double number, boolean integral) {
+        if (integral && Math.abs(number) < 1e15) return String.valueOf((long) number);
+        return String.valueOf(number);
+    }
+}
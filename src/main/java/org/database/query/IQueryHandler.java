@@ -1,11 +1,21 @@
 package org.database.query;
 
-import java.io.IOException;
+import java.util.List;
 
 public interface IQueryHandler {
     public boolean createQuery(String tableName, String typeColumns);
-    public boolean selectQuery(String tableName, String fields, String conditions) throws IOException;
+    public boolean createQuery(String tableName, String typeColumns, String options);
+    public boolean selectQuery(String tableName, String fields, String conditions);
+    public boolean aggregateQuery(String tableName, String fields, String conditions, String groupBy);
     public boolean insertQuery(String tableName, String values);
+    public boolean insertBatchQuery(String tableName, List<String> valuesList);
     public boolean updateQuery(String tableName, String values, String conditions);
     public boolean deleteQuery(String tableName, String conditions);
+    public boolean analyzeQuery(String tableName);
+    public boolean explainSelectQuery(String tableName, String fields, String conditions, boolean analyze);
+    public boolean explainAggregateQuery(String tableName, String fields, String conditions, String groupBy, boolean analyze);
+    public boolean createViewQuery(String viewName, String tableName, String fields, String conditions, String groupBy);
+    public boolean alterAddColumnQuery(String tableName, String column, String type, String defaultValue);
+    public boolean alterDropColumnQuery(String tableName, String column);
+    public boolean alterInMemoryQuery(String tableName);
 }
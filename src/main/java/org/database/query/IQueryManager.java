@@ -1,5 +1,11 @@
 package org.database.query;
 
+import java.util.List;
+
 public interface IQueryManager {
     int runner(String query, QueryUtils queryUtils);
+
+    int[] executeBatch(List<String> queries, QueryUtils queryUtils);
+
+    boolean isLastQuerySuccessful();
 }
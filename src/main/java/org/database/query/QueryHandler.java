@@ -2,13 +2,43 @@ package org.database.query;
 
 import org.database.Utils.FileTypes;
 import org.database.Utils.Utils;
+import org.database.cache.QueryResultCache;
+import org.database.cache.TableVersions;
+import org.database.execution.BatchAggregation;
+import org.database.execution.BatchFilter;
+import org.database.execution.BatchProjection;
+import org.database.execution.RowBatch;
+import org.database.memory.OffHeapKeySet;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+import org.database.planner.Plan;
+import org.database.planner.Planner;
+import org.database.planner.TableStatistics;
+import org.database.replication.ChangeLog;
+import org.database.storage.TableOptions;
+import org.database.storage.TableSchema;
+import org.database.storage.TableStore;
+import org.database.storage.TableStores;
+import org.database.view.MaterializedView;
+import org.database.view.MaterializedViews;
+import org.database.view.RowChanges;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
 
 public class QueryHandler implements IQueryHandler {
 
     QueryUtils queryUtils = new QueryUtils();
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    QueryResultCache resultCache = QueryResultCache.getInstance();
+
+    private static final RowChanges REJECTED = new RowChanges();
 
     /**
      Creates a database query for creating a table with the specified table name and column definitions.
@@ -18,13 +48,52 @@ public class QueryHandler implements IQueryHandler {
      */
     @Override
     public boolean createQuery(String tableName, String typeColumns) {
+        return createQuery(tableName, typeColumns, null);
+    }
+
+    /**
+     Creates a database query for creating a table with the specified column definitions and storage options.
+     @param tableName the name of the table to be created
+     @param typeColumns a string representing the column definitions with their data types and constraints
+     @param options a string of space-separated KEY=VALUE storage options such as COMPRESSION=DEFLATE, or null
+     @return true if the query is successfully created, false otherwise
+     */
+    @Override
+    public boolean createQuery(String tableName, String typeColumns, String options) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            return markDirty(tableName) && createTable(tableName, typeColumns, options)
+                    && logChange(tableName, "create table " + tableName + " (" + typeColumns + ")" + (options == null ? "" : " " + options));
+        } finally {
+            TableStores.invalidate(tableName);
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    private boolean createTable(String tableName, String typeColumns, String options) {
         File tableFile = new File(Utils.getFileName(tableName, FileTypes.TABLE));
         if(tableFile.exists()) {
             System.out.println("Table not exists");
             return false;
         }
+        TableOptions tableOptions = TableOptions.parse(options);
+        List<String> columns = new ArrayList<>();
+        String primaryKeyField = null;
+        for(String field: typeColumns.split(",")) {
+            String[] definition = field.trim().split("\\s+");
+            columns.add(definition[0]);
+            if(definition.length > 2 && definition[2].equalsIgnoreCase("primarykey")) primaryKeyField = definition[0];
+        }
+        String invalidOption = TableStores.validate(tableOptions, columns, primaryKeyField);
+        if(invalidOption != null) {
+            System.out.println("CREATE operation failed!\n" + invalidOption);
+            return false;
+        }
         try {
             tableFile.createNewFile();
+            tableOptions.save(tableName);
 
             File tableMetaFile = new File(Utils.getFileName(tableName, FileTypes.META_TABLE));
 
@@ -58,6 +127,25 @@ public class QueryHandler implements IQueryHandler {
      */
     @Override
     public boolean selectQuery(String tableName, String fields, String conditions) {
+        Lock lock = TableLocks.readLock(tableName);
+        lock.lock();
+        try {
+            return selectRows(tableName, fields, conditions, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     Selects the matching rows of a table and prints them, or only counts them for EXPLAIN ANALYZE.
+     @param tableName the name of the table to select data from
+     @param fields a string representing the fields to be included in the SELECT statement
+     @param conditions a string representing the conditions to be applied in the WHERE clause
+     @param explained the plan printed by EXPLAIN ANALYZE, which is executed without the result cache and without
+     printing rows, or null to plan and run the statement
+     @return true if the rows are selected, false otherwise
+     */
+    private boolean selectRows(String tableName, String fields, String conditions, Plan explained) {
         File table = new File(Utils.getFileName(tableName, FileTypes.TABLE));
         if (!table.exists()) {
             System.out.println("Table " + tableName + " does not exist");
@@ -68,24 +156,693 @@ public class QueryHandler implements IQueryHandler {
             if (!queryUtils.validateSelectQueryFields(fields, fieldEntry)) {
                 return false;
             }
-            BufferedReader br = new BufferedReader(new FileReader(table));
-            String st;
-            while ((st = br.readLine()) != null) {
-                List<String> rowValues = List.of(st.split("\\|"));
-                Map<String, String> row = createRowMap(fieldEntry, rowValues);
-                boolean validCondition = queryUtils.handleAndOrConditions(row, conditions);
-
-                if (validCondition) {
-                    Utils.print(fields, row);
+            QueryTrace.table(tableName);
+            String cacheKey = QueryResultCache.key(tableName, fields, conditions);
+            if (explained == null && printCachedResult(cacheKey, tableName)) {
+                return true;
+            }
+            long tableVersion = TableVersions.get(tableName);
+            List<String> resultLines = explained == null && resultCache.isEnabled() ? new ArrayList<>() : null;
+
+            Plan plan = explained == null ? Planner.plan(tableName, conditions, null, false) : explained;
+            QueryTrace.accessPath(plan.getAccessPath());
+            List<String> columns = new ArrayList<>(fieldEntry.keySet());
+            BatchFilter filter = BatchFilter.compile(conditions, columns);
+            BatchProjection projection = new BatchProjection(fields, columns);
+            RowBatch batch = new RowBatch(new ArrayList<>(fieldEntry.values()));
+            // filter, project and print the rows one batch at a time
+            long[] rowsScanned = new long[1];
+            long[] rowsReturned = new long[1];
+            long[] filterNanos = new long[1];
+            long[] projectNanos = new long[1];
+            Runnable flush = () -> {
+                long filterStart = System.nanoTime();
+                batch.selectAll();
+                if (filter != null) filter.apply(batch);
+                long projectStart = System.nanoTime();
+                filterNanos[0] += projectStart - filterStart;
+                rowsScanned[0] += batch.size();
+                rowsReturned[0] += batch.selected();
+                if (explained == null && batch.selected() > 0) {
+                    System.out.print(projection.format(batch, resultLines));
+                }
+                projectNanos[0] += System.nanoTime() - projectStart;
+                batch.clear();
+            };
+            long scanStart = System.nanoTime();
+            TableStores.get(tableName).scan(plan.getEqualities(), st -> {
+                if (batch.add(st)) flush.run();
+                return true;
+            });
+            if (batch.size() > 0) flush.run();
+            if (resultLines != null) resultCache.put(cacheKey, tableVersion, resultLines);
+            QueryTrace.operator("scan", System.nanoTime() - scanStart - filterNanos[0] - projectNanos[0], rowsScanned[0]);
+            QueryTrace.operator("filter", filterNanos[0], rowsReturned[0]);
+            QueryTrace.operator("project", projectNanos[0], rowsReturned[0]);
+            metrics.recordRowsScanned(tableName, rowsScanned[0]);
+            metrics.recordRowsReturned(tableName, rowsReturned[0]);
+        } catch (Exception e) {
+            System.out.println("Something went wrong!");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     Creates an aggregate SELECT query computing COUNT, SUM, MIN, MAX or AVG over the rows of the specified table
+     matching the given conditions, optionally per value of a GROUP BY column.
+     @param tableName the name of the table to select data from
+     @param fields a string representing the aggregate functions and the GROUP BY column to be selected
+     @param conditions a string representing the conditions to be applied in the WHERE clause
+     @param groupBy the name of the column to group the rows by, or null to aggregate all rows
+     @return true if the SELECT query is successfully created, false otherwise
+     */
+    @Override
+    public boolean aggregateQuery(String tableName, String fields, String conditions, String groupBy) {
+        Lock lock = TableLocks.readLock(tableName);
+        lock.lock();
+        try {
+            return aggregateRows(tableName, fields, conditions, groupBy, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     Computes the aggregates over the matching rows of a table and prints them, or only counts the groups for
+     EXPLAIN ANALYZE.
+     @param tableName the name of the table to select data from
+     @param fields a string representing the aggregate functions and the GROUP BY column to be selected
+     @param conditions a string representing the conditions to be applied in the WHERE clause
+     @param groupBy the name of the column to group the rows by, or null to aggregate all rows
+     @param explained the plan printed by EXPLAIN ANALYZE, which is executed without the result cache and without
+     printing rows, or null to plan and run the statement
+     @return true if the aggregates are computed, false otherwise
+     */
+    private boolean aggregateRows(String tableName, String fields, String conditions, String groupBy, Plan explained) {
+        File table = new File(Utils.getFileName(tableName, FileTypes.TABLE));
+        if (!table.exists()) {
+            System.out.println("Table " + tableName + " does not exist");
+            return false;
+        }
+        try {
+            Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+            List<Aggregate> aggregates = Aggregate.parse(fields);
+            String invalidFields = validateAggregates(fieldEntry, aggregates, fields, groupBy);
+            if (invalidFields != null) {
+                System.out.println("SELECT operation failed!\n" + invalidFields);
+                return false;
+            }
+            QueryTrace.table(tableName);
+            String cacheKey = QueryResultCache.key(tableName, fields + " group by " + groupBy, conditions);
+            if (explained == null && printCachedResult(cacheKey, tableName)) {
+                return true;
+            }
+            long tableVersion = TableVersions.get(tableName);
+
+            Plan plan = explained == null ? Planner.plan(tableName, conditions, groupBy, true) : explained;
+            QueryTrace.accessPath(plan.getAccessPath());
+            List<String> columns = new ArrayList<>(fieldEntry.keySet());
+            BatchFilter filter = BatchFilter.compile(conditions, columns);
+            RowBatch batch = new RowBatch(new ArrayList<>(fieldEntry.values()));
+            long[] rowsScanned = new long[1];
+            long[] rowsMatched = new long[1];
+            long[] filterNanos = new long[1];
+            long[] aggregateNanos = new long[1];
+            List<String> resultLines;
+            long scanNanos;
+            try (BatchAggregation aggregation = new BatchAggregation(aggregates, columns, groupBy, plan.getEstimatedGroups())) {
+                Runnable flush = () -> {
+                    long filterStart = System.nanoTime();
+                    batch.selectAll();
+                    if (filter != null) filter.apply(batch);
+                    long aggregateStart = System.nanoTime();
+                    filterNanos[0] += aggregateStart - filterStart;
+                    rowsScanned[0] += batch.size();
+                    rowsMatched[0] += batch.selected();
+                    aggregation.add(batch);
+                    aggregateNanos[0] += System.nanoTime() - aggregateStart;
+                    batch.clear();
+                };
+                long scanStart = System.nanoTime();
+                TableStores.get(tableName).scan(plan.getEqualities(), st -> {
+                    if (batch.add(st)) flush.run();
+                    return true;
+                });
+                if (batch.size() > 0) flush.run();
+                scanNanos = System.nanoTime() - scanStart - filterNanos[0] - aggregateNanos[0];
+
+                long resultStart = System.nanoTime();
+                resultLines = aggregation.results();
+                aggregateNanos[0] += System.nanoTime() - resultStart;
+            }
+            if (explained == null) {
+                for (String line : resultLines) {
+                    System.out.println(line);
+                }
+                if (resultCache.isEnabled()) resultCache.put(cacheKey, tableVersion, resultLines);
+            }
+            QueryTrace.operator("scan", scanNanos, rowsScanned[0]);
+            QueryTrace.operator("filter", filterNanos[0], rowsMatched[0]);
+            QueryTrace.operator("aggregate", aggregateNanos[0], resultLines.size());
+            metrics.recordRowsScanned(tableName, rowsScanned[0]);
+            metrics.recordRowsReturned(tableName, resultLines.size());
+        } catch (Exception e) {
+            System.out.println("Something went wrong!");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     Checks the fields of an aggregate SELECT query against the columns of its table.
+     @param fieldEntry the columns of the table and their types
+     @param aggregates the parsed fields, null if they could not be parsed
+     @param fields the fields as written in the query
+     @param groupBy the GROUP BY column, or null
+     @return the reason the fields are invalid, or null if they are valid
+     */
+    private String validateAggregates(Map<String, String> fieldEntry, List<Aggregate> aggregates, String fields, String groupBy) {
+        if (aggregates == null) {
+            return "Unsupported aggregate in " + fields;
+        }
+        if (groupBy != null && !fieldEntry.containsKey(groupBy)) {
+            return groupBy + " not exist!";
+        }
+        for (Aggregate aggregate : aggregates) {
+            if (!aggregate.getColumn().equals("*") && !fieldEntry.containsKey(aggregate.getColumn())) {
+                return aggregate.getColumn() + " not exist!";
+            }
+            if (!aggregate.isFunction() && !aggregate.getColumn().equals(groupBy)) {
+                return aggregate.getColumn() + " must appear in GROUP BY";
+            }
+        }
+        return null;
+    }
+
+    /**
+     Creates a materialized view storing the result of an aggregate SELECT query over a table as a table of its
+     own, which every later change of the table keeps up to date.
+     @param viewName the name of the view
+     @param tableName the name of the table the view is computed from
+     @param fields a string representing the aggregate functions and the GROUP BY column to be selected
+     @param conditions a string representing the conditions to be applied in the WHERE clause
+     @param groupBy the name of the column to group the rows by, or null to aggregate all rows
+     @return true if the view is created, false otherwise
+     */
+    @Override
+    public boolean createViewQuery(String viewName, String tableName, String fields, String conditions, String groupBy) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            // the view belongs to the table, so its creation is replayed with the changes of the table
+            return markDirty(tableName) && createView(viewName, tableName, fields, conditions, groupBy)
+                    && logChange(tableName, "create materialized view " + viewName + " as select " + fields + " from " + tableName
+                    + (conditions == null ? "" : " where " + conditions.trim()) + (groupBy == null ? "" : " group by " + groupBy));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean createView(String viewName, String tableName, String fields, String conditions, String groupBy) {
+        if (!new File(Utils.getFileName(tableName, FileTypes.TABLE)).exists()) {
+            System.out.println("CREATE operation failed!\nTable " + tableName + " does not exist");
+            return false;
+        }
+        if (MaterializedViews.isView(tableName)) {
+            System.out.println("CREATE operation failed!\n" + tableName + " is a materialized view");
+            return false;
+        }
+        if (new File(Utils.getFileName(viewName, FileTypes.TABLE)).exists() || MaterializedViews.isView(viewName)) {
+            System.out.println("CREATE operation failed!\nTable " + viewName + " already exists");
+            return false;
+        }
+        try {
+            Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+            List<Aggregate> aggregates = Aggregate.parse(fields);
+            String invalidFields = validateAggregates(fieldEntry, aggregates, fields, groupBy);
+            if (invalidFields == null) {
+                Set<String> columns = new HashSet<>();
+                for (Aggregate aggregate : aggregates) {
+                    if (!columns.add(MaterializedView.columnName(aggregate))) invalidFields = aggregate + " is selected twice";
+                }
+            }
+            if (invalidFields == null) {
+                try {
+                    BatchFilter.compile(conditions, new ArrayList<>(fieldEntry.keySet()));
+                } catch (IllegalArgumentException e) {
+                    invalidFields = e.getMessage();
+                }
+            }
+            if (invalidFields != null) {
+                System.out.println("CREATE operation failed!\n" + invalidFields);
+                return false;
+            }
+
+            QueryTrace.table(tableName);
+            QueryTrace.accessPath("full scan");
+            long createStart = System.nanoTime();
+            MaterializedView view = new MaterializedView(viewName, tableName, fields, conditions, groupBy);
+            view.create(fieldEntry);
+            MaterializedViews.register(view);
+            QueryTrace.operator("materialize", System.nanoTime() - createStart, 1);
+            System.out.println("New materialized view created: " + viewName);
+            return true;
+        } catch (Exception e) {
+            System.out.println("Error while creating materialized view, try again!");
+            return false;
+        }
+    }
+
+    /**
+     Adds a column to a table. Only the schema changes: the rows already stored get the default value when they
+     are read, so the time taken does not depend on the size of the table.
+     @param tableName the name of the table to alter
+     @param column the name of the new column
+     @param type the type of the new column
+     @param defaultValue the value of the column in the existing rows, or null for an empty value
+     @return true if the column is added, false otherwise
+     */
+    @Override
+    public boolean alterAddColumnQuery(String tableName, String column, String type, String defaultValue) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            return markDirty(tableName) && addColumn(tableName, column, type.toLowerCase(Locale.ROOT), defaultValue)
+                    && logChange(tableName, "alter table " + tableName + " add column " + column + " " + type.toLowerCase(Locale.ROOT)
+                    + (defaultValue == null ? "" : " default " + defaultValue));
+        } finally {
+            TableStores.invalidate(tableName);
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    /**
+     Drops a column of a table. Only the schema changes: the rows keep their value for the column, which is no
+     longer read, until a statement rewrites them.
+     @param tableName the name of the table to alter
+     @param column the name of the column to drop
+     @return true if the column is dropped, false otherwise
+     */
+    @Override
+    public boolean alterDropColumnQuery(String tableName, String column) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            return markDirty(tableName) && dropColumn(tableName, column)
+                    && logChange(tableName, "alter table " + tableName + " drop column " + column);
+        } finally {
+            TableStores.invalidate(tableName);
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    /**
+     Moves a table to the memory engine. The table file becomes the first snapshot of the memory table as it is,
+     so only the options of the table change.
+     @param tableName the name of the table to alter
+     @return true if the table is now held in memory, false otherwise
+     */
+    @Override
+    public boolean alterInMemoryQuery(String tableName) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            return markDirty(tableName) && moveInMemory(tableName)
+                    && logChange(tableName, "alter table " + tableName + " set in_memory");
+        } finally {
+            TableStores.invalidate(tableName);
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    private boolean moveInMemory(String tableName) {
+        String invalidTable = validateAlteredTable(tableName);
+        if (invalidTable != null) {
+            System.out.println("ALTER operation failed!\n" + invalidTable);
+            return false;
+        }
+        try {
+            Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+            TableOptions options = TableOptions.load(tableName);
+            String engine = options.get(TableOptions.ENGINE);
+            String invalidOption = null;
+            if ("memory".equals(engine)) {
+                invalidOption = "Table " + tableName + " is already in memory";
+            } else if ("lsm".equals(engine)) {
+                invalidOption = "ENGINE=LSM tables cannot be moved in memory";
+            } else {
+                options.set(TableOptions.ENGINE, "memory");
+                invalidOption = TableStores.validate(options, new ArrayList<>(fieldEntry.keySet()), queryUtils.getPrimaryKeyField());
+            }
+            if (invalidOption != null) {
+                System.out.println("ALTER operation failed!\n" + invalidOption);
+                return false;
+            }
+
+            QueryTrace.table(tableName);
+            long alterStart = System.nanoTime();
+            List<File> previousFiles = TableStores.get(tableName).files();
+            options.save(tableName);
+            TableStores.invalidate(tableName);
+            // the files of the previous store the memory store does not read, e.g. its Bloom filters, are stale now
+            List<File> currentFiles = TableStores.get(tableName).files();
+            for (File file : previousFiles) {
+                if (!currentFiles.contains(file)) Files.deleteIfExists(file.toPath());
+            }
+            QueryTrace.operator("alter storage", System.nanoTime() - alterStart, 1);
+            System.out.println("Table " + tableName + " altered: held in memory");
+            return true;
+        } catch (Exception e) {
+            System.out.println("Error while altering table, try again!");
+            return false;
+        }
+    }
+
+    private boolean addColumn(String tableName, String column, String type, String defaultValue) {
+        String invalidTable = validateAlteredTable(tableName);
+        if (invalidTable != null) {
+            System.out.println("ALTER operation failed!\n" + invalidTable);
+            return false;
+        }
+        try {
+            Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+            if (fieldEntry.containsKey(column)) {
+                System.out.println("ALTER operation failed!\nColumn " + column + " already exists");
+                return false;
+            }
+            if (!type.equals("int") && !type.equals("varchar") && !type.equals("double")) {
+                System.out.println("ALTER operation failed!\nUnsupported type " + type + ", use INT, VARCHAR or DOUBLE");
+                return false;
+            }
+            if (defaultValue != null && !queryUtils.validateValueToType(Map.of(column, type), List.of(defaultValue))) {
+                System.out.println("ALTER operation failed!\nDefault value " + defaultValue + " is not a valid " + type);
+                return false;
+            }
+
+            QueryTrace.table(tableName);
+            long alterStart = System.nanoTime();
+            TableSchema schema = TableSchema.of(tableName);
+            schema.addColumn(column, type, defaultValue == null ? "" : defaultValue);
+            schema.save(tableName);
+            List<String> metadata = new ArrayList<>(readMetadata(tableName));
+            metadata.add(column + "|" + type);
+            writeMetadata(tableName, metadata);
+            QueryTrace.operator("alter schema", System.nanoTime() - alterStart, 1);
+            System.out.println("Table " + tableName + " altered to version " + schema.getVersion() + ": column " + column + " added");
+            return true;
+        } catch (Exception e) {
+            System.out.println("Error while altering table, try again!");
+            return false;
+        }
+    }
+
+    private boolean dropColumn(String tableName, String column) {
+        String invalidTable = validateAlteredTable(tableName);
+        if (invalidTable != null) {
+            System.out.println("ALTER operation failed!\n" + invalidTable);
+            return false;
+        }
+        try {
+            Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+            String invalidColumn = null;
+            TableOptions options = TableOptions.load(tableName);
+            String bloom = options.get(TableOptions.BLOOM);
+            if (!fieldEntry.containsKey(column)) {
+                invalidColumn = column + " not exist!";
+            } else if (fieldEntry.size() == 1) {
+                invalidColumn = "Cannot drop the only column of " + tableName;
+            } else if (column.equals(queryUtils.getPrimaryKeyField())) {
+                invalidColumn = "Cannot drop the primary key " + column;
+            } else if (column.equalsIgnoreCase(options.get(TableOptions.PARTITION_COLUMN))) {
+                invalidColumn = "Cannot drop the partition column " + column;
+            } else if (bloom != null && Arrays.stream(bloom.split(",")).anyMatch(name -> name.trim().equalsIgnoreCase(column))) {
+                invalidColumn = "Cannot drop the Bloom filter column " + column;
+            } else {
+                for (MaterializedView view : MaterializedViews.of(tableName)) {
+                    if (view.usesColumn(column)) invalidColumn = "Cannot drop " + column + ", materialized view " + view.getName() + " uses it";
                 }
             }
+            if (invalidColumn != null) {
+                System.out.println("ALTER operation failed!\n" + invalidColumn);
+                return false;
+            }
+
+            QueryTrace.table(tableName);
+            long alterStart = System.nanoTime();
+            TableSchema schema = TableSchema.of(tableName);
+            schema.dropColumn(column);
+            schema.save(tableName);
+            List<String> metadata = new ArrayList<>();
+            for (String line : readMetadata(tableName)) {
+                if (!line.split("\\|")[0].equals(column)) metadata.add(line);
+            }
+            writeMetadata(tableName, metadata);
+            QueryTrace.operator("alter schema", System.nanoTime() - alterStart, 1);
+            System.out.println("Table " + tableName + " altered to version " + schema.getVersion() + ": column " + column + " dropped");
+            return true;
         } catch (Exception e) {
+            System.out.println("Error while altering table, try again!");
+            return false;
+        }
+    }
+
+    /**
+     Checks that a table can be altered.
+     @param tableName the name of the table to alter
+     @return the reason the table cannot be altered, or null if it can
+     */
+    private String validateAlteredTable(String tableName) {
+        if (!new File(Utils.getFileName(tableName, FileTypes.TABLE)).exists()) {
+            return "Table " + tableName + " does not exist";
+        }
+        if (MaterializedViews.isView(tableName)) {
+            return tableName + " is a materialized view";
+        }
+        return null;
+    }
+
+    private List<String> readMetadata(String tableName) throws IOException {
+        return Files.readAllLines(new File(Utils.getFileName(tableName, FileTypes.META_TABLE)).toPath());
+    }
+
+    /**
+     Replaces the metadata of a table at once, after its schema file, so that a crash in between leaves the
+     metadata of the previous version, which recovery restores along with the schema.
+     */
+    private void writeMetadata(String tableName, List<String> lines) throws IOException {
+        File metadataFile = new File(Utils.getFileName(tableName, FileTypes.META_TABLE));
+        File tempFile = new File(metadataFile.getPath() + "-temp");
+        Files.write(tempFile.toPath(), lines);
+        Files.move(tempFile.toPath(), metadataFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     Computes the statistics of a table used by the planner and saves them.
+     @param tableName the name of the table to analyze
+     @return true if the statistics are saved, false otherwise
+     */
+    @Override
+    public boolean analyzeQuery(String tableName) {
+        Lock lock = TableLocks.readLock(tableName);
+        lock.lock();
+        try {
+            File table = new File(Utils.getFileName(tableName, FileTypes.TABLE));
+            if (!table.exists()) {
+                System.out.println("Table " + tableName + " does not exist");
+                return false;
+            }
+            QueryTrace.table(tableName);
+            long analyzeStart = System.nanoTime();
+            TableStatistics statistics = TableStatistics.collect(tableName);
+            statistics.save(tableName);
+            QueryTrace.operator("analyze", System.nanoTime() - analyzeStart, statistics.getRowCount());
+            metrics.recordRowsScanned(tableName, statistics.getRowCount());
+            System.out.println("Table " + tableName + " analyzed: " + statistics.getRowCount() + " rows, "
+                    + statistics.getColumnCount() + " columns");
+            return true;
+        } catch (Exception e) {
+            System.out.println("ANALYZE operation failed!\n" + e.getMessage());
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     Prints the plan of a SELECT query, executing it to add the actual rows and time of each operator when
+     analyze is true.
+     @param tableName the name of the table to select data from
+     @param fields a string representing the fields to be included in the SELECT statement
+     @param conditions a string representing the conditions to be applied in the WHERE clause
+     @param analyze true to execute the query, without printing its rows
+     @return true if the plan is printed, false otherwise
+     */
+    @Override
+    public boolean explainSelectQuery(String tableName, String fields, String conditions, boolean analyze) {
+        return explain(tableName, conditions, null, false, analyze, plan -> selectRows(tableName, fields, conditions, plan));
+    }
+
+    /**
+     Prints the plan of an aggregate SELECT query, executing it to add the actual rows and time of each operator
+     when analyze is true.
+     @param tableName the name of the table to select data from
+     @param fields a string representing the aggregate functions and the GROUP BY column to be selected
+     @param conditions a string representing the conditions to be applied in the WHERE clause
+     @param groupBy the name of the column to group the rows by, or null to aggregate all rows
+     @param analyze true to execute the query, without printing its rows
+     @return true if the plan is printed, false otherwise
+     */
+    @Override
+    public boolean explainAggregateQuery(String tableName, String fields, String conditions, String groupBy, boolean analyze) {
+        return explain(tableName, conditions, groupBy, true, analyze, plan -> aggregateRows(tableName, fields, conditions, groupBy, plan));
+    }
+
+    private boolean explain(String tableName, String conditions, String groupBy, boolean aggregate, boolean analyze,
+                            Predicate<Plan> execution) {
+        Lock lock = TableLocks.readLock(tableName);
+        lock.lock();
+        try {
+            File table = new File(Utils.getFileName(tableName, FileTypes.TABLE));
+            if (!table.exists()) {
+                System.out.println("Table " + tableName + " does not exist");
+                return false;
+            }
+            Plan plan = Planner.plan(tableName, conditions, groupBy, aggregate);
+            List<QueryTrace.Operator> operators = null;
+            long elapsed = 0;
+            if (analyze) {
+                // the operators of the statement are collected apart from the ones of the EXPLAIN itself
+                QueryTrace trace = QueryTrace.begin("explain analyze");
+                long start = System.nanoTime();
+                boolean success;
+                try {
+                    success = execution.test(plan);
+                } finally {
+                    elapsed = System.nanoTime() - start;
+                    QueryTrace.end(trace);
+                }
+                if (!success) return false;
+                operators = trace.getOperators();
+            }
+            for (String line : plan.explain(operators)) {
+                System.out.println(line);
+            }
+            if (analyze) {
+                System.out.println("Execution time: " + String.format("%.3f", elapsed / 1_000_000.0) + " ms");
+            }
+            return true;
+        } catch (IOException e) {
             System.out.println("Something went wrong!");
             return false;
+        } finally {
+            lock.unlock();
         }
+    }
+
+    /**
+     Prints the cached result of a query, if the result cache holds a current one.
+     @param cacheKey the key of the query in the result cache
+     @param tableName the name of the table the query reads
+     @return true if the cached result was printed, false if the query has to be executed
+     */
+    private boolean printCachedResult(String cacheKey, String tableName) {
+        List<String> cachedLines = resultCache.get(cacheKey, tableName);
+        if (cachedLines == null) {
+            return false;
+        }
+        QueryTrace.accessPath("result cache");
+        for (String line : cachedLines) {
+            System.out.println(line);
+        }
+        QueryTrace.operator("result cache", 0, cachedLines.size());
+        metrics.recordRowsReturned(tableName, cachedLines.size());
         return true;
     }
 
+    /**
+     Records in the change log that a table is about to change, when the log is enabled.
+     Called while the table lock is held.
+     @param tableName the name of the table about to change
+     @return true if the table is recorded or the log is disabled, false if writing the log failed
+     */
+    private boolean markDirty(String tableName) {
+        if (!ChangeLog.isEnabled()) {
+            return true;
+        }
+        try {
+            ChangeLog.getInstance().markDirty(tableName);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Change rejected, the change log cannot be written!");
+            return false;
+        }
+    }
+
+    /**
+     Appends an applied change to the change log, when the log is enabled. Called while the table lock is held.
+     @param tableName the name of the changed table
+     @param statement the statement that applied the change
+     @return true if the change is logged or the log is disabled, false if writing the log failed
+     */
+    private boolean logChange(String tableName, String statement) {
+        if (!ChangeLog.isEnabled()) {
+            return true;
+        }
+        try {
+            ChangeLog.getInstance().append(tableName, statement);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Change applied but could not be written to the change log!");
+            return false;
+        }
+    }
+
+    /**
+     Starts collecting the rows a statement changes in a table, for the materialized views computed from it.
+     Views themselves only change with their table. Called while the table lock is held.
+     @param operation the statement about to change the table, e.g. "INSERT"
+     @param tableName the name of the table about to change
+     @return the collector, null if the table has no views, or REJECTED if the statement must not run
+     */
+    private RowChanges trackViews(String operation, String tableName) {
+        if (MaterializedViews.isView(tableName)) {
+            System.out.println(operation + " operation failed!\n" + tableName + " is a materialized view");
+            return REJECTED;
+        }
+        try {
+            return MaterializedViews.track(tableName);
+        } catch (IOException e) {
+            System.out.println(operation + " operation failed!\nThe materialized views of " + tableName + " cannot be read");
+            return REJECTED;
+        }
+    }
+
+    /**
+     Applies the rows a statement changed in a table to the materialized views computed from it. Called while the
+     table lock is held.
+     @param tableName the name of the changed table
+     @param changes the changed rows, or null if the table has no views
+     @return true if the views are up to date, false if one of them could not be updated
+     */
+    private boolean maintainViews(String tableName, RowChanges changes) {
+        if (changes == null || changes.isEmpty()) {
+            return true;
+        }
+        long maintainStart = System.nanoTime();
+        try {
+            int groups = MaterializedViews.apply(tableName, changes);
+            QueryTrace.operator("view maintenance", System.nanoTime() - maintainStart, groups);
+            return true;
+        } catch (IOException e) {
+            System.out.println("Change applied but the materialized views of " + tableName + " could not be updated!");
+            return false;
+        }
+    }
+
     /**
      Creates a row map by combining the fieldEntry map with the provided rowValues list.
      @param fieldEntry the map representing the field names and their corresponding entry values
@@ -108,6 +865,33 @@ public class QueryHandler implements IQueryHandler {
      */
     @Override
     public boolean insertQuery(String tableName, String values) {
+        return insertBatchQuery(tableName, List.of(values));
+    }
+
+    /**
+     Creates an INSERT query for inserting a batch of rows into the specified table.
+     The whole batch is validated up front, primary keys are checked against each other and against the table
+     in a single pass, and all rows are appended with one write followed by one sync.
+     @param tableName the name of the table to insert data into
+     @param valuesList a list of strings, each representing the values of one row to be inserted
+     @return true if every row of the batch is inserted, false if the batch is rejected
+     */
+    @Override
+    public boolean insertBatchQuery(String tableName, List<String> valuesList) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            RowChanges changes = trackViews("INSERT", tableName);
+            return changes != REJECTED && markDirty(tableName) && insertRows(tableName, valuesList, changes)
+                    && logChange(tableName, "insert into " + tableName + " values (" + String.join("),(", valuesList) + ")")
+                    && maintainViews(tableName, changes);
+        } finally {
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    private boolean insertRows(String tableName, List<String> valuesList, RowChanges changes) {
         File tableFile = new File(Utils.getFileName(tableName, FileTypes.TABLE));
         if(!tableFile.exists()) {
             System.out.println("Table not exists");
@@ -120,32 +904,50 @@ public class QueryHandler implements IQueryHandler {
                 return false;
             }
 
-            List<String> queryValuesList = List.of(values.split(","));
+            QueryTrace.table(tableName);
             Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+            String primaryKeyField = queryUtils.getPrimaryKeyField();
+            List<String> lines = new ArrayList<>();
+            long checkStart = System.nanoTime();
+            // when the Bloom filters rule out every new key, only the keys of the batch itself can collide
+            boolean mayExist = primaryKeyField != null && mayContainPrimaryKeys(tableName, primaryKeyField, valuesList);
+            try (OffHeapKeySet primaryKeyValues = mayExist ? queryUtils.getColumnValues(primaryKeyField, tableName) : null) {
+                // the keys of a batch the Bloom filters cleared are few, a plain set checks them against each other
+                Set<String> batchKeys = primaryKeyField != null && !mayExist ? new HashSet<>() : null;
+                if(mayExist) {
+                    QueryTrace.accessPath("full scan");
+                    QueryTrace.operator("primary key scan", System.nanoTime() - checkStart, primaryKeyValues.size());
+                } else if(batchKeys != null) {
+                    QueryTrace.operator("primary key bloom filter", System.nanoTime() - checkStart, valuesList.size());
+                }
 
-            if(fieldEntry.size() != queryValuesList.size()) {
-                System.out.println("INSERT operation failed!.\nRequires " + fieldEntry.size() + " values instead of "
-                        + queryValuesList.size());
-                return false;
-            }
-
-            if(!queryUtils.validateValueToType(fieldEntry, queryValuesList)) {
-                System.out.println("INSERT operation failed!.\nValues may contains invalid type.");
-                return false;
-            }
+                for(String values: valuesList) {
+                    List<String> queryValuesList = List.of(values.split(","));
+                    if(fieldEntry.size() != queryValuesList.size()) {
+                        System.out.println("INSERT operation failed!.\nRequires " + fieldEntry.size() + " values instead of "
+                                + queryValuesList.size());
+                        return false;
+                    }
 
-            FileWriter fileWriter = new FileWriter(Utils.getFileName(tableName, FileTypes.TABLE), true);
-            BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
-            PrintWriter printWriter = new PrintWriter(bufferedWriter);
+                    if(!queryUtils.validateValueToType(fieldEntry, queryValuesList)) {
+                        System.out.println("INSERT operation failed!.\nValues may contains invalid type.");
+                        return false;
+                    }
 
-            if(queryUtils.getPrimaryKeyField() != null &&
-                    !queryUtils.validateValueForPrimaryKey(queryUtils.getPrimaryKeyField(), tableName, queryValuesList.get(queryUtils.getPrimaryKeyFieldIdx()).trim())) {
-                System.out.println("INSERT operation failed!\n Duplicate primary key values.");
-                return false;
+                    String primaryKeyValue = primaryKeyField == null ? null : queryValuesList.get(queryUtils.getPrimaryKeyFieldIdx()).trim();
+                    if((primaryKeyValues != null && !primaryKeyValues.add(primaryKeyValue))
+                            || (batchKeys != null && !batchKeys.add(primaryKeyValue))) {
+                        System.out.println("INSERT operation failed!\n Duplicate primary key values.");
+                        return false;
+                    }
+                    lines.add(values.replace(',', '|'));
+                }
             }
 
-            printWriter.println(values.replace(',', '|'));
-            printWriter.close();
+            long appendStart = System.nanoTime();
+            TableStores.get(tableName).append(lines);
+            QueryTrace.operator("append", System.nanoTime() - appendStart, lines.size());
+            if (changes != null) lines.forEach(changes::add);
             return true;
         } catch (Exception e) {
             System.out.println("Something went wrong!");
@@ -153,6 +955,27 @@ public class QueryHandler implements IQueryHandler {
         }
     }
 
+    /**
+     Tells whether some of the primary keys of the rows to insert may already be in the table.
+     @param tableName the name of the table
+     @param primaryKeyField the primary key column of the table
+     @param valuesList the comma-separated values of each row to insert
+     @return false if the store knows that none of the keys is in the table
+     @throws IOException if the store cannot tell
+     */
+    private boolean mayContainPrimaryKeys(String tableName, String primaryKeyField, List<String> valuesList) throws IOException {
+        TableStore store = TableStores.get(tableName);
+        int primaryKeyIdx = queryUtils.getPrimaryKeyFieldIdx();
+        for(String values: valuesList) {
+            String[] rowValues = values.split(",");
+            if(primaryKeyIdx >= rowValues.length
+                    || store.mayContain(Map.of(primaryKeyField, rowValues[primaryKeyIdx].trim()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      Creates an UPDATE query for updating data in the specified table with the given values and conditions.
      @param tableName the name of the table to update data in
@@ -162,6 +985,20 @@ public class QueryHandler implements IQueryHandler {
      */
     @Override
     public boolean updateQuery(String tableName, String values, String conditions) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            RowChanges changes = trackViews("UPDATE", tableName);
+            return changes != REJECTED && markDirty(tableName) && updateRows(tableName, values, conditions, changes)
+                    && logChange(tableName, "update " + tableName + " set " + values + (conditions == null ? "" : " where " + conditions.trim()))
+                    && maintainViews(tableName, changes);
+        } finally {
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    private boolean updateRows(String tableName, String values, String conditions, RowChanges changes) {
         File tableFile = new File(Utils.getFileName(tableName, FileTypes.TABLE));
         if (!tableFile.exists()) {
             System.out.println("UPDATE operation failed!\nTable does not exist");
@@ -175,44 +1012,41 @@ public class QueryHandler implements IQueryHandler {
         }
 
         try {
+            QueryTrace.table(tableName);
+            QueryTrace.accessPath("full scan");
             List<String> valuesList = List.of(values.split(","));
             Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
             Map<String, String> columnValueMap = queryUtils.parseColumnValues(valuesList);
 
             String primaryKeyNewValue = columnValueMap.get(queryUtils.getPrimaryKeyField());
             if (primaryKeyNewValue != null) {
-                if (!queryUtils.validateValueForPrimaryKey(queryUtils.getPrimaryKeyField(), tableName, primaryKeyNewValue)) {
+                long checkStart = System.nanoTime();
+                boolean unique = queryUtils.validateValueForPrimaryKey(queryUtils.getPrimaryKeyField(), tableName, primaryKeyNewValue);
+                QueryTrace.operator("primary key scan", System.nanoTime() - checkStart, 1);
+                if (!unique) {
                     System.out.println("UPDATE operation failed!\nDuplicate primary key values");
                     return false;
                 }
             }
 
-            File tempTableFile = new File(Utils.getFileName(tableName + "-temp", FileTypes.TABLE));
-            try (BufferedReader br = new BufferedReader(new FileReader(tableFile));
-                 PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(tempTableFile)))) {
-
-                String st;
-                while ((st = br.readLine()) != null) {
-                    Map<String, String> row = queryUtils.creatDeleteUpdateMap(st, fieldEntry);
-                    boolean conditionStatus = queryUtils.handleAndOrConditions(row, conditions);
-
-                    StringBuilder output = new StringBuilder(st);
-                    if (conditionStatus) {
-                        queryUtils.updateRowWithColumnValues(row, columnValueMap);
-
-                        StringBuilder temp = new StringBuilder();
-                        for (Map.Entry<String, String> entry : row.entrySet()) {
-                            String value = entry.getValue();
-                            temp.append(value).append("|");
-                        }
-                        temp.deleteCharAt(temp.length() - 1);
-                        output = temp;
-                    }
-                    printWriter.println(output);
+            LongAdder rowsScanned = new LongAdder();
+            long rewriteStart = System.nanoTime();
+            TableStores.get(tableName).rewrite(queryUtils.getEqualityConditions(conditions), st -> {
+                rowsScanned.increment();
+                Map<String, String> row = queryUtils.creatDeleteUpdateMap(st, fieldEntry);
+                if (!queryUtils.handleAndOrConditions(row, conditions)) {
+                    return st;
                 }
-            }
-
-            queryUtils.copyAnotherFile(tableName);
+                queryUtils.updateRowWithColumnValues(row, columnValueMap);
+                String updated = String.join("|", row.values());
+                if (changes != null) {
+                    changes.remove(st);
+                    changes.add(updated);
+                }
+                return updated;
+            });
+            QueryTrace.operator("scan and rewrite", System.nanoTime() - rewriteStart, rowsScanned.sum());
+            metrics.recordRowsScanned(tableName, rowsScanned.sum());
         } catch (Exception e) {
             System.out.println("Something went wrong!");
             return false;
@@ -229,6 +1063,20 @@ public class QueryHandler implements IQueryHandler {
      */
     @Override
     public boolean deleteQuery(String tableName, String conditions) {
+        Lock lock = TableLocks.writeLock(tableName);
+        lock.lock();
+        try {
+            RowChanges changes = trackViews("DELETE", tableName);
+            return changes != REJECTED && markDirty(tableName) && deleteRows(tableName, conditions, changes)
+                    && logChange(tableName, "delete from " + tableName + (conditions == null ? "" : " where " + conditions.trim()))
+                    && maintainViews(tableName, changes);
+        } finally {
+            TableVersions.bump(tableName);
+            lock.unlock();
+        }
+    }
+
+    private boolean deleteRows(String tableName, String conditions, RowChanges changes) {
         File tableFile = new File(Utils.getFileName(tableName, FileTypes.TABLE));
         if (!tableFile.exists()) {
             System.out.println("DELETE operation failed!\nTable does not exist");
@@ -242,11 +1090,11 @@ public class QueryHandler implements IQueryHandler {
         }
 
         try {
+            QueryTrace.table(tableName);
+            QueryTrace.accessPath("full scan");
             Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
-            File tempTableFile = new File(Utils.getFileName(tableName + "-temp", FileTypes.TABLE));
 
-            deleteRowsBasedOnConditions(tableFile, tempTableFile, fieldEntry, conditions);
-            queryUtils.copyAnotherFile(tableName);
+            deleteRowsBasedOnConditions(tableName, fieldEntry, conditions, changes);
         } catch (Exception e) {
             System.out.println("Something went wrong!");
             return false;
@@ -256,25 +1104,28 @@ public class QueryHandler implements IQueryHandler {
     }
 
     /**
-     Deletes rows from the table file based on the specified conditions.
-     @param tableFile the file representing the table to delete rows from
-     @param tempTableFile the temporary file used for writing the modified table data
+     Deletes rows from the table storage based on the specified conditions.
+     @param tableName the name of the table to delete rows from
      @param fieldEntry the map representing the field names and their corresponding entry values
      @param conditions the string representing the conditions to be applied in the WHERE clause
+     @param changes receives the deleted rows for the materialized views of the table, or null
      @throws IOException if an I/O error occurs during the file operations
      */
-    private void deleteRowsBasedOnConditions(File tableFile, File tempTableFile, Map<String, String> fieldEntry, String conditions) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(tableFile));
-             PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(tempTableFile)))) {
-
-            String string;
-            while ((string = br.readLine()) != null) {
-                Map<String, String> row = queryUtils.creatDeleteUpdateMap(string, fieldEntry);
-                boolean conditionStatus = queryUtils.handleAndOrConditions(row, conditions);
-                if (!conditionStatus) {
-                    printWriter.println(string);
-                }
+    private void deleteRowsBasedOnConditions(String tableName, Map<String, String> fieldEntry, String conditions,
+                                             RowChanges changes) throws IOException {
+        LongAdder rowsScanned = new LongAdder();
+        long rewriteStart = System.nanoTime();
+        TableStores.get(tableName).rewrite(queryUtils.getEqualityConditions(conditions), string -> {
+            rowsScanned.increment();
+            Map<String, String> row = queryUtils.creatDeleteUpdateMap(string, fieldEntry);
+            boolean conditionStatus = queryUtils.handleAndOrConditions(row, conditions);
+            if (!conditionStatus) {
+                return string;
             }
-        }
+            if (changes != null) changes.remove(string);
+            return null;
+        });
+        QueryTrace.operator("scan and rewrite", System.nanoTime() - rewriteStart, rowsScanned.sum());
+        metrics.recordRowsScanned(tableName, rowsScanned.sum());
     }
 }
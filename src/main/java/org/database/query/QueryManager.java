@@ -1,6 +1,10 @@
 package org.database.query;
 
 import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+import org.database.metrics.SlowQueryLog;
+import org.database.metrics.StatementType;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,11 +13,18 @@ import java.util.regex.Pattern;
 
 public class QueryManager implements IQueryManager {
     private static final Pattern CREATE_TABLE_PATTERN = Pattern.compile(
-            "[cC][rR][eE][aA][tT][eE]\\s[tT][aA][bB][lL][eE]\\s(([a-zA-Z_])+)\\s\\((([a-zA-Z_,\\s\\d])+)\\)",
+            "[cC][rR][eE][aA][tT][eE]\\s[tT][aA][bB][lL][eE]\\s(([a-zA-Z_])+)\\s\\((([a-zA-Z_,\\s\\d])+)\\)(\\s+(.+))?",
             Pattern.CASE_INSENSITIVE
     );
     private static final Pattern INSERT_TABLE_PATTERN = Pattern.compile(
-            "[iI][nN][sS][eE][rR][tT]\\s[iI][nN][tT][oO]\\s([a-zA-Z\\d_]+)\\s[vV][aA][lL][uU][eE][sS]\\s\\(([a-zA-Z\\d_,]+)\\)",
+            "[iI][nN][sS][eE][rR][tT]\\s[iI][nN][tT][oO]\\s([a-zA-Z\\d_]+)\\s[vV][aA][lL][uU][eE][sS]\\s(\\([a-zA-Z\\d_,]+\\)(\\s*,\\s*\\([a-zA-Z\\d_,]+\\))*)",
+            Pattern.CASE_INSENSITIVE
+    );
+    private static final Pattern INSERT_VALUES_PATTERN = Pattern.compile(
+            "\\(([a-zA-Z\\d_,]+)\\)"
+    );
+    private static final Pattern AGGREGATE_TABLE_PATTERN = Pattern.compile(
+            "[sS][eE][lL][eE][cC][tT]\\s([a-zA-Z_,\\s]*\\([a-zA-Z_,()*\\s]+)\\s[fF][rR][oO][mM]\\s([a-zA-Z_]+)(\\s[wW][hH][eE][rR][eE]\\s([a-zA-Z_=\\d\\s]+?))?(\\s[gG][rR][oO][uU][pP]\\s[bB][yY]\\s([a-zA-Z_]+))?\\s*$",
             Pattern.CASE_INSENSITIVE
     );
     private static final Pattern SELECT_TABLE_PATTERN = Pattern.compile(
@@ -49,7 +60,50 @@ public class QueryManager implements IQueryManager {
             Pattern.CASE_INSENSITIVE
     );
 
-    QueryHandler queryHandler = new QueryHandler();
+    private static final Pattern SHOW_STATS_PATTERN = Pattern.compile(
+            "[sS][hH][oO][wW]\\s[sS][tT][aA][tT][sS]",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern ANALYZE_TABLE_PATTERN = Pattern.compile(
+            "^\\s*[aA][nN][aA][lL][yY][zZ][eE]\\s+([a-zA-Z_]+)\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern EXPLAIN_PATTERN = Pattern.compile(
+            "^\\s*[eE][xX][pP][lL][aA][iI][nN]\\s+([aA][nN][aA][lL][yY][zZ][eE]\\s+)?(.+)$",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern CREATE_VIEW_PATTERN = Pattern.compile(
+            "^\\s*[cC][rR][eE][aA][tT][eE]\\s+[mM][aA][tT][eE][rR][iI][aA][lL][iI][zZ][eE][dD]\\s+[vV][iI][eE][wW]\\s+([a-zA-Z_]+)\\s+[aA][sS]\\s+(.+)$",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern ALTER_TABLE_PATTERN = Pattern.compile(
+            "^\\s*[aA][lL][tT][eE][rR]\\s+[tT][aA][bB][lL][eE]\\s+([a-zA-Z_]+)\\s+([aA][dD][dD]|[dD][rR][oO][pP])\\s+([cC][oO][lL][uU][mM][nN]\\s+)?([a-zA-Z_]+)(\\s+([a-zA-Z]+))?(\\s+[dD][eE][fF][aA][uU][lL][tT]\\s+([a-zA-Z\\d_]+))?\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private static final Pattern ALTER_TABLE_IN_MEMORY_PATTERN = Pattern.compile(
+            "^\\s*[aA][lL][tT][eE][rR]\\s+[tT][aA][bB][lL][eE]\\s+([a-zA-Z_]+)\\s+[sS][eE][tT]\\s+[iI][nN]_[mM][eE][mM][oO][rR][yY]\\s*;?\\s*$",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    IQueryHandler queryHandler;
+    MetricsRegistry metrics = MetricsRegistry.getInstance();
+    private boolean lastQuerySuccessful;
+
+    public QueryManager() {
+        this(new QueryHandler());
+    }
+
+    /**
+     @param queryHandler the handler executing the parsed statements, e.g. one spreading them over shards
+     */
+    public QueryManager(IQueryHandler queryHandler) {
+        this.queryHandler = queryHandler;
+    }
 
     /**
      Executes the provided query using the QueryUtils object and returns the result.
@@ -58,14 +112,33 @@ public class QueryManager implements IQueryManager {
      @return an integer representing the result of the query execution
      */
     public int runner(String query, QueryUtils queryUtils) {
+        lastQuerySuccessful = false;
         if(!Utils.isValidString(query)) return 0;
 
+        QueryTrace trace = QueryTrace.begin(query);
+        try {
+            return execute(query, queryUtils, trace);
+        } finally {
+            QueryTrace.end(trace);
+        }
+    }
+
+    /**
+     Matches the provided query against the supported statements and executes it.
+     @param query the query to be executed
+     @param queryUtils the QueryUtils object that provides utility methods for query execution
+     @param trace the trace collecting the execution details of the query
+     @return an integer representing the result of the query execution
+     */
+    private int execute(String query, QueryUtils queryUtils, QueryTrace trace) {
         Matcher matcher;
+        long start = System.nanoTime();
 
         matcher = BEGIN_TRANSACTION_PATTERN.matcher(query);
         if(matcher.find()) {
             queryUtils.setTransactionBegin(true);
             queryUtils.setTransactionClose(false);
+            complete(StatementType.TRANSACTION, start, true, trace);
             return 1;
         }
 
@@ -73,6 +146,7 @@ public class QueryManager implements IQueryManager {
         if(matcher.find()) {
             queryUtils.setTransactionBegin(false);
             queryUtils.setTransactionClose(true);
+            complete(StatementType.TRANSACTION, start, true, trace);
             return 1;
         }
 
@@ -85,6 +159,7 @@ public class QueryManager implements IQueryManager {
                 queryUtils.setTransactionClose(false);
                 queryUtils.setTransactionQueryList(new ArrayList<>());
             }
+            complete(StatementType.TRANSACTION, start, true, trace);
             return 1;
         }
 
@@ -93,6 +168,16 @@ public class QueryManager implements IQueryManager {
             queryUtils.setTransactionClose(false);
             queryUtils.setTransactionBegin(false);
             queryUtils.setTransactionQueryList(new ArrayList<>());
+            complete(StatementType.TRANSACTION, start, true, trace);
+            return 1;
+        }
+
+        matcher = SHOW_STATS_PATTERN.matcher(query);
+        if(matcher.find()) {
+            for(String line: metrics.snapshot()) {
+                System.out.println(line);
+            }
+            complete(StatementType.SHOW, start, true, trace);
             return 1;
         }
 
@@ -100,38 +185,216 @@ public class QueryManager implements IQueryManager {
             List<String> tempList = queryUtils.getTransactionQueryList();
             tempList.add(query);
             queryUtils.setTransactionQueryList(tempList);
+            lastQuerySuccessful = true;
             return 1;
         } else {
+            // checked first, since the SELECT patterns would find the statement inside an EXPLAIN
+            matcher = EXPLAIN_PATTERN.matcher(query);
+            if(matcher.find()) {
+                boolean analyze = matcher.group(1) != null;
+                String statement = matcher.group(2);
+                Matcher selectMatcher = AGGREGATE_TABLE_PATTERN.matcher(statement);
+                boolean success;
+                if(selectMatcher.find()) {
+                    success = queryHandler.explainAggregateQuery(selectMatcher.group(2), selectMatcher.group(1), selectMatcher.group(4), selectMatcher.group(6), analyze);
+                } else if((selectMatcher = SELECT_TABLE_PATTERN.matcher(statement)).find()) {
+                    success = queryHandler.explainSelectQuery(selectMatcher.group(3), selectMatcher.group(1), selectMatcher.group(7), analyze);
+                } else {
+                    System.out.println("EXPLAIN operation failed!\nOnly SELECT statements can be explained");
+                    success = false;
+                }
+                complete(StatementType.EXPLAIN, start, success, trace);
+                return 1;
+            }
+
+            matcher = ANALYZE_TABLE_PATTERN.matcher(query);
+            if(matcher.find()) {
+                boolean success = queryHandler.analyzeQuery(matcher.group(1));
+                complete(StatementType.ANALYZE, start, success, trace);
+                return 1;
+            }
+
+            matcher = ALTER_TABLE_IN_MEMORY_PATTERN.matcher(query);
+            if(matcher.find()) {
+                boolean success = queryHandler.alterInMemoryQuery(matcher.group(1));
+                complete(StatementType.ALTER, start, success, trace);
+                return 1;
+            }
+
+            matcher = ALTER_TABLE_PATTERN.matcher(query);
+            if(matcher.find()) {
+                boolean success;
+                boolean drop = matcher.group(2).equalsIgnoreCase("drop");
+                if(drop && (matcher.group(6) != null || matcher.group(8) != null)) {
+                    System.out.println("ALTER operation failed!\nDROP COLUMN takes only the name of the column");
+                    success = false;
+                } else if(drop) {
+                    success = queryHandler.alterDropColumnQuery(matcher.group(1), matcher.group(4));
+                } else if(matcher.group(6) == null) {
+                    System.out.println("ALTER operation failed!\nADD COLUMN requires the type of the column");
+                    success = false;
+                } else {
+                    success = queryHandler.alterAddColumnQuery(matcher.group(1), matcher.group(4), matcher.group(6), matcher.group(8));
+                }
+                complete(StatementType.ALTER, start, success, trace);
+                return 1;
+            }
+
+            // checked before the SELECT patterns, which would find the statement of the view
+            matcher = CREATE_VIEW_PATTERN.matcher(query);
+            if(matcher.find()) {
+                Matcher selectMatcher = AGGREGATE_TABLE_PATTERN.matcher(matcher.group(2));
+                boolean success;
+                if(selectMatcher.find()) {
+                    success = queryHandler.createViewQuery(matcher.group(1), selectMatcher.group(2), selectMatcher.group(1), selectMatcher.group(4), selectMatcher.group(6));
+                } else {
+                    System.out.println("CREATE operation failed!\nOnly aggregate SELECT statements can be materialized");
+                    success = false;
+                }
+                complete(StatementType.CREATE, start, success, trace);
+                return 1;
+            }
+
             matcher = CREATE_TABLE_PATTERN.matcher(query);
             if(matcher.find()) {
-                queryHandler.createQuery(matcher.group(1), matcher.group(3));
+                boolean success = queryHandler.createQuery(matcher.group(1), matcher.group(3), matcher.group(6));
+                complete(StatementType.CREATE, start, success, trace);
+                return 1;
+            }
+
+            matcher = AGGREGATE_TABLE_PATTERN.matcher(query);
+            if(matcher.find()) {
+                boolean success = queryHandler.aggregateQuery(matcher.group(2), matcher.group(1), matcher.group(4), matcher.group(6));
+                complete(StatementType.SELECT, start, success, trace);
                 return 1;
             }
 
             matcher = SELECT_TABLE_PATTERN.matcher(query);
             if(matcher.find()) {
-                queryHandler.selectQuery(matcher.group(3), matcher.group(1), matcher.groupCount() < 5 ? null : matcher.group(7));
+                boolean success = queryHandler.selectQuery(matcher.group(3), matcher.group(1), matcher.groupCount() < 5 ? null : matcher.group(7));
+                complete(StatementType.SELECT, start, success, trace);
                 return 1;
             }
 
             matcher = INSERT_TABLE_PATTERN.matcher(query);
             if(matcher.find()) {
-                queryHandler.insertQuery(matcher.group(1), matcher.group(2));
+                List<String> rows = parseInsertValues(matcher.group(2));
+                boolean success;
+                if(rows.size() == 1) {
+                    success = queryHandler.insertQuery(matcher.group(1), rows.get(0));
+                } else {
+                    success = queryHandler.insertBatchQuery(matcher.group(1), rows);
+                }
+                complete(StatementType.INSERT, start, success, trace);
                 return 1;
             }
 
             matcher = UPDATE_TABLE_PATTERN.matcher(query);
             if(matcher.find()) {
-                queryHandler.updateQuery(matcher.group(1), matcher.group(2), matcher.group(5));
+                boolean success = queryHandler.updateQuery(matcher.group(1), matcher.group(2), matcher.group(5));
+                complete(StatementType.UPDATE, start, success, trace);
                 return 1;
             }
 
             matcher = DELETE_TABLE_PATTERN.matcher(query);
             if(matcher.find()) {
-                queryHandler.deleteQuery(matcher.group(1), matcher.group(5));
+                boolean success = queryHandler.deleteQuery(matcher.group(1), matcher.group(5));
+                complete(StatementType.DELETE, start, success, trace);
                 return 1;
             }
         }
         return 0;
     }
+
+    /**
+     Tells whether the last statement run by this QueryManager succeeded. Unlike the result of the runner,
+     which only says whether the query was recognized, this reflects failures of the statement itself.
+     @return true if the last statement succeeded, false otherwise
+     */
+    public boolean isLastQuerySuccessful() {
+        return lastQuerySuccessful;
+    }
+
+    /**
+     Records a finished statement in the metrics and, when it was slow, in the slow query log.
+     @param type the type of the finished statement
+     @param start the value of System.nanoTime() when the statement started
+     @param success false if the statement failed
+     @param trace the trace collected while executing the statement
+     */
+    private void complete(StatementType type, long start, boolean success, QueryTrace trace) {
+        long elapsed = System.nanoTime() - start;
+        lastQuerySuccessful = success;
+        metrics.recordStatement(type, elapsed, success);
+        SlowQueryLog.getInstance().submit(trace, elapsed);
+    }
+
+    /**
+     Executes a list of queries as one batch, in the manner of JDBC's executeBatch.
+     Consecutive INSERT statements targeting the same table are merged and applied with a single
+     validation pass and a single write, every other statement is run through the runner as usual.
+     The batch is not atomic: each statement succeeds or fails on its own. When merged INSERT statements
+     fail together, e.g. because one of them repeats a primary key, nothing of them was written and they
+     are run again one by one, so that only the failing statements are reported as failed.
+     @param queries the queries to be executed, in order
+     @param queryUtils the QueryUtils object that provides utility methods for query execution
+     @return an array holding 1 for each query that succeeded and 0 for each query that failed, in the same
+     order as the queries
+     */
+    public int[] executeBatch(List<String> queries, QueryUtils queryUtils) {
+        int[] results = new int[queries.size()];
+        int i = 0;
+        while (i < queries.size()) {
+            String query = queries.get(i);
+            Matcher matcher = Utils.isValidString(query) ? INSERT_TABLE_PATTERN.matcher(query) : null;
+            if (matcher == null || !matcher.find() || queryUtils.isTransactionBegin()) {
+                results[i] = runBatched(query, queryUtils);
+                i++;
+                continue;
+            }
+
+            String tableName = matcher.group(1);
+            List<String> rows = new ArrayList<>(parseInsertValues(matcher.group(2)));
+            int end = i + 1;
+            while (end < queries.size() && Utils.isValidString(queries.get(end))) {
+                Matcher next = INSERT_TABLE_PATTERN.matcher(queries.get(end));
+                if (!next.find() || !next.group(1).equals(tableName)) break;
+                rows.addAll(parseInsertValues(next.group(2)));
+                end++;
+            }
+
+            long start = System.nanoTime();
+            QueryTrace trace = QueryTrace.begin("INSERT INTO " + tableName + " VALUES batch of " + rows.size() + " rows");
+            boolean success;
+            try {
+                success = queryHandler.insertBatchQuery(tableName, rows);
+                complete(StatementType.INSERT, start, success, trace);
+            } finally {
+                QueryTrace.end(trace);
+            }
+            for (int j = i; j < end; j++) {
+                results[j] = success ? 1 : end - i == 1 ? 0 : runBatched(queries.get(j), queryUtils);
+            }
+            i = end;
+        }
+        return results;
+    }
+
+    private int runBatched(String query, QueryUtils queryUtils) {
+        return runner(query, queryUtils) == 1 && lastQuerySuccessful ? 1 : 0;
+    }
+
+    /**
+     Splits the VALUES clause of an INSERT query into its individual row tuples.
+     @param values the string holding one or more parenthesised, comma-separated tuples
+     @return a list with the comma-separated values of each tuple
+     */
+    private List<String> parseInsertValues(String values) {
+        List<String> rows = new ArrayList<>();
+        Matcher matcher = INSERT_VALUES_PATTERN.matcher(values);
+        while (matcher.find()) {
+            rows.add(matcher.group(1));
+        }
+        return rows;
+    }
 }
@@ -2,8 +2,13 @@ package org.database.query;
 
 import org.database.Utils.FileTypes;
 import org.database.Utils.Utils;
+import org.database.memory.OffHeapKeySet;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+import org.database.storage.TableStores;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class QueryUtils {
@@ -52,6 +57,9 @@ public class QueryUtils {
 
         BufferedReader br = new BufferedReader(new FileReader(tableMetadata));
 
+        primaryKeyField = null;
+        primaryKeyFieldIdx = 0;
+
         String value;
         int i = 0;
         while ((value = br.readLine()) != null) {
@@ -161,25 +169,53 @@ public class QueryUtils {
             return false;
         }
         Map<String, String> fieldEntry = getMetaData(tableName);
-        try (BufferedReader br = new BufferedReader(new FileReader(table))) {
-            String st;
-            while ((st = br.readLine()) != null) {
-                List<String> rowValues = List.of(st.split("\\|"));
-
-                Map<String, String> row = new LinkedHashMap<>();
-
-                for (Map.Entry<String, String> entry : fieldEntry.entrySet()) {
-                    row.put(entry.getKey(), rowValues.get(row.size()));
-                }
-
-                if (row.get(columnName).equals(value)) {
-                    return false;
+        int columnIdx = new ArrayList<>(fieldEntry.keySet()).indexOf(columnName);
+        long[] rowsScanned = new long[1];
+        boolean[] unique = {true};
+        try {
+            TableStores.get(tableName).scan(Map.of(columnName, value), st -> {
+                rowsScanned[0]++;
+                String[] rowValues = st.split("\\|");
+                if (columnIdx >= 0 && columnIdx < rowValues.length && rowValues[columnIdx].equals(value)) {
+                    unique[0] = false;
                 }
-            }
+                return unique[0];
+            });
         } catch (Exception e) {
             return false;
+        } finally {
+            MetricsRegistry.getInstance().recordRowsScanned(tableName, rowsScanned[0]);
         }
-        return true;
+        return unique[0];
+    }
+
+    /**
+     Collects every value stored for the specified column in the given table with a single scan.
+     @param columnName the name of the column to collect values for
+     @param tableName the name of the table to read the values from
+     @return an off-heap set holding the distinct values of the column, to be closed by the caller
+     @throws IOException if an I/O error occurs during the file operations
+     */
+    public OffHeapKeySet getColumnValues(String columnName, String tableName) throws IOException {
+        Map<String, String> fieldEntry = getMetaData(tableName);
+        int columnIdx = new ArrayList<>(fieldEntry.keySet()).indexOf(columnName);
+        OffHeapKeySet columnValues = new OffHeapKeySet();
+        long[] rowsScanned = new long[1];
+        try {
+            TableStores.get(tableName).scan(Map.of(), st -> {
+                rowsScanned[0]++;
+                String[] rowValues = st.split("\\|");
+                if (columnIdx >= 0 && columnIdx < rowValues.length) {
+                    columnValues.add(rowValues[columnIdx]);
+                }
+                return true;
+            });
+        } catch (IOException | RuntimeException e) {
+            columnValues.close();
+            throw e;
+        }
+        MetricsRegistry.getInstance().recordRowsScanned(tableName, rowsScanned[0]);
+        return columnValues;
     }
 
     /**
@@ -246,25 +282,75 @@ public class QueryUtils {
         return row.containsKey(column) && row.get(column).equalsIgnoreCase(value);
     }
 
+    /**
+     Extracts the column values that every row matching the given conditions must have, following the same
+     AND/OR rules as handleAndOrConditions. Storage can use them to skip rows that cannot match.
+     @param conditions the string representing the AND/OR conditions, or null
+     @return a map of column names to the values they are compared with, empty if the conditions hold an OR
+     */
+    public Map<String, String> getEqualityConditions(String conditions) {
+        Map<String, String> equalities = new HashMap<>();
+        if (conditions == null) {
+            return equalities;
+        }
+        conditions = conditions.trim();
+
+        if (conditions.contains("and")) {
+            for (String condition : conditions.split("and", 2)) {
+                addEquality(equalities, condition);
+            }
+        } else if (!conditions.contains("or")) {
+            addEquality(equalities, conditions);
+        }
+        return equalities;
+    }
+
+    private void addEquality(Map<String, String> equalities, String condition) {
+        String[] parts = condition.split("=", 2);
+        if (parts.length == 2) {
+            equalities.putIfAbsent(parts[0].trim(), parts[1].trim());
+        }
+    }
+
     /**
      Copies the contents of the specified table file to another file.
      @param tableName the name of the table whose file contents are to be copied
      @throws IOException if an I/O error occurs during the file operations
      */
     public void copyAnotherFile(String tableName) throws IOException {
-        FileWriter fileWriter = new FileWriter(Utils.getFileName(tableName, FileTypes.TABLE));
+        copyAnotherFile(tableName, tableName);
+    }
+
+    /**
+     Copies the contents of the temporary file of a table file back to it, for tables stored in several files.
+     @param fileName the name the table file is derived from
+     @param tableName the name of the table the statistics are recorded for
+     @throws IOException if an I/O error occurs during the file operations
+     */
+    public void copyAnotherFile(String fileName, String tableName) throws IOException {
+        long copyStart = System.nanoTime();
+        FileWriter fileWriter = new FileWriter(Utils.getFileName(fileName, FileTypes.TABLE), StandardCharsets.UTF_8);
         BufferedWriter bufferedWriter = new BufferedWriter(fileWriter);
         PrintWriter printWriter = new PrintWriter(bufferedWriter);
 
-        File tempFile = new File(Utils.getFileName(tableName + "-temp", FileTypes.TABLE));
-        BufferedReader br = new BufferedReader(new FileReader(tempFile));
+        File tempFile = new File(Utils.getFileName(fileName + "-temp", FileTypes.TABLE));
+        BufferedReader br = new BufferedReader(new FileReader(tempFile, StandardCharsets.UTF_8));
 
         String string;
+        long bytesWritten = 0;
+        long rowsCopied = 0;
         while ((string = br.readLine()) != null) {
+            rowsCopied++;
+            bytesWritten += string.length() + 1;
             printWriter.println(string);
         }
         printWriter.close();
+        br.close();
         tempFile.delete();
+        QueryTrace.tempFile(tempFile.getPath());
+        QueryTrace.operator("copy temp file", System.nanoTime() - copyStart, rowsCopied);
+        MetricsRegistry.getInstance().recordBytesWritten(tableName, bytesWritten);
+        MetricsRegistry.getInstance().recordTempRewrite(tableName);
     }
 
     /**
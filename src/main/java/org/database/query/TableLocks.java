@@ -0,0 +1,27 @@
+package org.database.query;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ The TableLocks class hands out one read/write lock per table, shared by every QueryHandler of the process.
+ Readers of a table run concurrently, while a statement modifying the table file or its temporary copy
+ runs alone, so concurrent clients never interleave their rewrites or their primary key checks.
+ */
+public class TableLocks {
+    private static final Map<String, ReentrantReadWriteLock> LOCKS = new ConcurrentHashMap<>();
+
+    public static Lock readLock(String tableName) {
+        return lockFor(tableName).readLock();
+    }
+
+    public static Lock writeLock(String tableName) {
+        return lockFor(tableName).writeLock();
+    }
+
+    private static ReentrantReadWriteLock lockFor(String tableName) {
+        return LOCKS.computeIfAbsent(tableName, key -> new ReentrantReadWriteLock());
+    }
+}
@@ -0,0 +1,237 @@
+package org.database.recovery;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.query.TableLocks;
+import org.database.replication.ChangeLog;
+import org.database.storage.TableStores;
+import org.database.view.MaterializedViews;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Stream;
+
+/**
+ The Checkpointer class copies the tables changed since their last checkpoint into database/checkpoint, so that
+ the recovery only has to replay the changes logged after it. Checkpoints are fuzzy: each table is copied under
+ its own read lock, together with the LSN the log had reached at that moment, while the other tables keep taking
+ changes. The copies are listed in database/checkpoint/checkpoint.txt as "table|lsn|directory" lines, plus a "*|lsn" line
+ holding the LSN of the log when the tables were listed, so that a table created later is known to be covered by
+ the log. Once every table is copied, the log segments the checkpoint covers are removed, keeping the last
+ lightdb.wal.retainChanges changes for replicas that are slightly behind.
+ */
+public class Checkpointer {
+    static final String LISTED = "*";
+    private static final long RETAIN_CHANGES = Config.getLong("wal.retainChanges", 10000);
+
+    private static ScheduledExecutorService executor;
+
+    /**
+     Takes a checkpoint every lightdb.checkpoint.intervalSeconds seconds on a background thread.
+     */
+    public static synchronized void startPeriodic() {
+        long intervalSeconds = Config.getLong("checkpoint.intervalSeconds", 60);
+        if (executor != null) executor.shutdownNow();
+        if (intervalSeconds <= 0) return;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "lightdb-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (IOException e) {
+                System.out.println("Checkpoint failed!\n" + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     Copies every table changed since its last checkpoint and removes the log segments no longer needed.
+     @return the number of tables copied
+     @throws IOException if a table cannot be copied or the manifest cannot be written
+     */
+    public static synchronized int checkpoint() throws IOException {
+        long start = System.nanoTime();
+        ChangeLog changeLog = ChangeLog.getInstance();
+        Map<String, TableCheckpoint> manifest = readManifest();
+        long listedLsn = changeLog.getLastLsn();
+        int copied = 0;
+        for (String tableName : tableNames()) {
+            TableCheckpoint previous = manifest.get(tableName);
+            boolean changed;
+            Lock lock = TableLocks.readLock(tableName);
+            lock.lock();
+            try {
+                long lsn = changeLog.getLastLsn();
+                changed = previous == null || changeLog.getTableLsn(tableName) > previous.lsn()
+                        || changeLog.getDirtyTables().contains(tableName);
+                if (changed) {
+                    String directory = tableName + "-" + lsn + "-" + System.currentTimeMillis();
+                    copyTable(tableName, checkpointDirectory(directory));
+                    manifest.put(tableName, new TableCheckpoint(lsn, directory));
+                    writeManifest(manifest);
+                    changeLog.markClean(tableName);
+                } else {
+                    // the copy still matches the table, only the log up to now is known not to touch it
+                    manifest.put(tableName, new TableCheckpoint(lsn, previous.directory()));
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (changed) {
+                if (previous != null) deleteDirectory(checkpointDirectory(previous.directory()).toPath());
+                copied++;
+            }
+        }
+        // tables created from now on are only in the log, so it has to be kept from here
+        manifest.put(LISTED, new TableCheckpoint(listedLsn, ""));
+        writeManifest(manifest);
+
+        long coveredLsn = manifest.values().stream().mapToLong(TableCheckpoint::lsn).min().orElse(0);
+        changeLog.removeUpTo(coveredLsn - RETAIN_CHANGES);
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.recordCounter("checkpoint.tablesCopied", copied);
+        metrics.recordCounter("checkpoint.micros", (System.nanoTime() - start) / 1000);
+        return copied;
+    }
+
+    /**
+     Reads the manifest of the last checkpoint.
+     @return the checkpoint of each table, in manifest order; empty if no checkpoint was taken
+     @throws IOException if the manifest cannot be read
+     */
+    static Map<String, TableCheckpoint> readManifest() throws IOException {
+        Map<String, TableCheckpoint> manifest = new LinkedHashMap<>();
+        File manifestFile = manifestFile();
+        if (!manifestFile.exists()) return manifest;
+        for (String line : Files.readAllLines(manifestFile.toPath())) {
+            String[] parts = line.split("\\|", -1);
+            if (parts.length >= 2) {
+                manifest.put(parts[0], new TableCheckpoint(Long.parseLong(parts[1].trim()), parts.length > 2 ? parts[2] : ""));
+            }
+        }
+        return manifest;
+    }
+
+    static boolean hasManifest() {
+        return manifestFile().exists();
+    }
+
+    /**
+     Lists the tables of the database from their metadata files, leaving out the materialized views.
+     */
+    static List<String> tableNames() {
+        List<String> tableNames = new ArrayList<>();
+        File[] metadataFiles = new File(Utils.getDataFileName("tables-metadata")).listFiles();
+        if (metadataFiles == null) return tableNames;
+        for (File metadataFile : metadataFiles) {
+            String name = metadataFile.getName();
+            if (name.endsWith("_metadata.txt")) {
+                String tableName = name.substring(0, name.length() - "_metadata.txt".length());
+                // a materialized view is copied with the table it is computed from
+                if (!MaterializedViews.isView(tableName)) tableNames.add(tableName);
+            }
+        }
+        tableNames.sort(null);
+        return tableNames;
+    }
+
+    static File checkpointDirectory(String directory) {
+        return new File(Utils.getDataFileName("checkpoint"), directory);
+    }
+
+    /**
+     Lists the files of a table and of its materialized views, each one with its path inside the data directory.
+     */
+    static List<File> tableFiles(String tableName) throws IOException {
+        List<File> files = new ArrayList<>(TableStores.get(tableName).files());
+        files.add(new File(Utils.getFileName(tableName, FileTypes.META_TABLE)));
+        File optionsFile = new File(Utils.getFileName(tableName, FileTypes.TABLE_OPTIONS));
+        if (optionsFile.exists()) files.add(optionsFile);
+        File schemaFile = new File(Utils.getFileName(tableName, FileTypes.TABLE_SCHEMA));
+        if (schemaFile.exists()) files.add(schemaFile);
+        files.addAll(MaterializedViews.files(tableName));
+        return files;
+    }
+
+    static Path relativePath(File file) {
+        return Path.of(Config.getDataDirectory()).toAbsolutePath().normalize()
+                .relativize(file.toPath().toAbsolutePath().normalize());
+    }
+
+    /**
+     Copies the files of a table into a new checkpoint directory, synced to disk before the directory gets its
+     final name, so that a directory listed in the manifest is always complete.
+     */
+    private static void copyTable(String tableName, File directory) throws IOException {
+        File tempDirectory = new File(directory.getPath() + "-temp");
+        deleteDirectory(tempDirectory.toPath());
+        deleteDirectory(directory.toPath());
+        for (File file : tableFiles(tableName)) {
+            Path target = tempDirectory.toPath().resolve(relativePath(file));
+            Files.createDirectories(target.getParent());
+            Files.copy(file.toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+        Files.createDirectories(tempDirectory.toPath());
+        Files.move(tempDirectory.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeManifest(Map<String, TableCheckpoint> manifest) throws IOException {
+        File manifestFile = manifestFile();
+        File tempFile = new File(manifestFile.getParentFile(), "checkpoint-temp.txt");
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            for (Map.Entry<String, TableCheckpoint> entry : manifest.entrySet()) {
+                String line = entry.getKey() + "|" + entry.getValue().lsn() + "|" + entry.getValue().directory();
+                output.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            output.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        if (!Files.exists(directory)) return;
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     The copy of one table in a checkpoint.
+     @param lsn the LSN of the last change contained in the copy
+     @param directory the name of the directory holding the copy inside database/checkpoint
+     */
+    record TableCheckpoint(long lsn, String directory) {
+    }
+
+    private static File manifestFile() {
+        File directory = new File(Utils.getDataFileName("checkpoint"));
+        directory.mkdirs();
+        return new File(directory, "checkpoint.txt");
+    }
+}
@@ -0,0 +1,185 @@
+package org.database.recovery;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.cache.TableVersions;
+import org.database.metrics.MetricsRegistry;
+import org.database.query.QueryManager;
+import org.database.query.QueryUtils;
+import org.database.replication.ChangeLog;
+import org.database.server.ConsoleRouter;
+import org.database.storage.TableStores;
+import org.database.view.MaterializedViews;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ The Recovery class brings the tables back to the state of the change log when the database starts after a crash.
+ Only the tables that may differ from their checkpoint are touched: the ones with changes logged after it and the
+ ones listed in database/wal/dirty.txt. Each of them is restored from its checkpoint copy, or removed if it was
+ created after the checkpoint, and its logged changes are replayed on top of it. Tables are independent from each
+ other, so they are recovered in parallel on lightdb.recovery.threads threads. The work is bounded by what was
+ changed since the last checkpoint, whatever the size of the database is.
+ */
+public class Recovery {
+
+    /**
+     Recovers the tables and takes a checkpoint of the result. The first start with the change log enabled only
+     takes the initial checkpoint.
+     @throws IOException if a table cannot be restored or a change cannot be replayed
+     */
+    public static void recover() throws IOException {
+        long start = System.nanoTime();
+        ChangeLog changeLog = ChangeLog.getInstance();
+        if (!Checkpointer.hasManifest()) {
+            Checkpointer.checkpoint();
+            return;
+        }
+
+        Map<String, Checkpointer.TableCheckpoint> manifest = Checkpointer.readManifest();
+        removeUnlistedCopies(manifest);
+        long fromLsn = manifest.values().stream().mapToLong(Checkpointer.TableCheckpoint::lsn).min().orElse(0);
+        Map<String, List<ChangeLog.Entry>> changes = new TreeMap<>();
+        for (String tableName : changeLog.getDirtyTables()) {
+            changes.put(tableName, new ArrayList<>());
+        }
+        try (ChangeLog.Reader reader = changeLog.openReader(fromLsn)) {
+            ChangeLog.Entry entry;
+            while ((entry = reader.next(0)) != null) {
+                Checkpointer.TableCheckpoint checkpoint = manifest.get(entry.getTableName());
+                if (checkpoint != null && entry.getLsn() <= checkpoint.lsn()) continue;
+                changes.computeIfAbsent(entry.getTableName(), key -> new ArrayList<>()).add(entry);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Recovery interrupted", e);
+        }
+
+        int replayed = 0;
+        ExecutorService workers = Executors.newFixedThreadPool(
+                (int) Math.max(1, Config.getLong("recovery.threads", Runtime.getRuntime().availableProcessors())));
+        try {
+            List<Future<Integer>> tables = new ArrayList<>();
+            for (Map.Entry<String, List<ChangeLog.Entry>> tableChanges : changes.entrySet()) {
+                String tableName = tableChanges.getKey();
+                tables.add(workers.submit(() -> recoverTable(tableName, manifest.get(tableName), tableChanges.getValue())));
+            }
+            for (Future<Integer> table : tables) {
+                replayed += table.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Recovery interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Recovery failed", e.getCause());
+        } finally {
+            workers.shutdown();
+        }
+
+        if (!changes.isEmpty()) {
+            System.out.println("Recovered " + changes.size() + " table(s), replayed " + replayed + " change(s) in "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        MetricsRegistry.getInstance().recordCounter("recovery.replayedChanges", replayed);
+        Checkpointer.checkpoint();
+    }
+
+    /**
+     Restores one table from its checkpoint and replays its changes, without logging them again.
+     */
+    private static int recoverTable(String tableName, Checkpointer.TableCheckpoint checkpoint,
+                                    List<ChangeLog.Entry> entries) throws IOException {
+        restore(tableName, checkpoint);
+        ChangeLog changeLog = ChangeLog.getInstance();
+        QueryManager queryManager = new QueryManager();
+        QueryUtils queryUtils = new QueryUtils();
+        ConsoleRouter.install();
+        ConsoleRouter.route(OutputStream.nullOutputStream());
+        ChangeLog.suppress(true);
+        try {
+            for (ChangeLog.Entry entry : entries) {
+                queryManager.runner(entry.getStatement(), queryUtils);
+                changeLog.noteTableLsn(tableName, entry.getLsn());
+            }
+        } finally {
+            ChangeLog.suppress(false);
+            ConsoleRouter.route(null);
+        }
+        return entries.size();
+    }
+
+    /**
+     Replaces the files of a table by its checkpoint copy, or removes them if the table has no checkpoint.
+     */
+    private static void restore(String tableName, Checkpointer.TableCheckpoint checkpoint) throws IOException {
+        for (File file : currentFiles(tableName)) {
+            Files.deleteIfExists(file.toPath());
+        }
+        TableStores.invalidate(tableName);
+        MaterializedViews.invalidate();
+        if (checkpoint != null) {
+            Path copy = Checkpointer.checkpointDirectory(checkpoint.directory()).toPath();
+            Path dataDirectory = Path.of(Config.getDataDirectory());
+            try (Stream<Path> paths = Files.walk(copy)) {
+                for (Path path : paths.filter(Files::isRegularFile).toList()) {
+                    Path target = dataDirectory.resolve(copy.relativize(path));
+                    Files.createDirectories(target.getParent());
+                    Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        TableVersions.bump(tableName);
+        MaterializedViews.invalidate();
+    }
+
+    /**
+     Lists the files of a table as it is on disk. A table whose metadata or options cannot be read, e.g. because
+     its creation was cut by the crash, still gets its main files listed.
+     */
+    private static List<File> currentFiles(String tableName) {
+        List<File> files = new ArrayList<>();
+        try {
+            files.addAll(Checkpointer.tableFiles(tableName));
+        } catch (IOException | RuntimeException e) {
+            // listed below from the file names
+        }
+        files.add(new File(Utils.getFileName(tableName, FileTypes.TABLE)));
+        files.add(new File(Utils.getFileName(tableName, FileTypes.META_TABLE)));
+        files.add(new File(Utils.getFileName(tableName, FileTypes.TABLE_OPTIONS)));
+        files.add(new File(Utils.getFileName(tableName, FileTypes.TABLE_SCHEMA)));
+        return files;
+    }
+
+    /**
+     Removes the copies a crash left behind before they were listed in the manifest.
+     */
+    private static void removeUnlistedCopies(Map<String, Checkpointer.TableCheckpoint> manifest) throws IOException {
+        Set<String> listed = new HashSet<>();
+        for (Checkpointer.TableCheckpoint checkpoint : manifest.values()) {
+            listed.add(checkpoint.directory());
+        }
+        File[] directories = new File(Utils.getDataFileName("checkpoint")).listFiles(File::isDirectory);
+        if (directories == null) return;
+        for (File directory : directories) {
+            if (!listed.contains(directory.getName())) Checkpointer.deleteDirectory(directory.toPath());
+        }
+    }
+}
@@ -0,0 +1,433 @@
+package org.database.replication;
+
+import org.database.Utils.Config;
+import org.database.Utils.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ The ChangeLog class is the write-ahead change log of the database, kept in database/wal. Every successful
+ CREATE, INSERT, UPDATE and DELETE is appended as a "lsn|timestamp|table|statement" line while the table lock
+ is still held, so the log order matches the order the changes were applied in. Log sequence numbers (LSN)
+ start at 1 and grow by one per change. A replica logs the changes it applies under their LSN on the primary
+ instead. The log is split into segment files named after their first LSN, so that opening the log only reads
+ the last segment and checkpoints can remove the segments they cover.
+ Replicas and the recovery read the log through Readers, which wait for new changes once they reached its end.
+ The log is written only when lightdb.wal.enabled is set.
+ */
+public class ChangeLog {
+    private static final Map<String, ChangeLog> LOGS = new ConcurrentHashMap<>();
+    private static final boolean SYNC = Config.getBoolean("wal.sync", true);
+    private static final long SEGMENT_BYTES = Config.getLong("wal.segmentBytes", 16 * 1024 * 1024);
+    private static final ThreadLocal<Boolean> SUPPRESSED = new ThreadLocal<>();
+    private static final ThreadLocal<Entry> REPLICATED = new ThreadLocal<>();
+
+    private final File directory;
+    private final Map<String, Long> tableLsns = new ConcurrentHashMap<>();
+    private final Set<String> dirtyTables = ConcurrentHashMap.newKeySet();
+    private final File dirtyFile;
+    private FileOutputStream output;
+    private long segmentBytes;
+    private long lastLsn;
+
+    private ChangeLog(File directory) throws IOException {
+        this.directory = directory;
+        this.dirtyFile = new File(directory, "dirty.txt");
+        directory.mkdirs();
+        if (dirtyFile.exists()) {
+            for (String line : Files.readAllLines(dirtyFile.toPath())) {
+                if (Utils.isValidString(line)) dirtyTables.add(line.trim());
+            }
+        }
+        TreeMap<Long, File> segments = segments();
+        if (segments.isEmpty()) {
+            File first = segmentFile(1);
+            first.createNewFile();
+            segments.put(1L, first);
+        }
+        File last = segments.lastEntry().getValue();
+        lastLsn = segments.lastKey() - 1;
+        try (Reader reader = new Reader(segments.lastKey() - 1, false)) {
+            Entry entry;
+            while ((entry = reader.next(0)) != null) {
+                lastLsn = entry.getLsn();
+            }
+            if (last.length() > reader.validLength()) {
+                // the tail was cut by a crash in the middle of an append
+                try (FileChannel channel = FileChannel.open(last.toPath(), StandardOpenOption.WRITE)) {
+                    channel.truncate(reader.validLength());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Reading the change log interrupted", e);
+        }
+        output = new FileOutputStream(last, true);
+        segmentBytes = last.length();
+    }
+
+    /**
+     Tells whether changes are logged by the current thread. The recovery suppresses logging while it replays
+     changes that are already in the log.
+     @return true if lightdb.wal.enabled is set and logging is not suppressed
+     */
+    public static boolean isEnabled() {
+        return Config.getBoolean("wal.enabled", false) && SUPPRESSED.get() == null;
+    }
+
+    /**
+     Stops or resumes logging the changes made by the current thread.
+     @param suppressed true to stop logging, false to resume
+     */
+    public static void suppress(boolean suppressed) {
+        if (suppressed) {
+            SUPPRESSED.set(Boolean.TRUE);
+        } else {
+            SUPPRESSED.remove();
+        }
+    }
+
+    /**
+     Makes the changes logged by the current thread take the LSN and timestamp of a change of the primary, so that
+     a replica records the changes it applies in its own log under the numbers of the primary. The position of the
+     replica is then the last LSN of its log, kept in step with its tables by the recovery.
+     @param change the change of the primary being applied, or null to number the changes locally again
+     */
+    public static void replicate(Entry change) {
+        if (change != null) {
+            REPLICATED.set(change);
+        } else {
+            REPLICATED.remove();
+        }
+    }
+
+    /**
+     Returns the change log of the current data directory, opening it on first use.
+     @return the change log
+     @throws IOException if the log cannot be opened
+     */
+    public static ChangeLog getInstance() throws IOException {
+        String key = Config.getDataDirectory();
+        ChangeLog log = LOGS.get(key);
+        if (log == null) {
+            synchronized (LOGS) {
+                log = LOGS.get(key);
+                if (log == null) {
+                    log = new ChangeLog(new File(Utils.getDataFileName("wal")));
+                    LOGS.put(key, log);
+                }
+            }
+        }
+        return log;
+    }
+
+    /**
+     Appends a change to the log, synced to disk unless lightdb.wal.sync is false.
+     @param tableName the name of the table changed by the statement
+     @param statement the statement that applied the change
+     @return the LSN of the change
+     @throws IOException if an I/O error occurs while writing the log
+     */
+    public synchronized long append(String tableName, String statement) throws IOException {
+        Entry replicated = REPLICATED.get();
+        long lsn = replicated == null ? lastLsn + 1 : replicated.getLsn();
+        if (lsn <= lastLsn) {
+            throw new IOException("Change " + lsn + " is already in the change log");
+        }
+        if (segmentBytes >= SEGMENT_BYTES || lsn != lastLsn + 1) {
+            // the LSNs only jump between segments, when a replica skips the changes it was started after
+            output.close();
+            output = new FileOutputStream(segmentFile(lsn), true);
+            segmentBytes = 0;
+        }
+        Entry entry = new Entry(lsn, replicated == null ? System.currentTimeMillis() : replicated.getTimestamp(), tableName, statement);
+        byte[] bytes = (entry.format() + "\n").getBytes(StandardCharsets.UTF_8);
+        output.write(bytes);
+        if (SYNC) output.getFD().sync();
+        segmentBytes += bytes.length;
+        lastLsn = entry.getLsn();
+        tableLsns.put(tableName, lastLsn);
+        notifyAll();
+        return lastLsn;
+    }
+
+    /**
+     Records that a table is about to change, before its files are touched. The first change of a table after
+     its checkpoint adds it to database/wal/dirty.txt, so that the recovery restores it even if the change
+     was cut by a crash before it could be logged. Called while the table lock is held.
+     @param tableName the name of the table
+     @throws IOException if an I/O error occurs while writing the list of dirty tables
+     */
+    public void markDirty(String tableName) throws IOException {
+        if (dirtyTables.contains(tableName)) return;
+        synchronized (this) {
+            if (!dirtyTables.add(tableName)) return;
+            try (FileOutputStream dirtyOutput = new FileOutputStream(dirtyFile, true)) {
+                dirtyOutput.write((tableName + "\n").getBytes(StandardCharsets.UTF_8));
+                dirtyOutput.getFD().sync();
+            }
+        }
+    }
+
+    /**
+     Records that the files of a table match its checkpoint. Called while the table lock is held.
+     @param tableName the name of the table
+     @throws IOException if an I/O error occurs while writing the list of dirty tables
+     */
+    public synchronized void markClean(String tableName) throws IOException {
+        if (!dirtyTables.remove(tableName)) return;
+        File tempFile = new File(directory, "dirty-temp.txt");
+        try (FileOutputStream dirtyOutput = new FileOutputStream(tempFile)) {
+            for (String dirtyTable : dirtyTables) {
+                dirtyOutput.write((dirtyTable + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            dirtyOutput.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), dirtyFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public Set<String> getDirtyTables() {
+        return Set.copyOf(dirtyTables);
+    }
+
+    public synchronized long getLastLsn() {
+        return lastLsn;
+    }
+
+    /**
+     Returns the LSN of the last change of a table logged since the log was opened, or noted by the recovery.
+     @param tableName the name of the table
+     @return the LSN, 0 if the table has not changed
+     */
+    public long getTableLsn(String tableName) {
+        return tableLsns.getOrDefault(tableName, 0L);
+    }
+
+    /**
+     Records that a change of a table replayed by the recovery is applied.
+     @param tableName the name of the table
+     @param lsn the LSN of the change
+     */
+    public void noteTableLsn(String tableName, long lsn) {
+        tableLsns.merge(tableName, lsn, Math::max);
+    }
+
+    /**
+     Removes the segments holding only changes up to the given LSN. The segment being written is kept.
+     @param lsn the LSN of the last change that is no longer needed
+     @return the number of removed segments
+     */
+    public synchronized int removeUpTo(long lsn) {
+        List<Map.Entry<Long, File>> segments = new ArrayList<>(segments().entrySet());
+        int removed = 0;
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (segments.get(i + 1).getKey() - 1 > lsn) break;
+            if (segments.get(i).getValue().delete()) removed++;
+        }
+        return removed;
+    }
+
+    /**
+     Opens a reader returning the changes following the given LSN.
+     @param afterLsn the LSN of the last change already known to the caller, 0 to read the whole log
+     @return the reader, to be closed by the caller
+     @throws IOException if the log cannot be opened, or the changes following the LSN were removed
+     */
+    public Reader openReader(long afterLsn) throws IOException {
+        return new Reader(afterLsn, true);
+    }
+
+    private synchronized void awaitAppend(long knownLsn, long timeoutMillis) throws InterruptedException {
+        if (lastLsn <= knownLsn) wait(timeoutMillis);
+    }
+
+    private TreeMap<Long, File> segments() {
+        TreeMap<Long, File> segments = new TreeMap<>();
+        File[] files = directory.listFiles((dir, name) -> name.matches("changes-\\d+\\.log"));
+        if (files == null) return segments;
+        for (File file : files) {
+            segments.put(Long.parseLong(file.getName().replaceAll("\\D", "")), file);
+        }
+        return segments;
+    }
+
+    private File segmentFile(long firstLsn) {
+        return new File(directory, String.format("changes-%020d.log", firstLsn));
+    }
+
+    /**
+     The Reader class reads the log sequentially, moving on to the next segment at the end of each one.
+     It only returns complete lines, so a change being appended concurrently is returned once fully written.
+     */
+    public class Reader implements Closeable {
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private final long afterLsn;
+        private final boolean followSegments;
+        private FileChannel channel;
+        private long segmentLsn;
+        private long lastReadLsn;
+        private long consumed;
+        private long validLength;
+
+        private Reader(long afterLsn, boolean followSegments) throws IOException {
+            this.afterLsn = afterLsn;
+            this.followSegments = followSegments;
+            Map.Entry<Long, File> segment = segments().floorEntry(afterLsn + 1);
+            if (segment == null) {
+                throw new IOException("Changes after LSN " + afterLsn + " were removed by a checkpoint");
+            }
+            open(segment.getKey(), segment.getValue());
+        }
+
+        private void open(long firstLsn, File segment) throws IOException {
+            if (channel != null) channel.close();
+            channel = FileChannel.open(segment.toPath(), StandardOpenOption.READ);
+            segmentLsn = firstLsn;
+            lastReadLsn = firstLsn - 1;
+            consumed = 0;
+            validLength = 0;
+            buffer.clear();
+            buffer.flip();
+            line.reset();
+        }
+
+        /**
+         Returns the next change, waiting for one to be appended if the end of the log was reached.
+         @param timeoutMillis the longest time to wait at the end of the log, 0 not to wait
+         @return the next change, or null if none was appended in time
+         @throws IOException if the log cannot be read
+         @throws InterruptedException if the thread is interrupted while waiting
+         */
+        public Entry next(long timeoutMillis) throws IOException, InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            while (true) {
+                Entry entry = nextBuffered();
+                if (entry != null) {
+                    if (entry.getLsn() > afterLsn) return entry;
+                    continue;
+                }
+                buffer.clear();
+                int read = channel.read(buffer);
+                buffer.flip();
+                if (read > 0) continue;
+
+                if (followSegments) {
+                    // a newer segment is only created once this one is complete, so what is left of it is read first
+                    Map.Entry<Long, File> nextSegment = segments().higherEntry(segmentLsn);
+                    if (nextSegment != null) {
+                        buffer.clear();
+                        read = channel.read(buffer);
+                        buffer.flip();
+                        if (read <= 0) open(nextSegment.getKey(), nextSegment.getValue());
+                        continue;
+                    }
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return null;
+                awaitAppend(lastReadLsn, remaining);
+            }
+        }
+
+        private Entry nextBuffered() throws IOException {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                consumed++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                Entry entry = Entry.parse(line.toString(StandardCharsets.UTF_8));
+                line.reset();
+                if (entry == null || entry.getLsn() != lastReadLsn + 1) {
+                    throw new IOException("Corrupted change log after LSN " + lastReadLsn);
+                }
+                lastReadLsn = entry.getLsn();
+                validLength = consumed;
+                return entry;
+            }
+            return null;
+        }
+
+        /**
+         Returns the length of the current segment up to the end of the last complete change read so far.
+         @return the number of bytes
+         */
+        public long validLength() {
+            return validLength;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     The Entry class is one change of the log.
+     */
+    public static class Entry {
+        private final long lsn;
+        private final long timestamp;
+        private final String tableName;
+        private final String statement;
+
+        public Entry(long lsn, long timestamp, String tableName, String statement) {
+            this.lsn = lsn;
+            this.timestamp = timestamp;
+            this.tableName = tableName;
+            this.statement = statement;
+        }
+
+        public long getLsn() {
+            return lsn;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getStatement() {
+            return statement;
+        }
+
+        public String format() {
+            return lsn + "|" + timestamp + "|" + tableName + "|" + statement;
+        }
+
+        /**
+         Parses a line written by format.
+         @param line the line to be parsed
+         @return the entry, or null if the line is not a valid entry
+         */
+        public static Entry parse(String line) {
+            String[] parts = line.split("\\|", 4);
+            if (parts.length != 4) return null;
+            try {
+                return new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1]), parts[2], parts[3]);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.database.replication;
+
+import org.database.query.IQueryHandler;
+import org.database.query.QueryHandler;
+
+import java.util.List;
+
+/**
+ The ReadOnlyQueryHandler class serves the queries of a replica: reads go to the local tables, which the
+ ReplicaFollower keeps up to date, and every change is rejected since it must be made on the primary.
+ */
+public class ReadOnlyQueryHandler implements IQueryHandler {
+    private final QueryHandler queryHandler = new QueryHandler();
+
+    @Override
+    public boolean createQuery(String tableName, String typeColumns) {
+        return reject("CREATE");
+    }
+
+    @Override
+    public boolean createQuery(String tableName, String typeColumns, String options) {
+        return reject("CREATE");
+    }
+
+    @Override
+    public boolean selectQuery(String tableName, String fields, String conditions) {
+        return queryHandler.selectQuery(tableName, fields, conditions);
+    }
+
+    @Override
+    public boolean aggregateQuery(String tableName, String fields, String conditions, String groupBy) {
+        return queryHandler.aggregateQuery(tableName, fields, conditions, groupBy);
+    }
+
+    @Override
+    public boolean insertQuery(String tableName, String values) {
+        return reject("INSERT");
+    }
+
+    @Override
+    public boolean insertBatchQuery(String tableName, List<String> valuesList) {
+        return reject("INSERT");
+    }
+
+    @Override
+    public boolean updateQuery(String tableName, String values, String conditions) {
+        return reject("UPDATE");
+    }
+
+    @Override
+    public boolean deleteQuery(String tableName, String conditions) {
+        return reject("DELETE");
+    }
+
+    /**
+     Analyzes a local table. Statistics only guide the planner of this replica, they are not replicated.
+     */
+    @Override
+    public boolean analyzeQuery(String tableName) {
+        return queryHandler.analyzeQuery(tableName);
+    }
+
+    @Override
+    public boolean explainSelectQuery(String tableName, String fields, String conditions, boolean analyze) {
+        return queryHandler.explainSelectQuery(tableName, fields, conditions, analyze);
+    }
+
+    @Override
+    public boolean explainAggregateQuery(String tableName, String fields, String conditions, String groupBy, boolean analyze) {
+        return queryHandler.explainAggregateQuery(tableName, fields, conditions, groupBy, analyze);
+    }
+
+    @Override
+    public boolean createViewQuery(String viewName, String tableName, String fields, String conditions, String groupBy) {
+        return reject("CREATE");
+    }
+
+    @Override
+    public boolean alterAddColumnQuery(String tableName, String column, String type, String defaultValue) {
+        return reject("ALTER");
+    }
+
+    @Override
+    public boolean alterDropColumnQuery(String tableName, String column) {
+        return reject("ALTER");
+    }
+
+    @Override
+    public boolean alterInMemoryQuery(String tableName) {
+        return reject("ALTER");
+    }
+
+    private boolean reject(String operation) {
+        System.out.println(operation + " operation failed!\nThis replica is read-only");
+        return false;
+    }
+}
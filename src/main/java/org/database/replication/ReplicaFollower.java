@@ -0,0 +1,155 @@
+package org.database.replication;
+
+import org.database.Utils.Config;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.query.QueryManager;
+import org.database.query.QueryUtils;
+import org.database.server.ConsoleRouter;
+import org.database.server.QueryClient;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+/**
+ The ReplicaFollower class keeps the data directory of a replica up to date with a primary. It follows the
+ change log of the primary through a ReplicationSource and applies each change in log order. A replica keeps a
+ change log of its own, in which every applied change is logged under its LSN on the primary while the table
+ lock is held, the same way the primary logs it. The position of the replica is the last LSN of that log: a
+ change cut by a crash before it was logged is undone by the recovery, which restores its table from the
+ checkpoint, and applied again, so that a restarted or reconnected replica resumes exactly after the last change
+ it applied instead of copying the whole database again. A change that fails on the replica is retried, never
+ skipped, so the replica stops there and its lag grows instead of drifting from the primary. The replica logs in to
+ the primary with the credentials set in lightdb.replication.username, lightdb.replication.password and
+ lightdb.replication.answer. Its position and lag are reported as gauges in SHOW STATS.
+ */
+public class ReplicaFollower implements Runnable {
+    private static final long RETRY_MILLIS = Config.getLong("replication.retryMillis", 1000);
+    private static final long HEARTBEAT_MILLIS = Config.getLong("replication.heartbeatMillis", 1000);
+
+    private final String host;
+    private final int port;
+    private final QueryManager queryManager = new QueryManager();
+    private final QueryUtils queryUtils = new QueryUtils();
+    private volatile long appliedLsn;
+    private volatile long appliedTimestamp;
+    private volatile long primaryLsn;
+    private volatile long primaryTimestamp;
+    private volatile boolean connected;
+
+    /**
+     @param primary the "host:port" address of the QueryServer of the primary
+     @throws IOException if the change log is disabled or cannot be opened
+     */
+    public ReplicaFollower(String primary) throws IOException {
+        if (!ChangeLog.isEnabled()) {
+            throw new IOException("A replica requires lightdb.wal.enabled");
+        }
+        String[] hostPort = primary.split(":");
+        this.host = hostPort[0];
+        this.port = Integer.parseInt(hostPort[1]);
+        appliedLsn = ChangeLog.getInstance().getLastLsn();
+        // the position file of replicas that saved their position apart from the log
+        File positionFile = new File(Utils.getDataFileName("replica_position.txt"));
+        if (positionFile.exists()) {
+            String position = Files.readString(positionFile.toPath()).trim();
+            if (!position.isEmpty()) appliedLsn = Math.max(appliedLsn, Long.parseLong(position));
+        }
+        primaryLsn = appliedLsn;
+    }
+
+    /**
+     Registers the replication gauges and starts following the primary on a background thread.
+     */
+    public void start() {
+        MetricsRegistry metrics = MetricsRegistry.getInstance();
+        metrics.registerGauge("replication.connected", () -> connected ? 1 : 0);
+        metrics.registerGauge("replication.appliedLsn", () -> appliedLsn);
+        metrics.registerGauge("replication.primaryLsn", () -> primaryLsn);
+        metrics.registerGauge("replication.lagChanges", () -> Math.max(0, primaryLsn - appliedLsn));
+        metrics.registerGauge("replication.lagMillis", this::getLagMillis);
+        Thread thread = new Thread(this, "lightdb-replica-follower");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     Follows the primary until the thread is interrupted, reconnecting after every failure.
+     */
+    @Override
+    public void run() {
+        ConsoleRouter.install();
+        ConsoleRouter.route(OutputStream.nullOutputStream());
+        while (!Thread.currentThread().isInterrupted()) {
+            try (QueryClient client = new QueryClient(host, port)) {
+                if (!client.login(Config.getString("replication.username", ""),
+                        Config.getString("replication.password", ""), Config.getString("replication.answer", ""))) {
+                    throw new IOException("Login to the primary failed");
+                }
+                client.setReadTimeout((int) (HEARTBEAT_MILLIS * 10));
+                client.startStream("REPLICATE " + appliedLsn);
+                connected = true;
+                follow(client);
+            } catch (IOException | RuntimeException e) {
+                // the primary is unreachable or went away, retried below
+            } finally {
+                connected = false;
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(QueryClient client) throws IOException {
+        String line;
+        while ((line = client.readStreamLine()) != null) {
+            String[] parts = line.split(" ", 4);
+            if (parts[0].equals("HEARTBEAT") && parts.length >= 3) {
+                primaryLsn = Math.max(primaryLsn, Long.parseLong(parts[1]));
+                primaryTimestamp = Long.parseLong(parts[2]);
+            } else if (parts[0].equals("CHANGE") && parts.length == 4) {
+                apply(Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]);
+            } else {
+                throw new IOException("Unexpected replication message: " + line);
+            }
+        }
+    }
+
+    private void apply(long lsn, long timestamp, String statement) throws IOException {
+        primaryLsn = Math.max(primaryLsn, lsn);
+        if (lsn <= appliedLsn) return;
+        if (lsn != appliedLsn + 1) {
+            throw new IOException("Missing changes between LSN " + appliedLsn + " and " + lsn);
+        }
+        ChangeLog.replicate(new ChangeLog.Entry(lsn, timestamp, null, statement));
+        try {
+            queryManager.runner(statement, queryUtils);
+        } finally {
+            ChangeLog.replicate(null);
+        }
+        // only a change applied in full is logged, so the log tells whether the statement succeeded
+        if (ChangeLog.getInstance().getLastLsn() < lsn) {
+            MetricsRegistry.getInstance().recordCounter("replication.failedChanges", 1);
+            throw new IOException("Change " + lsn + " failed on the replica: " + statement);
+        }
+        appliedLsn = lsn;
+        appliedTimestamp = timestamp;
+        MetricsRegistry.getInstance().recordCounter("replication.appliedChanges", 1);
+    }
+
+    /**
+     Returns how far the replica is behind the primary in time: the age of the last applied change while
+     changes are pending, 0 once every change known from the primary is applied.
+     @return the lag in milliseconds
+     */
+    public long getLagMillis() {
+        if (appliedLsn >= primaryLsn) return 0;
+        long since = appliedTimestamp == 0 ? primaryTimestamp : appliedTimestamp;
+        return since == 0 ? 0 : Math.max(0, System.currentTimeMillis() - since);
+    }
+}
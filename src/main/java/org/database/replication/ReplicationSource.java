@@ -0,0 +1,48 @@
+package org.database.replication;
+
+import org.database.Utils.Config;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ The ReplicationSource class streams the change log of a primary to a replica over a QueryServer connection.
+ After "REPLICATE lsn" the connection only carries "CHANGE lsn timestamp statement" lines, for every change
+ following the given LSN, and "HEARTBEAT lsn timestamp" lines with the last LSN of the primary whenever no
+ change was sent for lightdb.replication.heartbeatMillis, so that the replica can report its lag.
+ */
+public class ReplicationSource {
+    private static final long HEARTBEAT_MILLIS = Config.getLong("replication.heartbeatMillis", 1000);
+
+    /**
+     Streams the changes until the replica goes away. This method blocks the calling thread.
+     @param afterLsn the LSN of the last change applied by the replica
+     @param writer the connection to the replica
+     @throws IOException if the change log cannot be read
+     */
+    public static void stream(long afterLsn, PrintWriter writer) throws IOException {
+        ChangeLog changeLog = ChangeLog.getInstance();
+        ChangeLog.Reader opened;
+        try {
+            opened = changeLog.openReader(afterLsn);
+        } catch (IOException e) {
+            writer.println("> " + e.getMessage() + ", the replica has to be copied again");
+            writer.println("ERROR 0");
+            writer.flush();
+            return;
+        }
+        try (ChangeLog.Reader reader = opened) {
+            while (!writer.checkError()) {
+                ChangeLog.Entry entry = reader.next(HEARTBEAT_MILLIS);
+                if (entry == null) {
+                    writer.println("HEARTBEAT " + changeLog.getLastLsn() + " " + System.currentTimeMillis());
+                } else {
+                    writer.println("CHANGE " + entry.getLsn() + " " + entry.getTimestamp() + " " + entry.getStatement());
+                }
+                writer.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.database.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ The ConsoleRouter class lets a thread capture what the query handlers print to System.out.
+ Once installed, System.out forwards every write to the stream routed for the writing thread,
+ or to the original console when the thread has not routed its output.
+ */
+public class ConsoleRouter extends OutputStream {
+    private static final ThreadLocal<OutputStream> TARGET = new ThreadLocal<>();
+    private static ConsoleRouter installed;
+
+    private final PrintStream console;
+
+    private ConsoleRouter(PrintStream console) {
+        this.console = console;
+    }
+
+    /**
+     Replaces System.out with a routing stream. Calling this method more than once has no further effect.
+     */
+    public static synchronized void install() {
+        if (installed != null) return;
+        installed = new ConsoleRouter(System.out);
+        System.setOut(new PrintStream(installed, true));
+    }
+
+    /**
+     Sends everything the current thread prints to the given stream.
+     @param target the stream receiving the output, or null to print to the console again
+     */
+    public static void route(OutputStream target) {
+        if (target == null) {
+            TARGET.remove();
+        } else {
+            TARGET.set(target);
+        }
+    }
+
+    private OutputStream target() {
+        OutputStream target = TARGET.get();
+        return target == null ? console : target;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target().flush();
+    }
+}
@@ -0,0 +1,142 @@
+package org.database.server;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The QueryClient class is the client side of the QueryServer protocol.
+ */
+public class QueryClient implements Closeable {
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final PrintWriter writer;
+    private String sessionToken;
+
+    public QueryClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        writer = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8);
+    }
+
+    /**
+     Logs in to the server.
+     @param username the username of the user
+     @param password the password of the user
+     @param answer the answer to the security question of the user
+     @return true if the login is successful, false otherwise
+     @throws IOException if the connection fails
+     */
+    public boolean login(String username, String password, String answer) throws IOException {
+        Response response = execute("LOGIN " + username + " " + password + " " + answer);
+        for (String line : response.getLines()) {
+            if (line.startsWith("TOKEN ")) sessionToken = line.substring(6).trim();
+        }
+        return response.isSuccess();
+    }
+
+    /**
+     Resumes a session opened by an earlier login, without sending the credentials again.
+     @param token the session token returned by the earlier login
+     @return true if the session is resumed, false if the token is unknown or expired
+     @throws IOException if the connection fails
+     */
+    public boolean resume(String token) throws IOException {
+        boolean resumed = execute("RESUME " + token).isSuccess();
+        if (resumed) sessionToken = token;
+        return resumed;
+    }
+
+    public String getSessionToken() {
+        return sessionToken;
+    }
+
+    /**
+     Sends one query to the server and waits for its response.
+     @param query the query to be executed
+     @return the response of the server
+     @throws IOException if the connection fails
+     */
+    public Response execute(String query) throws IOException {
+        writer.println(query);
+        writer.flush();
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("> ")) {
+                lines.add(line.substring(2));
+                continue;
+            }
+            String[] status = line.split(" ", 2);
+            int result = status.length > 1 ? Integer.parseInt(status[1].trim()) : 0;
+            return new Response(lines, status[0].equals("OK"), result);
+        }
+        throw new IOException("Connection closed by the server");
+    }
+
+    /**
+     Sends a command that switches the connection to a stream of lines, such as "REPLICATE lsn".
+     The lines are then read with readStreamLine; the connection cannot be used for queries any more.
+     @param command the command to be sent
+     */
+    public void startStream(String command) {
+        writer.println(command);
+        writer.flush();
+    }
+
+    /**
+     Reads the next line of a stream started with startStream.
+     @return the line, or null if the server closed the connection
+     @throws IOException if the connection fails
+     */
+    public String readStreamLine() throws IOException {
+        return reader.readLine();
+    }
+
+    /**
+     Makes reads on this connection fail after the given time without data from the server.
+     @param timeoutMillis the timeout, 0 to wait forever
+     @throws IOException if the timeout cannot be set
+     */
+    public void setReadTimeout(int timeoutMillis) throws IOException {
+        socket.setSoTimeout(timeoutMillis);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.println("QUIT");
+        writer.flush();
+        socket.close();
+    }
+
+    public static class Response {
+        private final List<String> lines;
+        private final boolean success;
+        private final int result;
+
+        public Response(List<String> lines, boolean success, int result) {
+            this.lines = lines;
+            this.success = success;
+            this.result = result;
+        }
+
+        public List<String> getLines() {
+            return lines;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+
+        public int getResult() {
+            return result;
+        }
+    }
+}
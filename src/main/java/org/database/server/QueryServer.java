@@ -0,0 +1,155 @@
+package org.database.server;
+
+import org.database.Utils.Config;
+import org.database.Utils.Utils;
+import org.database.auth.Auth;
+import org.database.auth.SessionManager;
+import org.database.query.IQueryManager;
+import org.database.query.QueryManager;
+import org.database.query.QueryUtils;
+import org.database.replication.ChangeLog;
+import org.database.replication.ReplicationSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ The QueryServer class serves the database over a line based TCP protocol, one thread per connection.
+ A client first sends "LOGIN username password answer", then one query per line. The server answers every
+ request with the lines the query printed, each prefixed with "> ", followed by a status line
+ "OK result" or "ERROR result", where result is the value returned by the QueryManager runner.
+ A successful login answers "> TOKEN token"; a reconnecting client may send "RESUME token" instead of
+ logging in again until the session expires. "QUIT" closes the connection.
+ "REPLICATE lsn" turns the connection into the change log stream of a ReplicationSource.
+ Logins and queries travel in plain text, so the server only listens on the loopback interface unless
+ lightdb.server.bindAddress names another address, e.g. 0.0.0.0 for every interface.
+ */
+public class QueryServer {
+    private final int port;
+    private final Supplier<IQueryManager> queryManagers;
+    private final ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "lightdb-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private ServerSocket serverSocket;
+
+    public QueryServer(int port) {
+        this(port, QueryManager::new);
+    }
+
+    /**
+     @param port the port to listen on
+     @param queryManagers creates the QueryManager of each connection, e.g. one coordinating shards
+     */
+    public QueryServer(int port, Supplier<IQueryManager> queryManagers) {
+        this.port = port;
+        this.queryManagers = queryManagers;
+    }
+
+    /**
+     Accepts connections until the server is stopped. This method blocks the calling thread.
+     @throws IOException if the server socket cannot be opened
+     */
+    public void serve() throws IOException {
+        ConsoleRouter.install();
+        String bindAddress = Config.getString("server.bindAddress", "");
+        InetAddress address = Utils.isValidString(bindAddress) ? InetAddress.getByName(bindAddress.trim()) : InetAddress.getLoopbackAddress();
+        serverSocket = new ServerSocket(port, 50, address);
+        System.out.println("LIGHT DB server listening on " + address.getHostAddress() + " port " + serverSocket.getLocalPort());
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (serverSocket.isClosed()) break;
+                throw e;
+            }
+            connections.execute(() -> handle(socket));
+        }
+    }
+
+    public void stop() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+        connections.shutdownNow();
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(socket.getOutputStream(), false, StandardCharsets.UTF_8)) {
+            IQueryManager queryManager = queryManagers.get();
+            QueryUtils queryUtils = new QueryUtils();
+            boolean isAuthenticated = false;
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.equalsIgnoreCase("QUIT")) break;
+
+                if (line.regionMatches(true, 0, "LOGIN ", 0, 6)) {
+                    String[] credentials = line.substring(6).trim().split("\\s+", 3);
+                    isAuthenticated = credentials.length == 3
+                            && new Auth().loginUser(credentials[0], credentials[1], credentials[2]);
+                    String token = isAuthenticated ? SessionManager.getInstance().createSession(credentials[0]) : null;
+                    reply(writer, isAuthenticated ? "TOKEN " + token : "", isAuthenticated, isAuthenticated ? 1 : 0);
+                    continue;
+                }
+                if (line.regionMatches(true, 0, "RESUME ", 0, 7)) {
+                    isAuthenticated = SessionManager.getInstance().resume(line.substring(7).trim()) != null;
+                    reply(writer, "", isAuthenticated, isAuthenticated ? 1 : 0);
+                    continue;
+                }
+                if (!isAuthenticated) {
+                    reply(writer, "Please login first", false, 0);
+                    continue;
+                }
+                if (line.regionMatches(true, 0, "REPLICATE ", 0, 10)) {
+                    if (!ChangeLog.isEnabled()) {
+                        reply(writer, "Change log is disabled, start the primary with -Dlightdb.wal.enabled=true", false, 0);
+                        continue;
+                    }
+                    String lsn = line.substring(10).trim();
+                    if (!lsn.matches("\\d+")) {
+                        reply(writer, "Invalid log position " + lsn, false, 0);
+                        continue;
+                    }
+                    ReplicationSource.stream(Long.parseLong(lsn), writer);
+                    break;
+                }
+
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                ConsoleRouter.route(output);
+                int result;
+                try {
+                    result = queryManager.runner(line, queryUtils);
+                } finally {
+                    ConsoleRouter.route(null);
+                }
+                reply(writer, output.toString(), result == 1 && queryManager.isLastQuerySuccessful(), result);
+            }
+        } catch (IOException e) {
+            // the client went away, nothing left to answer
+        }
+    }
+
+    private void reply(PrintWriter writer, String output, boolean success, int result) {
+        if (Utils.isValidString(output)) {
+            for (String outputLine : output.split("\\R")) {
+                writer.println("> " + outputLine);
+            }
+        }
+        writer.println((success ? "OK " : "ERROR ") + result);
+        writer.flush();
+    }
+}
@@ -0,0 +1,74 @@
+package org.database.shard;
+
+import org.database.Utils.Config;
+import org.database.server.QueryClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ The ShardPool class keeps logged-in connections to the worker servers holding the shards, shared by all
+ connections of the coordinator. Workers are given as "host:port" and logged in to with the credentials
+ set in lightdb.shard.username, lightdb.shard.password and lightdb.shard.answer.
+ */
+public class ShardPool {
+    private final List<String> addresses;
+    private final List<Queue<QueryClient>> idleClients = new ArrayList<>();
+
+    /**
+     @param addresses the "host:port" addresses of the workers, in shard order
+     */
+    public ShardPool(List<String> addresses) {
+        this.addresses = addresses;
+        for (int i = 0; i < addresses.size(); i++) {
+            idleClients.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    public int size() {
+        return addresses.size();
+    }
+
+    public String address(int shard) {
+        return addresses.get(shard);
+    }
+
+    /**
+     Takes an idle connection to a shard, opening and logging in a new one if there is none.
+     @param shard the number of the shard
+     @return a connection used by the caller only, until it is released or discarded
+     @throws IOException if the worker cannot be reached or refuses the login
+     */
+    public QueryClient borrow(int shard) throws IOException {
+        QueryClient client = idleClients.get(shard).poll();
+        if (client != null) return client;
+
+        String[] hostPort = addresses.get(shard).split(":");
+        client = new QueryClient(hostPort[0], Integer.parseInt(hostPort[1]));
+        if (!client.login(Config.getString("shard.username", ""), Config.getString("shard.password", ""),
+                Config.getString("shard.answer", ""))) {
+            discard(client);
+            throw new IOException("Login to shard " + addresses.get(shard) + " failed");
+        }
+        return client;
+    }
+
+    public void release(int shard, QueryClient client) {
+        idleClients.get(shard).add(client);
+    }
+
+    /**
+     Closes a connection that failed, so that it is not used again.
+     @param client the failed connection
+     */
+    public void discard(QueryClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            // the connection is already broken
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package org.database.shard;
+
+import org.database.metrics.QueryTrace;
+import org.database.query.Aggregate;
+import org.database.query.IQueryHandler;
+import org.database.query.QueryHandler;
+import org.database.query.QueryUtils;
+import org.database.server.QueryClient;
+import org.database.storage.LsmTableStore;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ The ShardedQueryHandler class executes statements on the worker servers of a ShardPool, each one holding a
+ shard of every table. Rows are placed on the shard given by the hash of their primary key, or of their first
+ column for tables without one. Statements whose conditions pin the primary key go to that shard only, the
+ others are scattered to all shards and their results gathered; aggregates are computed partially on the
+ shards and merged here. The coordinator keeps the schema of the tables in its own data directory.
+ */
+public class ShardedQueryHandler implements IQueryHandler {
+    private static final ExecutorService SCATTER = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "lightdb-shard-scatter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ShardPool pool;
+    private final QueryHandler catalog = new QueryHandler();
+    private final QueryUtils queryUtils = new QueryUtils();
+
+    public ShardedQueryHandler(ShardPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public boolean createQuery(String tableName, String typeColumns) {
+        return createQuery(tableName, typeColumns, null);
+    }
+
+    @Override
+    public boolean createQuery(String tableName, String typeColumns, String options) {
+        if (!catalog.createQuery(tableName, typeColumns, options)) {
+            return false;
+        }
+        String query = "create table " + tableName + " (" + typeColumns + ")" + (options == null ? "" : " " + options);
+        return printResult(scatter(allShards(), query), false);
+    }
+
+    @Override
+    public boolean selectQuery(String tableName, String fields, String conditions) {
+        String query = "select " + fields + " from " + tableName + where(conditions);
+        return printResult(scatter(route(tableName, conditions), query), true);
+    }
+
+    @Override
+    public boolean aggregateQuery(String tableName, String fields, String conditions, String groupBy) {
+        String groupByClause = groupBy == null ? "" : " group by " + groupBy;
+        List<Integer> shards = route(tableName, conditions);
+        List<Aggregate> aggregates = Aggregate.parse(fields);
+        if (aggregates == null || shards.size() == 1) {
+            String query = "select " + fields + " from " + tableName + where(conditions) + groupByClause;
+            return printResult(scatter(shards, query), true);
+        }
+
+        StringJoiner partialFields = new StringJoiner(", ");
+        if (groupBy != null) partialFields.add(groupBy);
+        for (Aggregate aggregate : aggregates) {
+            for (String function : aggregate.partialFunctions()) {
+                partialFields.add(function + "(" + aggregate.getColumn() + ")");
+            }
+        }
+        String query = "select " + partialFields + " from " + tableName + where(conditions) + groupByClause;
+        List<QueryClient.Response> responses = scatter(shards, query);
+        if (responses == null || !allSucceeded(responses)) {
+            return printResult(responses, true);
+        }
+
+        long mergeStart = System.nanoTime();
+        Map<String, Aggregate.Accumulator[]> groups = new LinkedHashMap<>();
+        long partialRows = 0;
+        for (QueryClient.Response response : responses) {
+            for (String line : response.getLines()) {
+                partialRows++;
+                String[] values = line.split(" \\| ", -1);
+                int idx = 0;
+                String group = groupBy == null ? "" : values[idx++];
+                Aggregate.Accumulator[] accumulators = groups.computeIfAbsent(group, key -> {
+                    Aggregate.Accumulator[] created = new Aggregate.Accumulator[aggregates.size()];
+                    for (int i = 0; i < created.length; i++) {
+                        created[i] = aggregates.get(i).newAccumulator();
+                    }
+                    return created;
+                });
+                for (int i = 0; i < accumulators.length; i++) {
+                    if (!aggregates.get(i).isFunction()) {
+                        accumulators[i].combine(null, group);
+                    }
+                    for (String function : aggregates.get(i).partialFunctions()) {
+                        accumulators[i].combine(function, values[idx++]);
+                    }
+                }
+            }
+        }
+        for (Aggregate.Accumulator[] accumulators : groups.values()) {
+            StringJoiner line = new StringJoiner(" | ");
+            for (Aggregate.Accumulator accumulator : accumulators) {
+                line.add(accumulator.result());
+            }
+            System.out.println(line);
+        }
+        QueryTrace.operator("merge partial aggregates", System.nanoTime() - mergeStart, partialRows);
+        return true;
+    }
+
+    @Override
+    public boolean insertQuery(String tableName, String values) {
+        return insertBatchQuery(tableName, List.of(values));
+    }
+
+    /**
+     Splits the rows by shard and inserts the part of each shard. The rows are checked against the schema of the
+     catalog and against each other first, so that a shard only refuses its part for a key it already holds.
+     The rows a shard inserted are deleted again when another shard refused its part, so that the statement
+     has no effect; when that is not possible, because the table has no primary key, its keys cannot be
+     matched exactly or a shard did not answer, the shards holding the rows are reported.
+     */
+    @Override
+    public boolean insertBatchQuery(String tableName, List<String> valuesList) {
+        Map<String, String> fieldEntry;
+        String primaryKeyField;
+        int keyIdx;
+        try {
+            fieldEntry = queryUtils.getMetaData(tableName);
+            primaryKeyField = queryUtils.getPrimaryKeyField();
+            keyIdx = primaryKeyField == null ? 0 : queryUtils.getPrimaryKeyFieldIdx();
+        } catch (IOException e) {
+            System.out.println("Table not exists");
+            return false;
+        }
+
+        Set<String> batchKeys = new HashSet<>();
+        Map<Integer, StringJoiner> perShard = new LinkedHashMap<>();
+        Map<Integer, List<String>> keysPerShard = new LinkedHashMap<>();
+        for (String values : valuesList) {
+            List<String> rowValues = List.of(values.split(","));
+            if (fieldEntry.size() != rowValues.size()) {
+                System.out.println("INSERT operation failed!.\nRequires " + fieldEntry.size() + " values instead of " + rowValues.size());
+                return false;
+            }
+            if (!queryUtils.validateValueToType(fieldEntry, rowValues)) {
+                System.out.println("INSERT operation failed!.\nValues may contains invalid type.");
+                return false;
+            }
+            String key = rowValues.get(keyIdx).trim();
+            if (primaryKeyField != null && !batchKeys.add(key)) {
+                System.out.println("INSERT operation failed!\n Duplicate primary key values.");
+                return false;
+            }
+            int shard = shardOf(key);
+            perShard.computeIfAbsent(shard, idx -> new StringJoiner(",")).add("(" + values + ")");
+            keysPerShard.computeIfAbsent(shard, idx -> new ArrayList<>()).add(key);
+        }
+        List<Integer> shards = new ArrayList<>(perShard.keySet());
+        List<String> queries = new ArrayList<>();
+        for (StringJoiner rows : perShard.values()) {
+            queries.add("insert into " + tableName + " values " + rows);
+        }
+
+        List<QueryClient.Response> responses = gather(shards, queries);
+        List<Integer> inserted = new ArrayList<>();
+        boolean unreachable = false;
+        boolean refused = false;
+        for (int i = 0; i < shards.size(); i++) {
+            QueryClient.Response response = responses.get(i);
+            if (response == null) {
+                unreachable = true;
+                System.out.println("Shard " + pool.address(shards.get(i)) + " is not available");
+            } else if (response.isSuccess()) {
+                inserted.add(shards.get(i));
+            } else if (!refused) {
+                // the other shards usually refuse their part with the same message
+                response.getLines().forEach(System.out::println);
+                refused = true;
+            }
+        }
+        if (inserted.size() == shards.size()) return true;
+        if (inserted.isEmpty() && !unreachable) return false;
+
+        List<Integer> kept = new ArrayList<>();
+        for (int shard : inserted) {
+            if (unreachable || primaryKeyField == null || !removeRows(shard, tableName, primaryKeyField, keysPerShard.get(shard))) {
+                kept.add(shard);
+            }
+        }
+        if (kept.isEmpty() && !unreachable) {
+            System.out.println("The rows inserted on the other shards were removed again");
+        } else {
+            StringJoiner addresses = new StringJoiner(", ");
+            kept.forEach(shard -> addresses.add(pool.address(shard)));
+            System.out.println("INSERT operation partially applied!\nRows were inserted on shards " + addresses
+                    + (unreachable ? ", the unavailable shards may hold theirs" : ""));
+        }
+        return false;
+    }
+
+    /**
+     Deletes the rows just inserted on a shard by their primary key, one key at a time.
+     @return true if every row was deleted, false if a key cannot be matched exactly or a delete failed
+     */
+    private boolean removeRows(int shard, String tableName, String primaryKeyField, List<String> keys) {
+        // conditions compare values ignoring case, so a key with letters could match other rows
+        for (String key : keys) {
+            if (!LsmTableStore.isCaseless(key) || !key.matches("[\\w]+")) return false;
+        }
+        try {
+            for (String key : keys) {
+                if (!execute(shard, "delete from " + tableName + " where " + primaryKeyField + " = " + key).isSuccess()) return false;
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean updateQuery(String tableName, String values, String conditions) {
+        String primaryKeyField = primaryKeyField(tableName);
+        if (primaryKeyField != null && queryUtils.parseColumnValues(List.of(values.split(","))).containsKey(primaryKeyField)) {
+            System.out.println("UPDATE operation failed!\nPrimary key of a sharded table cannot be updated");
+            return false;
+        }
+        String query = "update " + tableName + " set " + values + where(conditions);
+        return printResult(scatter(route(tableName, conditions), query), false);
+    }
+
+    @Override
+    public boolean deleteQuery(String tableName, String conditions) {
+        String query = "delete from " + tableName + where(conditions);
+        return printResult(scatter(route(tableName, conditions), query), false);
+    }
+
+    /**
+     Analyzes the shard of the table held by every worker, each one planning with its own statistics.
+     */
+    @Override
+    public boolean analyzeQuery(String tableName) {
+        if (!catalogHas(tableName)) {
+            System.out.println("Table " + tableName + " does not exist");
+            return false;
+        }
+        return printResult(scatter(allShards(), "analyze " + tableName), true);
+    }
+
+    @Override
+    public boolean explainSelectQuery(String tableName, String fields, String conditions, boolean analyze) {
+        String query = "select " + fields + " from " + tableName + where(conditions);
+        return explain(route(tableName, conditions), query, analyze);
+    }
+
+    @Override
+    public boolean explainAggregateQuery(String tableName, String fields, String conditions, String groupBy, boolean analyze) {
+        String query = "select " + fields + " from " + tableName + where(conditions) + (groupBy == null ? "" : " group by " + groupBy);
+        return explain(route(tableName, conditions), query, analyze);
+    }
+
+    /**
+     Materialized views are not supported on shards: each shard would only hold the groups of its own rows, and
+     reading the view table would not merge them.
+     */
+    @Override
+    public boolean createViewQuery(String viewName, String tableName, String fields, String conditions, String groupBy) {
+        System.out.println("CREATE operation failed!\nMaterialized views are not supported on a sharded database");
+        return false;
+    }
+
+    @Override
+    public boolean alterAddColumnQuery(String tableName, String column, String type, String defaultValue) {
+        if (!catalog.alterAddColumnQuery(tableName, column, type, defaultValue)) {
+            return false;
+        }
+        String query = "alter table " + tableName + " add column " + column + " " + type
+                + (defaultValue == null ? "" : " default " + defaultValue);
+        return printResult(scatter(allShards(), query), false);
+    }
+
+    @Override
+    public boolean alterDropColumnQuery(String tableName, String column) {
+        if (!catalog.alterDropColumnQuery(tableName, column)) {
+            return false;
+        }
+        return printResult(scatter(allShards(), "alter table " + tableName + " drop column " + column), false);
+    }
+
+    @Override
+    public boolean alterInMemoryQuery(String tableName) {
+        if (!catalog.alterInMemoryQuery(tableName)) {
+            return false;
+        }
+        return printResult(scatter(allShards(), "alter table " + tableName + " set in_memory"), false);
+    }
+
+    /**
+     Prints the plan of each shard the query is sent to, under the address of the shard.
+     */
+    private boolean explain(List<Integer> shards, String query, boolean analyze) {
+        List<QueryClient.Response> responses = scatter(shards, "explain " + (analyze ? "analyze " : "") + query);
+        if (!printResult(responses, false)) return false;
+        System.out.println(shards.size() == 1 ? "Route to 1 shard" : "Scatter to " + shards.size() + " shards and gather");
+        for (int i = 0; i < shards.size(); i++) {
+            System.out.println("  -> Shard " + pool.address(shards.get(i)));
+            for (String line : responses.get(i).getLines()) {
+                System.out.println("       " + line);
+            }
+        }
+        return true;
+    }
+
+    /**
+     Finds the shards that may hold rows matching the given conditions.
+     */
+    private List<Integer> route(String tableName, String conditions) {
+        String primaryKeyField = primaryKeyField(tableName);
+        String key = primaryKeyField == null ? null : queryUtils.getEqualityConditions(conditions).get(primaryKeyField);
+        if (key != null) {
+            QueryTrace.accessPath("shard routing");
+            return List.of(shardOf(key));
+        }
+        QueryTrace.accessPath("scatter gather");
+        return allShards();
+    }
+
+    private boolean catalogHas(String tableName) {
+        try {
+            queryUtils.getMetaData(tableName);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private String primaryKeyField(String tableName) {
+        try {
+            queryUtils.getMetaData(tableName);
+            return queryUtils.getPrimaryKeyField();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     Returns the shard of a primary key value. Conditions compare values ignoring case, so keys are placed
+     the same way whatever their case is.
+     */
+    private int shardOf(String key) {
+        return Math.floorMod(key.trim().toLowerCase(Locale.ROOT).hashCode(), pool.size());
+    }
+
+    private List<Integer> allShards() {
+        List<Integer> shards = new ArrayList<>();
+        for (int i = 0; i < pool.size(); i++) {
+            shards.add(i);
+        }
+        return shards;
+    }
+
+    private List<QueryClient.Response> scatter(List<Integer> shards, String query) {
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            queries.add(query);
+        }
+        return scatter(shards, queries);
+    }
+
+    /**
+     Sends one query to each of the given shards in parallel and waits for all responses.
+     @param shards the shards to send the queries to
+     @param queries the query for each shard, in the same order
+     @return the responses in shard order, or null if a shard could not be reached
+     */
+    private List<QueryClient.Response> scatter(List<Integer> shards, List<String> queries) {
+        List<QueryClient.Response> responses = gather(shards, queries);
+        for (int i = 0; i < responses.size(); i++) {
+            if (responses.get(i) == null) {
+                System.out.println("Shard " + pool.address(shards.get(i)) + " is not available");
+                return null;
+            }
+        }
+        return responses;
+    }
+
+    /**
+     Sends one query to each of the given shards in parallel and waits for all responses.
+     @param shards the shards to send the queries to
+     @param queries the query for each shard, in the same order
+     @return the responses in shard order, null for each shard that could not be reached
+     */
+    private List<QueryClient.Response> gather(List<Integer> shards, List<String> queries) {
+        long scatterStart = System.nanoTime();
+        List<Future<QueryClient.Response>> futures = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            int shard = shards.get(i);
+            String query = queries.get(i);
+            futures.add(SCATTER.submit(() -> execute(shard, query)));
+        }
+
+        List<QueryClient.Response> responses = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                responses.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                responses.add(null);
+            } catch (ExecutionException e) {
+                responses.add(null);
+            }
+        }
+        QueryTrace.operator("scatter to " + shards.size() + " shards", System.nanoTime() - scatterStart, shards.size());
+        return responses;
+    }
+
+    private QueryClient.Response execute(int shard, String query) throws IOException {
+        QueryClient client = pool.borrow(shard);
+        try {
+            QueryClient.Response response = client.execute(query);
+            pool.release(shard, client);
+            return response;
+        } catch (IOException e) {
+            pool.discard(client);
+            throw e;
+        }
+    }
+
+    /**
+     Prints the gathered output of the shards. When a shard failed, only its output is printed, since the other
+     shards usually answer with the same message.
+     @param responses the responses of the shards, or null if a shard could not be reached
+     @param printRows true to print the output of every shard, false to print only failures
+     @return true if every shard succeeded, false otherwise
+     */
+    private boolean printResult(List<QueryClient.Response> responses, boolean printRows) {
+        if (responses == null) return false;
+        for (QueryClient.Response response : responses) {
+            if (!response.isSuccess()) {
+                response.getLines().forEach(System.out::println);
+                return false;
+            }
+        }
+        if (printRows) {
+            for (QueryClient.Response response : responses) {
+                response.getLines().forEach(System.out::println);
+            }
+        }
+        return true;
+    }
+
+    private boolean allSucceeded(List<QueryClient.Response> responses) {
+        for (QueryClient.Response response : responses) {
+            if (!response.isSuccess()) return false;
+        }
+        return true;
+    }
+
+    private static String where(String conditions) {
+        return conditions == null ? "" : " where " + conditions.trim();
+    }
+}
@@ -0,0 +1,118 @@
+package org.database.storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ The BloomFilter class answers whether a column value may be in a table. A value it has never seen is reported
+ absent with a probability of false positives depending on lightdb.bloom.bitsPerKey, and a value it has seen is
+ never reported absent. Values are compared the way conditions compare them, trimmed and ignoring case.
+ */
+public class BloomFilter {
+    private final long[] words;
+    private final int hashes;
+    private long count;
+
+    private BloomFilter(long[] words, int hashes, long count) {
+        this.words = words;
+        this.hashes = hashes;
+        this.count = count;
+    }
+
+    /**
+     Creates an empty filter.
+     @param expectedKeys the number of values the filter is sized for
+     @param bitsPerKey the number of bits per value, 10 giving about 1% of false positives
+     @return the filter
+     */
+    public static BloomFilter create(long expectedKeys, int bitsPerKey) {
+        long bits = Math.max(1024, expectedKeys * bitsPerKey);
+        int hashes = (int) Math.max(1, Math.min(16, Math.round(bitsPerKey * Math.log(2))));
+        return new BloomFilter(new long[(int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64)], hashes, 0);
+    }
+
+    public void add(String value) {
+        addHash(hash(value));
+    }
+
+    /**
+     Adds a value given by its hash, as returned by hash.
+     @param hash the hash of the value
+     */
+    public void addHash(long hash) {
+        long bits = (long) words.length * 64;
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bits);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+        count++;
+    }
+
+    public boolean mightContain(String value) {
+        long hash = hash(value);
+        long bits = (long) words.length * 64;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(hash + i * h2, bits);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     Returns the number of values added, duplicates included.
+     @return the number of values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     Returns the number of values the filter can hold before its false positive rate grows past the expected one.
+     @param bitsPerKey the number of bits per value the filter was created with
+     @return the number of values
+     */
+    public long getCapacity(int bitsPerKey) {
+        return (long) words.length * 64 / bitsPerKey;
+    }
+
+    /**
+     Hashes a value with 64-bit FNV-1a, after trimming it and ignoring its case, then mixes the bits.
+     @param value the value
+     @return the hash
+     */
+    public static long hash(String value) {
+        String normalized = value.trim().toLowerCase(Locale.ROOT);
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < normalized.length(); i++) {
+            hash ^= normalized.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    public void write(DataOutputStream output) throws IOException {
+        output.writeInt(hashes);
+        output.writeLong(count);
+        output.writeInt(words.length);
+        for (long word : words) {
+            output.writeLong(word);
+        }
+    }
+
+    public static BloomFilter read(DataInputStream input) throws IOException {
+        int hashes = input.readInt();
+        long count = input.readLong();
+        long[] words = new long[input.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = input.readLong();
+        }
+        return new BloomFilter(words, hashes, count);
+    }
+}
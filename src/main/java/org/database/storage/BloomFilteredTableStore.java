@@ -0,0 +1,268 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The BloomFilteredTableStore class keeps a Bloom filter per filtered column of a store, the primary key and the
+ columns named in the BLOOM=column,... option, so that a statement looking for a value the store does not hold
+ returns without reading any row. Partitioned tables get one filter set per partition.
+
+ The filters are saved in name_bloom.bin with the names and sizes of the store files they describe. Appends update
+ them in memory and save them once lightdb.bloom.saveEveryRows rows were added, so a saved filter that no longer
+ matches the files of the store is rebuilt from the rows when the store is opened. A rewrite deletes the saved
+ filters first, adds the rewritten rows to them and saves them afterwards; once deleted rows make up a quarter of
+ the values held, the filters are rebuilt from the remaining rows.
+ */
+public class BloomFilteredTableStore implements TableStore {
+    private static final int VERSION = 1;
+    private static final int BITS_PER_KEY = (int) Math.max(2, Config.getLong("bloom.bitsPerKey", 10));
+    private static final long SAVE_EVERY_ROWS = Config.getLong("bloom.saveEveryRows", 1024);
+
+    private final TableStore store;
+    private final String fileName;
+    private final List<String> columns;
+    private final List<String> filteredColumns;
+    private Map<String, BloomFilter> filters;
+    private long removedRows;
+    private long unsavedRows;
+
+    /**
+     @param store the store holding the rows
+     @param fileName the name the files of the store are derived from
+     @param columns the column names of the table, in storage order
+     @param filteredColumns the columns to keep a filter for
+     */
+    public BloomFilteredTableStore(TableStore store, String fileName, List<String> columns, List<String> filteredColumns) {
+        this.store = store;
+        this.fileName = fileName;
+        this.columns = columns;
+        this.filteredColumns = filteredColumns;
+    }
+
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        if (!mayContain(equalities)) return;
+        store.scan(equalities, visitor);
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        Map<String, BloomFilter> filters = filters();
+        store.append(lines);
+        for (String line : lines) {
+            add(filters, line);
+        }
+        unsavedRows += lines.size();
+        if (tooFull(filters)) {
+            rebuild();
+        } else if (unsavedRows >= SAVE_EVERY_ROWS) {
+            save();
+        }
+    }
+
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        if (!mayContain(equalities)) return;
+        Map<String, BloomFilter> filters = filters();
+        Files.deleteIfExists(getFile().toPath());
+        Queue<String> rewritten = new ConcurrentLinkedQueue<>();
+        AtomicLong removed = new AtomicLong();
+        store.rewrite(equalities, line -> {
+            String output = rewriter.apply(line);
+            if (output == null) {
+                removed.incrementAndGet();
+            } else if (!output.equals(line)) {
+                rewritten.add(output);
+            }
+            return output;
+        });
+        for (String line : rewritten) {
+            add(filters, line);
+        }
+        // a changed row stays in the filters with its old values as well
+        removedRows += removed.get() + rewritten.size();
+        if (removedRows * 4 > count(filters) || tooFull(filters)) {
+            rebuild();
+        } else {
+            save();
+        }
+    }
+
+    @Override
+    public List<File> files() throws IOException {
+        List<File> files = new ArrayList<>(store.files());
+        if (getFile().exists()) files.add(getFile());
+        return files;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+
+    /**
+     Tells whether the store may hold rows having the given column values, loading or building the filters
+     on first use.
+     */
+    @Override
+    public boolean mayContain(Map<String, String> equalities) throws IOException {
+        if (equalities.isEmpty()) return store.mayContain(equalities);
+        Map<String, BloomFilter> filters = filters();
+        for (Map.Entry<String, String> equality : equalities.entrySet()) {
+            BloomFilter filter = filters.get(equality.getKey());
+            if (filter != null && !filter.mightContain(equality.getValue())) {
+                QueryTrace.accessPath("bloom filter");
+                MetricsRegistry.getInstance().recordCounter("bloom.definiteMisses", 1);
+                return false;
+            }
+        }
+        return store.mayContain(equalities);
+    }
+
+    public File getFile() {
+        return new File(Utils.getFileName(fileName, FileTypes.BLOOM_FILTER));
+    }
+
+    private synchronized Map<String, BloomFilter> filters() throws IOException {
+        if (filters == null && !load()) rebuild();
+        return filters;
+    }
+
+    /**
+     Loads the saved filters if they describe the store as it is now.
+     */
+    private boolean load() throws IOException {
+        File file = getFile();
+        if (!file.exists()) return false;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (input.readInt() != VERSION || !input.readUTF().equals(storeLayout())) return false;
+            Map<String, BloomFilter> loaded = new LinkedHashMap<>();
+            int count = input.readInt();
+            for (int i = 0; i < count; i++) {
+                loaded.put(input.readUTF(), BloomFilter.read(input));
+            }
+            if (!loaded.keySet().equals(new HashSet<>(filteredColumns))) return false;
+            removedRows = input.readLong();
+            filters = loaded;
+            return true;
+        } catch (IOException e) {
+            // a damaged file is rebuilt like a stale one
+            return false;
+        }
+    }
+
+    /**
+     Builds the filters from the rows of the store, sized for the number of rows it holds, and saves them.
+     */
+    private synchronized void rebuild() throws IOException {
+        List<long[]> hashes = new ArrayList<>();
+        int[] columnIdxs = new int[filteredColumns.size()];
+        for (int i = 0; i < columnIdxs.length; i++) {
+            columnIdxs[i] = columns.indexOf(filteredColumns.get(i));
+            hashes.add(new long[1024]);
+        }
+        long[] rows = new long[1];
+        store.scan(Map.of(), line -> {
+            String[] rowValues = line.split("\\|");
+            int row = (int) rows[0]++;
+            for (int i = 0; i < columnIdxs.length; i++) {
+                long[] columnHashes = hashes.get(i);
+                if (row == columnHashes.length) {
+                    columnHashes = Arrays.copyOf(columnHashes, row * 2);
+                    hashes.set(i, columnHashes);
+                }
+                int columnIdx = columnIdxs[i];
+                columnHashes[row] = BloomFilter.hash(columnIdx < rowValues.length ? rowValues[columnIdx] : "");
+            }
+            return true;
+        });
+        Map<String, BloomFilter> built = new LinkedHashMap<>();
+        for (int i = 0; i < columnIdxs.length; i++) {
+            BloomFilter filter = BloomFilter.create(rows[0] * 2, BITS_PER_KEY);
+            long[] columnHashes = hashes.get(i);
+            for (int row = 0; row < rows[0]; row++) {
+                filter.addHash(columnHashes[row]);
+            }
+            built.put(filteredColumns.get(i), filter);
+        }
+        filters = built;
+        removedRows = 0;
+        MetricsRegistry.getInstance().recordCounter("bloom.rebuilds", 1);
+        save();
+    }
+
+    private void save() throws IOException {
+        File file = getFile();
+        File tempFile = new File(file.getPath() + "-temp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            output.writeInt(VERSION);
+            output.writeUTF(storeLayout());
+            output.writeInt(filters.size());
+            for (Map.Entry<String, BloomFilter> filter : filters.entrySet()) {
+                output.writeUTF(filter.getKey());
+                filter.getValue().write(output);
+            }
+            output.writeLong(removedRows);
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        unsavedRows = 0;
+    }
+
+    private void add(Map<String, BloomFilter> filters, String line) {
+        String[] rowValues = line.split("\\|");
+        for (Map.Entry<String, BloomFilter> filter : filters.entrySet()) {
+            int columnIdx = columns.indexOf(filter.getKey());
+            filter.getValue().add(columnIdx < rowValues.length ? rowValues[columnIdx] : "");
+        }
+    }
+
+    private static boolean tooFull(Map<String, BloomFilter> filters) {
+        for (BloomFilter filter : filters.values()) {
+            if (filter.getCount() > filter.getCapacity(BITS_PER_KEY)) return true;
+        }
+        return false;
+    }
+
+    private static long count(Map<String, BloomFilter> filters) {
+        return filters.values().stream().mapToLong(BloomFilter::getCount).max().orElse(0);
+    }
+
+    /**
+     Describes the files of the store by name and size. Appends grow a file or create a new one, so a saved filter
+     written before the last append no longer matches.
+     */
+    private String storeLayout() throws IOException {
+        StringJoiner layout = new StringJoiner(",");
+        for (File file : store.files()) {
+            layout.add(file.getName() + ":" + file.length());
+        }
+        return layout.toString();
+    }
+}
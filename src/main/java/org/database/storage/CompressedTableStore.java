@@ -0,0 +1,369 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ The CompressedTableStore class stores a table as independently deflated blocks of rows in name-N.blocks,
+ described by a block index in name_blocks.txt holding, per block, its offset, compressed and uncompressed
+ sizes, row count and the smallest and largest numeric primary key it contains. The index names the
+ generation N of the blocks file it describes, so replacing the index is the commit point of a rewrite.
+
+ New rows are first appended to the plain name.txt file, which acts as an uncompressed tail; once the tail
+ reaches lightdb.compression.blockBytes it is compressed into a new block. Scans decompress the blocks in
+ parallel while handing the rows over in order, and a lookup on the primary key only decompresses the
+ blocks whose key range may hold the key.
+ */
+public class CompressedTableStore implements TableStore {
+    private static final int BLOCK_BYTES = (int) Config.getLong("compression.blockBytes", 64 * 1024);
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final ExecutorService DECODERS = Executors.newFixedThreadPool(PARALLELISM, runnable -> {
+        Thread thread = new Thread(runnable, "lightdb-block-decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String tableName;
+    private final String fileName;
+    private final List<String> columns;
+    private final int primaryKeyIdx;
+    private final TextTableStore tail;
+    private List<Block> blocks;
+    private long generation;
+
+    /**
+     @param tableName the name of the table
+     @param fileName the name the files of the store are derived from, the table name unless they hold a part of it
+     @param columns the column names of the table, in storage order
+     @param primaryKeyIdx the position of the primary key column, or -1 if the table has none
+     */
+    public CompressedTableStore(String tableName, String fileName, List<String> columns, int primaryKeyIdx) {
+        this.tableName = tableName;
+        this.fileName = fileName;
+        this.columns = columns;
+        this.primaryKeyIdx = primaryKeyIdx;
+        this.tail = new TextTableStore(tableName, fileName);
+    }
+
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        List<Block> candidates = new ArrayList<>();
+        Long key = primaryKeyIdx < 0 ? null : parseKey(equalities.get(columns.get(primaryKeyIdx)));
+        for (Block block : blocks()) {
+            if (block.mayContain(key)) candidates.add(block);
+        }
+        if (key != null) QueryTrace.accessPath("block index");
+        QueryTrace.operator("block pruning", 0, candidates.size());
+
+        if (!scanBlocks(candidates, visitor)) return;
+        tail.scan(equalities, visitor);
+    }
+
+    private boolean scanBlocks(List<Block> candidates, Predicate<String> visitor) throws IOException {
+        Deque<Future<String[]>> pending = new ArrayDeque<>();
+        int next = 0;
+        if (candidates.isEmpty()) return true;
+        try (RandomAccessFile input = new RandomAccessFile(blocksFile(generation), "r")) {
+            while (next < candidates.size() || !pending.isEmpty()) {
+                while (next < candidates.size() && pending.size() < PARALLELISM * 2) {
+                    Block block = candidates.get(next++);
+                    byte[] compressed = new byte[block.compressedLength];
+                    input.seek(block.offset);
+                    input.readFully(compressed);
+                    MetricsRegistry.getInstance().recordBytesRead(tableName, compressed.length);
+                    pending.add(DECODERS.submit(() -> decode(compressed, block.uncompressedLength)));
+                }
+                for (String line : pending.poll().get()) {
+                    if (!visitor.test(line)) {
+                        pending.forEach(future -> future.cancel(true));
+                        return false;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Corrupted block in table " + tableName, e.getCause());
+        }
+        return true;
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        tail.append(lines);
+        long tailLength = tail.getFile().length();
+        if (tailLength < BLOCK_BYTES) return;
+
+        List<String> tailLines = new ArrayList<>();
+        tail.scan(Map.of(), tailLines::add);
+        List<Block> all = new ArrayList<>(blocks());
+        long end = all.isEmpty() ? 0 : all.get(all.size() - 1).end();
+        try (RandomAccessFile output = new RandomAccessFile(blocksFile(generation), "rw")) {
+            output.setLength(end);
+            output.seek(end);
+            writeBlocks(tailLines, output, all);
+            output.getFD().sync();
+        }
+        commit(generation, all, tailLength);
+    }
+
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        long tailLength = tail.getFile().length();
+        long newGeneration = generation() + 1;
+        File newBlocksFile = blocksFile(newGeneration);
+        List<Block> written = new ArrayList<>();
+        try (RandomAccessFile output = new RandomAccessFile(newBlocksFile, "rw")) {
+            output.setLength(0);
+            List<String> pending = new ArrayList<>();
+            long[] pendingBytes = {0};
+            IOException[] failure = {null};
+            scan(Map.of(), line -> {
+                String rewritten = rewriter.apply(line);
+                if (rewritten == null) return true;
+                pending.add(rewritten);
+                pendingBytes[0] += rewritten.length() + 1;
+                if (pendingBytes[0] >= BLOCK_BYTES) {
+                    try {
+                        writeBlocks(pending, output, written);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                        return false;
+                    }
+                    pending.clear();
+                    pendingBytes[0] = 0;
+                }
+                return true;
+            });
+            if (failure[0] != null) throw failure[0];
+            writeBlocks(pending, output, written);
+            output.getFD().sync();
+        }
+
+        File oldBlocksFile = blocksFile(generation);
+        commit(newGeneration, written, tailLength);
+        oldBlocksFile.delete();
+        MetricsRegistry.getInstance().recordTempRewrite(tableName);
+        QueryTrace.tempFile(newBlocksFile.getPath());
+    }
+
+    /**
+     Makes new blocks visible by replacing the block index, then drops the tail rows they absorbed.
+     The consumed tail length is recorded in the index until the tail is emptied, so that a crash in between
+     is repaired on the next load instead of reading those rows twice.
+     */
+    private void commit(long newGeneration, List<Block> newBlocks, long tailConsumed) throws IOException {
+        writeIndex(newGeneration, newBlocks, tailConsumed);
+        blocks = newBlocks;
+        generation = newGeneration;
+        if (tailConsumed > 0) {
+            tail.truncate();
+            writeIndex(newGeneration, newBlocks, 0);
+        }
+    }
+
+    private void writeIndex(long newGeneration, List<Block> newBlocks, long tailConsumed) throws IOException {
+        File indexFile = new File(Utils.getFileName(fileName, FileTypes.BLOCK_INDEX));
+        File tempIndexFile = new File(Utils.getFileName(fileName + "-temp", FileTypes.BLOCK_INDEX));
+        try (FileOutputStream indexOutput = new FileOutputStream(tempIndexFile);
+             PrintWriter printWriter = new PrintWriter(indexOutput)) {
+            printWriter.println("generation|" + newGeneration);
+            printWriter.println("tail|" + tailConsumed);
+            for (Block block : newBlocks) {
+                printWriter.println(block.format());
+            }
+            printWriter.flush();
+            indexOutput.getFD().sync();
+        }
+        Files.move(tempIndexFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public List<File> files() throws IOException {
+        List<File> files = new ArrayList<>(tail.files());
+        File indexFile = new File(Utils.getFileName(fileName, FileTypes.BLOCK_INDEX));
+        if (indexFile.exists()) files.add(indexFile);
+        File blocksFile = blocksFile(generation());
+        if (blocksFile.exists()) files.add(blocksFile);
+        return files;
+    }
+
+    private File blocksFile(long blocksGeneration) {
+        return new File(Utils.getFileName(fileName + "-" + blocksGeneration, FileTypes.TABLE_BLOCKS));
+    }
+
+    private long generation() throws IOException {
+        blocks();
+        return generation;
+    }
+
+    private List<Block> blocks() throws IOException {
+        if (blocks != null) return blocks;
+        List<Block> loaded = new ArrayList<>();
+        long tailConsumed = 0;
+        File indexFile = new File(Utils.getFileName(fileName, FileTypes.BLOCK_INDEX));
+        if (indexFile.exists()) {
+            for (String line : Files.readAllLines(indexFile.toPath())) {
+                if (line.startsWith("generation|")) {
+                    generation = Long.parseLong(line.substring(11));
+                } else if (line.startsWith("tail|")) {
+                    tailConsumed = Long.parseLong(line.substring(5));
+                } else if (Utils.isValidString(line)) {
+                    loaded.add(Block.parse(line));
+                }
+            }
+        }
+        blocks = loaded;
+        if (tailConsumed > 0) {
+            if (tail.getFile().length() == tailConsumed) tail.truncate();
+            writeIndex(generation, blocks, 0);
+        }
+        return blocks;
+    }
+
+    /**
+     Compresses the given rows into blocks of at most lightdb.compression.blockBytes and writes them
+     at the current position of the output.
+     */
+    private void writeBlocks(List<String> lines, RandomAccessFile output, List<Block> written) throws IOException {
+        int start = 0;
+        while (start < lines.size()) {
+            StringBuilder content = new StringBuilder();
+            Long minKey = null;
+            Long maxKey = null;
+            boolean numericKeys = primaryKeyIdx >= 0;
+            int end = start;
+            while (end < lines.size() && (end == start || content.length() < BLOCK_BYTES)) {
+                String line = lines.get(end++);
+                content.append(line).append('\n');
+                if (numericKeys) {
+                    String[] values = line.split("\\|");
+                    Long key = primaryKeyIdx < values.length ? parseKey(values[primaryKeyIdx]) : null;
+                    if (key == null) {
+                        numericKeys = false;
+                    } else {
+                        minKey = minKey == null ? key : Math.min(minKey, key);
+                        maxKey = maxKey == null ? key : Math.max(maxKey, key);
+                    }
+                }
+            }
+
+            byte[] uncompressed = content.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] compressed = encode(uncompressed);
+            long offset = output.getFilePointer();
+            output.write(compressed);
+            written.add(new Block(offset, compressed.length, uncompressed.length, end - start,
+                    numericKeys ? minKey : null, numericKeys ? maxKey : null));
+            MetricsRegistry.getInstance().recordCompression(uncompressed.length, compressed.length);
+            MetricsRegistry.getInstance().recordBytesWritten(tableName, compressed.length);
+            start = end;
+        }
+    }
+
+    private static byte[] encode(byte[] uncompressed) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        deflater.setInput(uncompressed);
+        deflater.finish();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(uncompressed.length / 2 + 64);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            output.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return output.toByteArray();
+    }
+
+    private static String[] decode(byte[] compressed, int uncompressedLength) throws DataFormatException {
+        long start = System.nanoTime();
+        Inflater inflater = new Inflater();
+        inflater.setInput(compressed);
+        byte[] uncompressed = new byte[uncompressedLength];
+        int length = 0;
+        while (length < uncompressedLength && !inflater.finished()) {
+            int inflated = inflater.inflate(uncompressed, length, uncompressedLength - length);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+            length += inflated;
+        }
+        inflater.end();
+        if (length != uncompressedLength) throw new DataFormatException("Truncated block");
+        MetricsRegistry.getInstance().recordDecompression(length, System.nanoTime() - start);
+        String content = new String(uncompressed, StandardCharsets.UTF_8);
+        return content.isEmpty() ? new String[0] : content.substring(0, content.length() - 1).split("\n", -1);
+    }
+
+    private static Long parseKey(String value) {
+        if (value == null) return null;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static class Block {
+        private final long offset;
+        private final int compressedLength;
+        private final int uncompressedLength;
+        private final int rows;
+        private final Long minKey;
+        private final Long maxKey;
+
+        private Block(long offset, int compressedLength, int uncompressedLength, int rows, Long minKey, Long maxKey) {
+            this.offset = offset;
+            this.compressedLength = compressedLength;
+            this.uncompressedLength = uncompressedLength;
+            this.rows = rows;
+            this.minKey = minKey;
+            this.maxKey = maxKey;
+        }
+
+        private long end() {
+            return offset + compressedLength;
+        }
+
+        private boolean mayContain(Long key) {
+            return key == null || minKey == null || (minKey <= key && key <= maxKey);
+        }
+
+        private String format() {
+            return offset + "|" + compressedLength + "|" + uncompressedLength + "|" + rows
+                    + "|" + (minKey == null ? "" : minKey) + "|" + (maxKey == null ? "" : maxKey);
+        }
+
+        private static Block parse(String line) {
+            String[] values = line.split("\\|", -1);
+            return new Block(Long.parseLong(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]),
+                    Integer.parseInt(values[3]),
+                    values[4].isEmpty() ? null : Long.parseLong(values[4]),
+                    values[5].isEmpty() ? null : Long.parseLong(values[5]));
+        }
+    }
+}
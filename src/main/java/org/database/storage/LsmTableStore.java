@@ -0,0 +1,715 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+import org.database.query.TableLocks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The LsmTableStore class is the log-structured storage of the tables created with ENGINE=LSM, keyed by their
+ primary key. Changes never rewrite existing files: inserts, updates and deletes are appended to name.txt, which
+ is the log of the sorted in-memory memtable, and a deleted row leaves a tombstone. Once the memtable holds
+ lightdb.lsm.memtableBytes it is flushed to an immutable sorted run file, name-run-N.txt, and the log is emptied.
+
+ Each run has an index file, name-run-N_index.bin, holding a fence key every lightdb.lsm.fenceBytes bytes of the
+ run and a Bloom filter of its keys, so that a lookup on the primary key skips the runs that cannot hold the key
+ and reads a single block of the others. Runs are organized in tiers: once lightdb.lsm.runsPerLevel runs sit
+ on a level, a background thread merges them into one run on the next level, dropping the tombstones when no
+ older run is left below. The runs of the table are listed in name_lsm.txt, whose replacement commits a flush or
+ a compaction. The content of a level is newer than the content of the levels below it, and on a level the run
+ with the higher number is the newer one, so the runs are searched by level, then by decreasing number, and the
+ newest version of a row is found first. A store replaced by a new instance is closed, which stops its
+ compaction before the new instance reads the manifest.
+ */
+public class LsmTableStore implements TableStore {
+    private static final long MEMTABLE_BYTES = Config.getLong("lsm.memtableBytes", 4 * 1024 * 1024);
+    private static final int RUNS_PER_LEVEL = (int) Math.max(2, Config.getLong("lsm.runsPerLevel", 4));
+    private static final int FENCE_BYTES = (int) Math.max(256, Config.getLong("lsm.fenceBytes", 4096));
+    private static final int BITS_PER_KEY = (int) Math.max(2, Config.getLong("bloom.bitsPerKey", 10));
+    private static final String PUT = "P|";
+    private static final String DELETE = "D|";
+    private static final ExecutorService COMPACTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "lightdb-lsm-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String tableName;
+    private final String fileName;
+    private final String primaryKeyField;
+    private final int primaryKeyIdx;
+    private final TextTableStore log;
+    private final TreeMap<String, String> memtable = new TreeMap<>(LsmTableStore::compareKeys);
+    private final Map<Long, Run> openRuns = new ConcurrentHashMap<>();
+    private final AtomicLong nextRunId = new AtomicLong(1);
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final Object compactionMonitor = new Object();
+    private volatile boolean compactionRunning;
+    private volatile boolean closed;
+    private volatile List<Run> runs = List.of();
+    private long memtableBytes;
+    private boolean opened;
+
+    /**
+     @param tableName the name of the table
+     @param fileName the name the files of the store are derived from, the table name unless they hold a part of it
+     @param primaryKeyField the primary key column of the table
+     @param primaryKeyIdx the position of the primary key column
+     */
+    public LsmTableStore(String tableName, String fileName, String primaryKeyField, int primaryKeyIdx) {
+        this.tableName = tableName;
+        this.fileName = fileName;
+        this.primaryKeyField = primaryKeyField;
+        this.primaryKeyIdx = primaryKeyIdx;
+        this.log = new TextTableStore(tableName, fileName);
+    }
+
+    /**
+     Visits the newest version of every row in primary key order, or the single row of an equality on the
+     primary key.
+     */
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        open();
+        String key = equalities.get(primaryKeyField);
+        if (key != null && isCaseless(key)) {
+            QueryTrace.accessPath("lsm point lookup");
+            String row = lookup(key);
+            if (row != null) visitor.test(row);
+            return;
+        }
+        merge(sources(), false, record -> !record.startsWith(PUT) || visitor.test(record.substring(PUT.length())));
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        open();
+        List<String> records = new ArrayList<>();
+        for (String line : lines) {
+            records.add(PUT + line);
+        }
+        write(records);
+    }
+
+    /**
+     Passes the rows to change to the rewriter and logs the new versions, or tombstones for deleted rows.
+     */
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        List<String> rows = new ArrayList<>();
+        scan(equalities, rows::add);
+        List<String> records = new ArrayList<>();
+        for (String row : rows) {
+            String output = rewriter.apply(row);
+            if (output != null && output.equals(row)) continue;
+            String key = keyOf(row);
+            if (output == null || !keyOf(output).equals(key)) records.add(DELETE + key);
+            if (output != null) records.add(PUT + output);
+        }
+        if (!records.isEmpty()) write(records);
+    }
+
+    /**
+     Looks the primary key up when the conditions pin it, so that inserting a new key never scans the table.
+     */
+    @Override
+    public boolean mayContain(Map<String, String> equalities) throws IOException {
+        open();
+        String key = equalities.get(primaryKeyField);
+        return key == null || !isCaseless(key) || lookup(key) != null;
+    }
+
+    /**
+     Stops the compaction of the store, throwing away a merge in progress, and waits until it stopped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        // a compaction that starts after this sees the store closed and stops at once
+        synchronized (compactionMonitor) {
+            while (compactionRunning) {
+                try {
+                    compactionMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @Override
+    public List<File> files() throws IOException {
+        open();
+        List<File> files = new ArrayList<>();
+        files.add(log.getFile());
+        if (manifestFile().exists()) files.add(manifestFile());
+        for (Run run : runs) {
+            files.add(run.file);
+            files.add(run.indexFile);
+        }
+        return files;
+    }
+
+    /**
+     Loads the runs listed in the manifest and the memtable from its log, once.
+     */
+    private synchronized void open() throws IOException {
+        if (opened) return;
+        loadRuns(readManifest());
+        for (long id : readManifest().keySet()) {
+            nextRunId.set(Math.max(nextRunId.get(), id + 1));
+        }
+        File logFile = log.getFile();
+        if (logFile.exists() && logFile.length() > 0) {
+            log.dropPartialLine();
+            log.scan(Map.of(), record -> {
+                apply(record);
+                return true;
+            });
+        }
+        opened = true;
+    }
+
+    private void write(List<String> records) throws IOException {
+        log.append(records);
+        for (String record : records) {
+            apply(record);
+        }
+        if (memtableBytes >= MEMTABLE_BYTES) flush();
+    }
+
+    private void apply(String record) {
+        if (record.startsWith(PUT)) {
+            String row = record.substring(PUT.length());
+            memtable.put(keyOf(row), row);
+            memtableBytes += record.length() + 1;
+        } else if (record.startsWith(DELETE)) {
+            memtable.put(record.substring(DELETE.length()), null);
+            memtableBytes += record.length() + 1;
+        }
+    }
+
+    /**
+     Writes the memtable to a new run on level 0, then empties its log.
+     */
+    private void flush() throws IOException {
+        if (memtable.isEmpty()) return;
+        List<String> records = new ArrayList<>(memtable.size());
+        for (Map.Entry<String, String> entry : memtable.entrySet()) {
+            // without older runs a tombstone has nothing left to hide
+            if (entry.getValue() != null) {
+                records.add(PUT + entry.getValue());
+            } else if (!runs.isEmpty()) {
+                records.add(DELETE + entry.getKey());
+            }
+        }
+        if (!records.isEmpty()) {
+            RunWriter writer = new RunWriter(nextRunId.getAndIncrement(), 0);
+            for (String record : records) {
+                writer.add(record);
+            }
+            updateManifest(List.of(), writer.finish());
+        }
+        log.truncate();
+        memtable.clear();
+        memtableBytes = 0;
+        MetricsRegistry.getInstance().recordCounter("lsm.flushes", 1);
+        scheduleCompaction();
+    }
+
+    private void scheduleCompaction() {
+        if (closed || !compacting.compareAndSet(false, true)) return;
+        COMPACTOR.submit(() -> {
+            compactionRunning = true;
+            try {
+                while (compactOnce()) {
+                    MetricsRegistry.getInstance().recordCounter("lsm.compactions", 1);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Compaction of table " + tableName + " failed!\n" + e.getMessage());
+            } finally {
+                synchronized (compactionMonitor) {
+                    compactionRunning = false;
+                    compactionMonitor.notifyAll();
+                }
+                compacting.set(false);
+            }
+        });
+    }
+
+    /**
+     Merges the runs of the lowest full level into one run of the next level. The inputs are immutable, so they
+     are merged without any lock; only the switch to the new run takes the table write lock. The merge is thrown
+     away when the store is closed meanwhile.
+     @return true if a level was compacted
+     */
+    private boolean compactOnce() throws IOException {
+        if (closed) return false;
+        List<Run> snapshot = runs;
+        int level = -1;
+        for (int candidate = 0; level < 0 && candidate <= maxLevel(snapshot); candidate++) {
+            int finalCandidate = candidate;
+            if (snapshot.stream().filter(run -> run.level == finalCandidate).count() >= RUNS_PER_LEVEL) level = candidate;
+        }
+        if (level < 0) return false;
+        int inputLevel = level;
+        List<Run> inputs = snapshot.stream().filter(run -> run.level == inputLevel).toList();
+        boolean olderRunsBelow = snapshot.stream().anyMatch(run -> run.level > inputLevel);
+        long id = nextRunId.getAndIncrement();
+
+        List<Source> sources = new ArrayList<>();
+        for (Run run : inputs) {
+            sources.add(new RunSource(run));
+        }
+        RunWriter writer = new RunWriter(id, inputLevel + 1);
+        merge(sources, !olderRunsBelow, record -> {
+            writer.add(record);
+            return !closed;
+        });
+        Run output = writer.finish();
+
+        Lock lock = TableLocks.writeLock(tableName);
+        if (!lockUnlessClosed(lock)) {
+            discard(output);
+            return false;
+        }
+        try {
+            if (closed) {
+                discard(output);
+                return false;
+            }
+            updateManifest(inputs, output);
+            for (Run run : inputs) {
+                openRuns.remove(run.id);
+                Files.deleteIfExists(run.file.toPath());
+                Files.deleteIfExists(run.indexFile.toPath());
+            }
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     Takes the lock, unless the store is closed first: the thread closing it may hold the lock while it waits for
+     the compaction to end.
+     @return true if the lock is held, false if the store was closed
+     */
+    private boolean lockUnlessClosed(Lock lock) throws IOException {
+        try {
+            while (!lock.tryLock(10, TimeUnit.MILLISECONDS)) {
+                if (closed) return false;
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Compaction interrupted", e);
+        }
+    }
+
+    private void discard(Run run) throws IOException {
+        openRuns.remove(run.id);
+        Files.deleteIfExists(run.file.toPath());
+        Files.deleteIfExists(run.indexFile.toPath());
+    }
+
+    /**
+     Returns the newest version of a row, or null if the row does not exist or was deleted.
+     */
+    private String lookup(String key) throws IOException {
+        key = key.trim();
+        if (memtable.containsKey(key)) return memtable.get(key);
+        for (Run run : runs) {
+            if (!run.bloom.mightContain(key)) continue;
+            String record = find(run, key);
+            if (record != null) return record.startsWith(PUT) ? record.substring(PUT.length()) : null;
+        }
+        return null;
+    }
+
+    private List<Source> sources() throws IOException {
+        List<Source> sources = new ArrayList<>();
+        sources.add(new MemtableSource(memtable.entrySet().iterator()));
+        for (Run run : runs) {
+            sources.add(new RunSource(run));
+        }
+        return sources;
+    }
+
+    /**
+     Merges sorted sources, listed from the newest to the oldest, keeping the newest record of every key.
+     @param sources the sources, closed once merged
+     @param dropTombstones true to leave the tombstones out of the output
+     @param output receives the records in key order and returns false to stop the merge
+     */
+    private void merge(List<Source> sources, boolean dropTombstones, Predicate<String> output) throws IOException {
+        PriorityQueue<Source> queue = new PriorityQueue<>((a, b) -> {
+            int byKey = compareKeys(a.key, b.key);
+            return byKey != 0 ? byKey : Integer.compare(a.age, b.age);
+        });
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                Source source = sources.get(i);
+                source.age = i;
+                if (source.advance()) queue.add(source);
+            }
+            while (!queue.isEmpty()) {
+                Source newest = queue.poll();
+                String key = newest.key;
+                String record = newest.record;
+                if (newest.advance()) queue.add(newest);
+                while (!queue.isEmpty() && queue.peek().key.equals(key)) {
+                    Source older = queue.poll();
+                    if (older.advance()) queue.add(older);
+                }
+                if (dropTombstones && record.startsWith(DELETE)) continue;
+                if (!output.test(record)) return;
+            }
+        } finally {
+            long bytesRead = 0;
+            for (Source source : sources) {
+                bytesRead += source.close();
+            }
+            MetricsRegistry.getInstance().recordBytesRead(tableName, bytesRead);
+        }
+    }
+
+    /**
+     Reads the block whose fence keys surround the key and returns the record of the key, if the run has one.
+     */
+    private String find(Run run, String key) throws IOException {
+        int low = 0;
+        int high = run.fenceKeys.length - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareKeys(run.fenceKeys[middle], key) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) return null;
+        try (RandomAccessFile input = new RandomAccessFile(run.file, "r")) {
+            long end = block + 1 < run.fenceOffsets.length ? run.fenceOffsets[block + 1] : input.length();
+            byte[] bytes = new byte[(int) (end - run.fenceOffsets[block])];
+            input.seek(run.fenceOffsets[block]);
+            input.readFully(bytes);
+            MetricsRegistry.getInstance().recordBytesRead(tableName, bytes.length);
+            for (String record : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+                int byKey = compareKeys(recordKey(record), key);
+                if (byKey == 0) return record;
+                if (byKey > 0) break;
+            }
+        }
+        return null;
+    }
+
+    /**
+     Replaces runs by a new one in the manifest, then switches to the runs it lists. Called under the table
+     write lock.
+     */
+    private void updateManifest(Collection<Run> removed, Run added) throws IOException {
+        Map<Long, Integer> manifest = readManifest();
+        for (Run run : removed) {
+            manifest.remove(run.id);
+        }
+        manifest.put(added.id, added.level);
+        File tempFile = new File(manifestFile().getPath() + "-temp");
+        try (FileOutputStream output = new FileOutputStream(tempFile)) {
+            for (Map.Entry<Long, Integer> entry : manifest.entrySet()) {
+                output.write((entry.getKey() + "|" + entry.getValue() + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            output.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), manifestFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        loadRuns(manifest);
+    }
+
+    private Map<Long, Integer> readManifest() throws IOException {
+        Map<Long, Integer> manifest = new TreeMap<>();
+        if (!manifestFile().exists()) return manifest;
+        for (String line : Files.readAllLines(manifestFile().toPath())) {
+            String[] parts = line.split("\\|");
+            if (parts.length == 2) manifest.put(Long.parseLong(parts[0]), Integer.parseInt(parts[1]));
+        }
+        return manifest;
+    }
+
+    private void loadRuns(Map<Long, Integer> manifest) throws IOException {
+        List<Run> loaded = new ArrayList<>();
+        for (Map.Entry<Long, Integer> entry : manifest.entrySet()) {
+            Run run = openRuns.get(entry.getKey());
+            if (run == null) {
+                run = Run.load(entry.getKey(), entry.getValue(), runFile(entry.getKey()), indexFile(entry.getKey()));
+                openRuns.put(run.id, run);
+            }
+            loaded.add(run);
+        }
+        // newest first: the upper levels hold the newer content, and on a level the later runs
+        loaded.sort((a, b) -> a.level != b.level ? Integer.compare(a.level, b.level) : Long.compare(b.id, a.id));
+        runs = List.copyOf(loaded);
+    }
+
+    private static int maxLevel(List<Run> runs) {
+        return runs.stream().mapToInt(run -> run.level).max().orElse(-1);
+    }
+
+    private File manifestFile() {
+        return new File(Utils.getFileName(fileName, FileTypes.LSM_MANIFEST));
+    }
+
+    private File runFile(long id) {
+        return new File(Utils.getFileName(fileName + "-run-" + id, FileTypes.TABLE));
+    }
+
+    private File indexFile(long id) {
+        return new File(Utils.getFileName(fileName + "-run-" + id, FileTypes.LSM_RUN_INDEX));
+    }
+
+    private String keyOf(String row) {
+        String[] rowValues = row.split("\\|");
+        return primaryKeyIdx < rowValues.length ? rowValues[primaryKeyIdx].trim() : "";
+    }
+
+    private String recordKey(String record) {
+        return record.startsWith(DELETE) ? record.substring(DELETE.length()) : keyOf(record.substring(PUT.length()));
+    }
+
+    /**
+     Tells whether a value reads the same in any case. Conditions compare values ignoring case, so only such values
+     can be looked up directly by key; the others need a scan.
+     @param value the value
+     @return true if the value has no letters of any case
+     */
+    public static boolean isCaseless(String value) {
+        return value.equals(value.toLowerCase(Locale.ROOT)) && value.equals(value.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     Orders keys written as numbers by value, before all other keys, which are ordered as strings.
+     */
+    static int compareKeys(String a, String b) {
+        Long numberA = asNumber(a);
+        Long numberB = asNumber(b);
+        if (numberA != null && numberB != null) {
+            int byValue = Long.compare(numberA, numberB);
+            return byValue != 0 ? byValue : a.compareTo(b);
+        }
+        if (numberA != null) return -1;
+        if (numberB != null) return 1;
+        return a.compareTo(b);
+    }
+
+    private static Long asNumber(String value) {
+        if (value.isEmpty() || value.length() > 18) return null;
+        for (int i = value.charAt(0) == '-' && value.length() > 1 ? 1 : 0; i < value.length(); i++) {
+            if (value.charAt(i) < '0' || value.charAt(i) > '9') return null;
+        }
+        return Long.parseLong(value);
+    }
+
+    /**
+     A sorted run file and what its index says about it.
+     */
+    private static class Run {
+        final long id;
+        final int level;
+        final File file;
+        final File indexFile;
+        final String[] fenceKeys;
+        final long[] fenceOffsets;
+        final BloomFilter bloom;
+
+        Run(long id, int level, File file, File indexFile, String[] fenceKeys, long[] fenceOffsets, BloomFilter bloom) {
+            this.id = id;
+            this.level = level;
+            this.file = file;
+            this.indexFile = indexFile;
+            this.fenceKeys = fenceKeys;
+            this.fenceOffsets = fenceOffsets;
+            this.bloom = bloom;
+        }
+
+        static Run load(long id, int level, File file, File indexFile) throws IOException {
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+                String[] fenceKeys = new String[input.readInt()];
+                long[] fenceOffsets = new long[fenceKeys.length];
+                for (int i = 0; i < fenceKeys.length; i++) {
+                    fenceKeys[i] = input.readUTF();
+                    fenceOffsets[i] = input.readLong();
+                }
+                return new Run(id, level, file, indexFile, fenceKeys, fenceOffsets, BloomFilter.read(input));
+            }
+        }
+    }
+
+    /**
+     Writes sorted records to a new run and its index, both synced to disk before the run is listed anywhere.
+     */
+    private class RunWriter {
+        private final long id;
+        private final int level;
+        private final File file;
+        private final FileOutputStream fileOutput;
+        private final BufferedOutputStream output;
+        private final List<String> fenceKeys = new ArrayList<>();
+        private final List<Long> fenceOffsets = new ArrayList<>();
+        private long[] hashes = new long[1024];
+        private int rows;
+        private long offset;
+        private long fenceStart = -FENCE_BYTES;
+
+        RunWriter(long id, int level) throws IOException {
+            this.id = id;
+            this.level = level;
+            this.file = runFile(id);
+            this.fileOutput = new FileOutputStream(file);
+            this.output = new BufferedOutputStream(fileOutput);
+        }
+
+        void add(String record) {
+            String key = recordKey(record);
+            if (offset - fenceStart >= FENCE_BYTES) {
+                fenceKeys.add(key);
+                fenceOffsets.add(offset);
+                fenceStart = offset;
+            }
+            if (rows == hashes.length) hashes = Arrays.copyOf(hashes, rows * 2);
+            hashes[rows++] = BloomFilter.hash(key);
+            byte[] bytes = (record + "\n").getBytes(StandardCharsets.UTF_8);
+            try {
+                output.write(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            offset += bytes.length;
+        }
+
+        Run finish() throws IOException {
+            try {
+                output.flush();
+                fileOutput.getFD().sync();
+            } finally {
+                output.close();
+            }
+            BloomFilter bloom = BloomFilter.create(rows, BITS_PER_KEY);
+            for (int i = 0; i < rows; i++) {
+                bloom.addHash(hashes[i]);
+            }
+            File indexFile = indexFile(id);
+            try (FileOutputStream indexOutput = new FileOutputStream(indexFile);
+                 DataOutputStream index = new DataOutputStream(new BufferedOutputStream(indexOutput))) {
+                index.writeInt(fenceKeys.size());
+                for (int i = 0; i < fenceKeys.size(); i++) {
+                    index.writeUTF(fenceKeys.get(i));
+                    index.writeLong(fenceOffsets.get(i));
+                }
+                bloom.write(index);
+                index.flush();
+                indexOutput.getFD().sync();
+            }
+            MetricsRegistry.getInstance().recordBytesWritten(tableName, offset);
+            Run run = new Run(id, level, file, indexFile, fenceKeys.toArray(new String[0]),
+                    fenceOffsets.stream().mapToLong(Long::longValue).toArray(), bloom);
+            openRuns.put(id, run);
+            return run;
+        }
+    }
+
+    /**
+     A sorted sequence of records being merged.
+     */
+    private abstract static class Source {
+        int age;
+        String key;
+        String record;
+
+        abstract boolean advance() throws IOException;
+
+        /**
+         @return the number of bytes read from disk
+         */
+        abstract long close() throws IOException;
+    }
+
+    private class MemtableSource extends Source {
+        private final Iterator<Map.Entry<String, String>> entries;
+
+        MemtableSource(Iterator<Map.Entry<String, String>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        boolean advance() {
+            if (!entries.hasNext()) return false;
+            Map.Entry<String, String> entry = entries.next();
+            key = entry.getKey();
+            record = entry.getValue() == null ? DELETE + key : PUT + entry.getValue();
+            return true;
+        }
+
+        @Override
+        long close() {
+            return 0;
+        }
+    }
+
+    private class RunSource extends Source {
+        private final PrefetchingReader reader;
+
+        RunSource(Run run) throws IOException {
+            this.reader = new PrefetchingReader(run.file);
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            record = reader.readLine();
+            if (record == null) return false;
+            key = recordKey(record);
+            return true;
+        }
+
+        @Override
+        long close() throws IOException {
+            reader.close();
+            return reader.getBytesConsumed();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.metrics.QueryTrace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The MemoryTableStore class is the storage of the tables created with ENGINE=MEMORY or altered with
+ SET IN_MEMORY, small tables read often enough that even a cached scan of their file costs too much. The rows
+ are held in a hash map keyed by the primary key, loaded once, and every read is served from it: an equality on
+ the primary key is a single hash lookup, any other scan walks the map.
+
+ name.txt holds a snapshot of the rows, in the format of a plain table. Changes are appended and synced to the
+ log name-log.txt before they are applied to the map, a put record for a new version of a row and a delete record
+ for a removed key. After lightdb.memory.snapshotChanges logged changes the rows are written to a new snapshot,
+ which replaces the previous one at once, and the log is emptied, so that loading the table replays a bounded log.
+ Replaying a record twice gives the same rows, so a crash between the snapshot and the truncation of the log
+ loses nothing.
+ */
+public class MemoryTableStore implements TableStore {
+    private static final long SNAPSHOT_CHANGES = Math.max(1, Config.getLong("memory.snapshotChanges", 10000));
+    private static final String PUT = "P|";
+    private static final String DELETE = "D|";
+
+    private final String tableName;
+    private final String fileName;
+    private final String primaryKeyField;
+    private final int primaryKeyIdx;
+    private final TextTableStore snapshot;
+    private final TextTableStore log;
+    private final Map<String, String> rows = new LinkedHashMap<>();
+    private long loggedChanges;
+    private boolean opened;
+
+    /**
+     @param tableName the name of the table
+     @param fileName the name the files of the store are derived from, the table name unless they hold a part of it
+     @param primaryKeyField the primary key column of the table
+     @param primaryKeyIdx the position of the primary key column
+     */
+    public MemoryTableStore(String tableName, String fileName, String primaryKeyField, int primaryKeyIdx) {
+        this.tableName = tableName;
+        this.fileName = fileName;
+        this.primaryKeyField = primaryKeyField;
+        this.primaryKeyIdx = primaryKeyIdx;
+        this.snapshot = new TextTableStore(tableName, fileName);
+        this.log = new TextTableStore(tableName, fileName + "-log");
+    }
+
+    /**
+     Visits the rows in the order they were first inserted, or the single row of an equality on the primary key.
+     */
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        open();
+        String key = equalities.get(primaryKeyField);
+        if (key != null && LsmTableStore.isCaseless(key)) {
+            QueryTrace.accessPath("memory point lookup");
+            String row = rows.get(key.trim());
+            if (row != null) visitor.test(row);
+            return;
+        }
+        for (String row : rows.values()) {
+            if (!visitor.test(row)) break;
+        }
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        open();
+        List<String> records = new ArrayList<>();
+        for (String line : lines) {
+            records.add(PUT + line);
+        }
+        write(records);
+    }
+
+    /**
+     Passes the rows to change to the rewriter and logs the new versions, or delete records for removed rows.
+     */
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        List<String> visited = new ArrayList<>();
+        scan(equalities, visited::add);
+        List<String> records = new ArrayList<>();
+        for (String row : visited) {
+            String output = rewriter.apply(row);
+            if (output != null && output.equals(row)) continue;
+            String key = keyOf(row);
+            if (output == null || !keyOf(output).equals(key)) records.add(DELETE + key);
+            if (output != null) records.add(PUT + output);
+        }
+        if (!records.isEmpty()) write(records);
+    }
+
+    /**
+     Looks the primary key up in the map, so that inserting a new key never scans the table.
+     */
+    @Override
+    public boolean mayContain(Map<String, String> equalities) throws IOException {
+        open();
+        String key = equalities.get(primaryKeyField);
+        return key == null || !LsmTableStore.isCaseless(key) || rows.containsKey(key.trim());
+    }
+
+    @Override
+    public List<File> files() {
+        List<File> files = new ArrayList<>(snapshot.files());
+        if (log.getFile().exists()) files.add(log.getFile());
+        return files;
+    }
+
+    /**
+     Loads the snapshot and replays the log on top of it, once.
+     */
+    private synchronized void open() throws IOException {
+        if (opened) return;
+        long loadStart = System.nanoTime();
+        if (snapshot.getFile().exists()) {
+            snapshot.scan(Map.of(), row -> {
+                rows.put(keyOf(row), row);
+                return true;
+            });
+        }
+        if (log.getFile().exists()) {
+            log.dropPartialLine();
+            log.scan(Map.of(), record -> {
+                apply(record);
+                loggedChanges++;
+                return true;
+            });
+        }
+        opened = true;
+        QueryTrace.operator("memory load", System.nanoTime() - loadStart, rows.size());
+    }
+
+    private void write(List<String> records) throws IOException {
+        log.append(records);
+        for (String record : records) {
+            apply(record);
+        }
+        loggedChanges += records.size();
+        if (loggedChanges >= SNAPSHOT_CHANGES) writeSnapshot();
+    }
+
+    private void apply(String record) {
+        if (record.startsWith(PUT)) {
+            String row = record.substring(PUT.length());
+            rows.put(keyOf(row), row);
+        } else if (record.startsWith(DELETE)) {
+            rows.remove(record.substring(DELETE.length()));
+        }
+    }
+
+    /**
+     Writes the rows to a new snapshot, synced before it replaces the previous one, then empties the log.
+     Called while the table write lock is held.
+     */
+    private void writeSnapshot() throws IOException {
+        File tempFile = new File(Utils.getFileName(fileName + "-snapshot", FileTypes.TABLE));
+        long bytes = 0;
+        try (FileOutputStream output = new FileOutputStream(tempFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            for (String row : rows.values()) {
+                writer.write(row);
+                writer.write(System.lineSeparator());
+                bytes += row.length() + System.lineSeparator().length();
+            }
+            writer.flush();
+            output.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), snapshot.getFile().toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.truncate();
+        loggedChanges = 0;
+        MetricsRegistry.getInstance().recordBytesWritten(tableName, bytes);
+        MetricsRegistry.getInstance().recordCounter("memory.snapshots", 1);
+    }
+
+    private String keyOf(String row) {
+        String[] rowValues = row.split("\\|");
+        return primaryKeyIdx < rowValues.length ? rowValues[primaryKeyIdx].trim() : "";
+    }
+}
@@ -0,0 +1,292 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.QueryTrace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The PartitionedTableStore class spreads the rows of a table over several partitions, each one a store of its own
+ in files named name_p0, name_p1, ... Rows are placed by the hash or the range of one column, and statements whose
+ conditions pin that column only touch the matching partition. Other scans read the partitions in parallel,
+ handing the rows over partition after partition, and rewrites run on all partitions at once.
+ */
+public class PartitionedTableStore implements TableStore {
+    private static final int CHUNK_ROWS = 1024;
+    private static final int READ_AHEAD_CHUNKS = 4;
+    private static final List<String> END_OF_PARTITION = new ArrayList<>();
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            (int) Config.getLong("partition.threads", Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "lightdb-partition-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final String tableName;
+    private final String column;
+    private final int columnIdx;
+    private final boolean range;
+    private final String[] bounds;
+    private final List<TableStore> partitions = new ArrayList<>();
+
+    /**
+     @param tableName the name of the table
+     @param columns the column names of the table, in storage order
+     @param options the options of the table, holding its partitioning
+     @param partitionStore opens the store of one partition from the name its files are derived from
+     @throws IOException if the files of a partition cannot be created
+     */
+    public PartitionedTableStore(String tableName, List<String> columns, TableOptions options,
+                                 Function<String, TableStore> partitionStore) throws IOException {
+        this.tableName = tableName;
+        this.column = options.get(TableOptions.PARTITION_COLUMN);
+        this.columnIdx = columns.indexOf(column);
+        this.range = "range".equals(options.get(TableOptions.PARTITION));
+        this.bounds = range ? options.get(TableOptions.PARTITION_BOUNDS).split(",") : new String[0];
+        int count = partitionCount(options);
+        for (int i = 0; i < count; i++) {
+            String fileName = partitionFileName(tableName, i);
+            new File(Utils.getFileName(fileName, FileTypes.TABLE)).createNewFile();
+            partitions.add(partitionStore.apply(fileName));
+        }
+    }
+
+    /**
+     Returns the number of partitions described by the options of a partitioned table.
+     @param options the options of the table
+     @return the number of partitions
+     */
+    public static int partitionCount(TableOptions options) {
+        if ("range".equals(options.get(TableOptions.PARTITION))) {
+            return options.get(TableOptions.PARTITION_BOUNDS).split(",").length + 1;
+        }
+        String partitions = options.get(TableOptions.PARTITIONS);
+        return partitions == null ? 4 : Integer.parseInt(partitions);
+    }
+
+    public static String partitionFileName(String tableName, int partition) {
+        return tableName + "_p" + partition;
+    }
+
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        List<Integer> candidates = prune(equalities);
+        if (candidates.size() == 1) {
+            partitions.get(candidates.get(0)).scan(equalities, visitor);
+            return;
+        }
+
+        AtomicBoolean stopped = new AtomicBoolean();
+        List<BlockingQueue<List<String>>> queues = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+        for (int candidate : candidates) {
+            BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS);
+            TableStore partition = partitions.get(candidate);
+            queues.add(queue);
+            readers.add(WORKERS.submit(() -> {
+                try {
+                    List<String> chunk = new ArrayList<>(CHUNK_ROWS);
+                    partition.scan(equalities, line -> {
+                        chunk.add(line);
+                        if (chunk.size() < CHUNK_ROWS) return true;
+                        boolean handed = hand(queue, new ArrayList<>(chunk), stopped);
+                        chunk.clear();
+                        return handed;
+                    });
+                    hand(queue, chunk, stopped);
+                } finally {
+                    hand(queue, END_OF_PARTITION, stopped);
+                }
+                return null;
+            }));
+        }
+
+        try {
+            for (int i = 0; i < queues.size(); i++) {
+                List<String> chunk;
+                while ((chunk = queues.get(i).take()) != END_OF_PARTITION) {
+                    for (String line : chunk) {
+                        if (!visitor.test(line)) return;
+                    }
+                }
+                readers.get(i).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            throw failure(e);
+        } finally {
+            stopped.set(true);
+        }
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        List<List<String>> perPartition = new ArrayList<>();
+        for (int i = 0; i < partitions.size(); i++) {
+            perPartition.add(new ArrayList<>());
+        }
+        for (String line : lines) {
+            perPartition.get(partitionOf(line)).add(line);
+        }
+        for (int i = 0; i < partitions.size(); i++) {
+            if (!perPartition.get(i).isEmpty()) partitions.get(i).append(perPartition.get(i));
+        }
+    }
+
+    /**
+     Rewrites the partitions that may hold rows to change, in parallel. Rows whose partition column is changed
+     are taken out of their partition and appended to the one they now belong to.
+     */
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        List<Integer> candidates = prune(equalities);
+        Queue<String> moved = new ConcurrentLinkedQueue<>();
+        List<Future<?>> rewriters = new ArrayList<>();
+        for (int candidate : candidates) {
+            TableStore partition = partitions.get(candidate);
+            UnaryOperator<String> partitionRewriter = line -> {
+                String output = rewriter.apply(line);
+                if (output != null && partitionOf(output) != candidate) {
+                    moved.add(output);
+                    return null;
+                }
+                return output;
+            };
+            if (candidates.size() == 1) {
+                partition.rewrite(equalities, partitionRewriter);
+            } else {
+                rewriters.add(WORKERS.submit(() -> {
+                    partition.rewrite(equalities, partitionRewriter);
+                    return null;
+                }));
+            }
+        }
+
+        IOException failure = null;
+        for (Future<?> future : rewriters) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("Rewrite interrupted", e);
+            } catch (ExecutionException e) {
+                if (failure == null) failure = failure(e);
+            }
+        }
+        if (failure != null) throw failure;
+        if (!moved.isEmpty()) append(new ArrayList<>(moved));
+    }
+
+    @Override
+    public boolean mayContain(Map<String, String> equalities) throws IOException {
+        for (int candidate : prune(equalities)) {
+            if (partitions.get(candidate).mayContain(equalities)) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public List<File> files() throws IOException {
+        List<File> files = new ArrayList<>();
+        for (TableStore partition : partitions) {
+            files.addAll(partition.files());
+        }
+        return files;
+    }
+
+    @Override
+    public void close() {
+        for (TableStore partition : partitions) {
+            partition.close();
+        }
+    }
+
+    /**
+     Finds the partitions that may hold rows having the given column values.
+     */
+    private List<Integer> prune(Map<String, String> equalities) {
+        List<Integer> candidates = new ArrayList<>();
+        String value = equalities.get(column);
+        if (value != null) {
+            candidates.add(partitionOfValue(value));
+            QueryTrace.accessPath("partition pruning");
+        } else {
+            for (int i = 0; i < partitions.size(); i++) {
+                candidates.add(i);
+            }
+        }
+        QueryTrace.operator("partition pruning", 0, candidates.size());
+        return candidates;
+    }
+
+    private int partitionOf(String line) {
+        String[] rowValues = line.split("\\|");
+        return columnIdx < 0 || columnIdx >= rowValues.length ? 0 : partitionOfValue(rowValues[columnIdx]);
+    }
+
+    /**
+     Returns the partition of a value of the partition column. Conditions compare values ignoring case,
+     so values are placed the same way whatever their case is.
+     */
+    private int partitionOfValue(String value) {
+        value = value.trim().toLowerCase(Locale.ROOT);
+        if (!range) {
+            return Math.floorMod(value.hashCode(), partitions.size());
+        }
+        int partition = 0;
+        while (partition < bounds.length && compare(value, bounds[partition]) >= 0) {
+            partition++;
+        }
+        return partition;
+    }
+
+    private static int compare(String value, String bound) {
+        try {
+            return Long.compare(Long.parseLong(value), Long.parseLong(bound));
+        } catch (NumberFormatException e) {
+            return value.compareToIgnoreCase(bound);
+        }
+    }
+
+    /**
+     Waits for room in the queue of a partition, giving up once the scan was stopped.
+     */
+    private static boolean hand(BlockingQueue<List<String>> queue, List<String> chunk, AtomicBoolean stopped) {
+        try {
+            while (!queue.offer(chunk, 10, TimeUnit.MILLISECONDS)) {
+                if (stopped.get()) return false;
+            }
+            return !stopped.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private IOException failure(ExecutionException e) {
+        if (e.getCause() instanceof IOException) return (IOException) e.getCause();
+        return new IOException("Partition of table " + tableName + " failed", e.getCause());
+    }
+}
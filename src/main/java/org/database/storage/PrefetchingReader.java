@@ -0,0 +1,184 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ The PrefetchingReader class reads the lines of a file for a sequential scan while the next blocks of the file are
+ already being read. Up to lightdb.scan.readAheadBlocks reads of lightdb.scan.blockBytes bytes are kept in flight
+ on an AsynchronousFileChannel, so the disk keeps working while the scanning thread evaluates the rows of the
+ current block. The reads go to direct buffers taken from a shared pool and given back once their block is
+ consumed, so scans do not allocate them again. Lines are found in the direct buffer itself, only the bytes of
+ each line are copied out to be decoded.
+ */
+public class PrefetchingReader implements Closeable {
+    private static final int BLOCK_BYTES = (int) Math.max(4096, Config.getLong("scan.blockBytes", 256 * 1024));
+    private static final int READ_AHEAD = (int) Math.max(1, Config.getLong("scan.readAheadBlocks", 4));
+    private static final int POOLED_BUFFERS = 64;
+    private static final Queue<ByteBuffer> FREE_BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private final AsynchronousFileChannel channel;
+    private final long size;
+    private final ArrayDeque<Read> pending = new ArrayDeque<>();
+    private ByteBuffer block;
+    private int blockPosition;
+    private int blockLimit;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private long nextPosition;
+    private long bytesConsumed;
+
+    /**
+     Opens the file and starts reading its first blocks.
+     @param file the file to read
+     @throws IOException if the file cannot be opened
+     */
+    public PrefetchingReader(File file) throws IOException {
+        this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.size = channel.size();
+        readAhead();
+    }
+
+    /**
+     Returns the next line of the file, without its line terminator.
+     @return the line, or null at the end of the file
+     @throws IOException if the file cannot be read
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            for (int i = blockPosition; i < blockLimit; i++) {
+                if (block.get(i) == '\n') {
+                    keep(blockPosition, i);
+                    String result = decode(line, 0, lineLength);
+                    lineLength = 0;
+                    bytesConsumed += i + 1 - blockPosition;
+                    blockPosition = i + 1;
+                    return result;
+                }
+            }
+            // the line goes on in the next block
+            if (block != null) keep(blockPosition, blockLimit);
+            bytesConsumed += blockLimit - blockPosition;
+            blockPosition = blockLimit;
+            if (!nextBlock()) {
+                if (lineLength == 0) return null;
+                String result = decode(line, 0, lineLength);
+                lineLength = 0;
+                return result;
+            }
+        }
+    }
+
+    /**
+     Returns the number of bytes of the lines returned so far.
+     @return the number of bytes, line terminators included
+     */
+    public long getBytesConsumed() {
+        return bytesConsumed;
+    }
+
+    /**
+     Waits for the reads still in flight, e.g. when the scan stopped early, and gives their buffers back.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            for (Read read : pending) {
+                try {
+                    read.result().get();
+                } catch (ExecutionException e) {
+                    // the block is not needed anymore
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                release(read.buffer());
+            }
+            pending.clear();
+            if (block != null) release(block);
+            block = null;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     Moves to the next block once it is read, and starts reading the block following the read-ahead window.
+     */
+    private boolean nextBlock() throws IOException {
+        if (block != null) release(block);
+        block = null;
+        blockPosition = 0;
+        blockLimit = 0;
+        Read read = pending.poll();
+        if (read == null) return false;
+        ByteBuffer buffer = read.buffer();
+        try {
+            int count = read.result().get();
+            // a read may return less than asked for, the rest is read before the block is used
+            while (count >= 0 && buffer.hasRemaining()) {
+                count = channel.read(buffer, read.position() + buffer.position()).get();
+            }
+        } catch (InterruptedException e) {
+            release(buffer);
+            Thread.currentThread().interrupt();
+            throw new IOException("Scan interrupted", e);
+        } catch (ExecutionException e) {
+            release(buffer);
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException("Reading the table failed", e.getCause());
+        }
+        // the buffer is scanned in place and given back once the next block is needed
+        block = buffer;
+        blockLimit = buffer.position();
+        readAhead();
+        return true;
+    }
+
+    private void readAhead() {
+        while (pending.size() < READ_AHEAD && nextPosition < size) {
+            ByteBuffer buffer = FREE_BUFFERS.poll();
+            if (buffer == null) buffer = ByteBuffer.allocateDirect(BLOCK_BYTES);
+            buffer.clear();
+            buffer.limit((int) Math.min(BLOCK_BYTES, size - nextPosition));
+            pending.add(new Read(buffer, nextPosition, channel.read(buffer, nextPosition)));
+            nextPosition += buffer.limit();
+        }
+    }
+
+    private static void release(ByteBuffer buffer) {
+        if (FREE_BUFFERS.size() < POOLED_BUFFERS) FREE_BUFFERS.add(buffer);
+    }
+
+    private void keep(int from, int to) {
+        int length = to - from;
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        block.get(from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     Decodes a line, dropping the carriage return of a Windows line terminator like BufferedReader does.
+     */
+    private static String decode(byte[] bytes, int from, int to) {
+        if (to > from && bytes[to - 1] == '\r') to--;
+        return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private record Read(ByteBuffer buffer, long position, Future<Integer> result) {
+    }
+}
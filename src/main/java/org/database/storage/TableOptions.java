@@ -0,0 +1,135 @@
+package org.database.storage;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ The TableOptions class holds the storage options given when a table was created, such as
+ "COMPRESSION=DEFLATE", "ENGINE=LSM", "ENGINE=MEMORY", "BLOOM=city,name" or "PARTITION BY HASH(id) PARTITIONS 4". They are saved as "key|value" lines next to the table metadata;
+ a table without options file uses the plain text storage.
+ */
+public class TableOptions {
+    public static final String COMPRESSION = "compression";
+    public static final String PARTITION = "partition";
+    public static final String PARTITION_COLUMN = "partitioncolumn";
+    public static final String PARTITIONS = "partitions";
+    public static final String PARTITION_BOUNDS = "partitionbounds";
+    public static final String BLOOM = "bloom";
+    public static final String ENGINE = "engine";
+
+    // the options given as KEY=VALUE, the partitioning ones only come from the PARTITION BY clause
+    private static final Set<String> KEY_VALUE_OPTIONS = Set.of(COMPRESSION, BLOOM, ENGINE);
+
+    private static final Pattern PARTITION_PATTERN = Pattern.compile(
+            "PARTITION\\s+BY\\s+(HASH|RANGE)\\s*\\(\\s*([a-zA-Z_]+)\\s*\\)(\\s*\\(([a-zA-Z_\\d,\\s]+)\\))?(\\s+PARTITIONS\\s+(\\d+))?",
+            Pattern.CASE_INSENSITIVE
+    );
+
+    private final Map<String, String> options = new LinkedHashMap<>();
+    private final List<String> unknownOptions = new ArrayList<>();
+
+    /**
+     Parses the options clause following the column list of a CREATE TABLE query.
+     A PARTITION BY HASH(column) [PARTITIONS n] or PARTITION BY RANGE(column) (bound,...) clause may appear
+     among them; a range partition holds the values below its bound, the last one everything else.
+     @param clause the options, as space-separated KEY=VALUE pairs, or null
+     @return the parsed options
+     */
+    public static TableOptions parse(String clause) {
+        TableOptions tableOptions = new TableOptions();
+        if (!Utils.isValidString(clause)) return tableOptions;
+        Matcher matcher = PARTITION_PATTERN.matcher(clause);
+        if (matcher.find()) {
+            tableOptions.options.put(PARTITION, matcher.group(1).toLowerCase(Locale.ROOT));
+            tableOptions.options.put(PARTITION_COLUMN, matcher.group(2));
+            if (matcher.group(4) != null) {
+                tableOptions.options.put(PARTITION_BOUNDS, matcher.group(4).replaceAll("\\s", ""));
+            }
+            if (matcher.group(6) != null) {
+                tableOptions.options.put(PARTITIONS, matcher.group(6));
+            }
+            clause = clause.substring(0, matcher.start()) + " " + clause.substring(matcher.end());
+        }
+        for (String option : clause.trim().split("\\s+")) {
+            if (option.isEmpty()) continue;
+            String[] keyValue = option.split("=", 2);
+            if (keyValue.length == 2 && KEY_VALUE_OPTIONS.contains(keyValue[0].trim().toLowerCase(Locale.ROOT))) {
+                tableOptions.options.put(keyValue[0].trim().toLowerCase(Locale.ROOT), keyValue[1].trim().toLowerCase(Locale.ROOT));
+            } else {
+                tableOptions.unknownOptions.add(option);
+            }
+        }
+        return tableOptions;
+    }
+
+    /**
+     Loads the options of a table.
+     @param tableName the name of the table
+     @return the saved options, empty if the table has none
+     @throws IOException if an I/O error occurs while reading the options
+     */
+    public static TableOptions load(String tableName) throws IOException {
+        TableOptions tableOptions = new TableOptions();
+        File file = new File(Utils.getFileName(tableName, FileTypes.TABLE_OPTIONS));
+        if (!file.exists()) return tableOptions;
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] keyValue = line.split("\\|", 2);
+            if (keyValue.length == 2) tableOptions.options.put(keyValue[0], keyValue[1]);
+        }
+        return tableOptions;
+    }
+
+    /**
+     Saves the options of a table, nothing is written when there are no options.
+     @param tableName the name of the table
+     @throws IOException if an I/O error occurs while writing the options
+     */
+    public void save(String tableName) throws IOException {
+        if (options.isEmpty()) return;
+        try (PrintWriter printWriter = new PrintWriter(new FileWriter(Utils.getFileName(tableName, FileTypes.TABLE_OPTIONS)))) {
+            for (Map.Entry<String, String> entry : options.entrySet()) {
+                printWriter.println(entry.getKey() + "|" + entry.getValue());
+            }
+        }
+    }
+
+    public String get(String key) {
+        return options.get(key);
+    }
+
+    /**
+     Sets an option, e.g. when ALTER TABLE changes the storage of a table.
+     @param key the option, in lower case
+     @param value its value, in lower case
+     */
+    public void set(String key, String value) {
+        options.put(key, value);
+    }
+
+    /**
+     Returns the words of the options clause that are not options, e.g. a misspelled PARTITION BY clause or
+     an unknown key such as COMPRESION=DEFLATE.
+     @return the words that could not be parsed
+     */
+    public List<String> getUnknownOptions() {
+        return unknownOptions;
+    }
+
+    public boolean isEmpty() {
+        return options.isEmpty();
+    }
+}
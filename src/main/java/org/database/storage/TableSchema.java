@@ -0,0 +1,203 @@
+package org.database.storage;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.query.QueryUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ The TableSchema class is the history of the columns of a table changed by ALTER TABLE, saved in name_schema.txt
+ next to its metadata, which keeps listing the current columns. A table that was never altered has no schema file
+ and its rows hold the columns of the metadata.
+
+ Every column ever added keeps its position in the stored rows: ADD COLUMN appends a position and DROP COLUMN only
+ stops reading one, so a stored row tells the version of the schema it was written with by its number of values,
+ and altering a table never touches its rows. Reading a row gives the current columns, with the default value of
+ the columns added after the row was written and without the dropped ones. Rows are written with every position,
+ an empty value for the dropped columns, so the rows a statement rewrites are brought to the current version.
+ */
+public class TableSchema {
+    /**
+     The name the stores get for the position of a dropped column, which no condition can name.
+     */
+    public static final String DROPPED = "#dropped";
+
+    private int version;
+    private final List<Column> columns;
+    private boolean hasDropped;
+
+    private TableSchema(int version, List<Column> columns) {
+        this.version = version;
+        this.columns = columns;
+        this.hasDropped = columns.stream().anyMatch(Column::isDropped);
+    }
+
+    /**
+     Loads the schema of an altered table.
+     @param tableName the name of the table
+     @return the schema, or null if the table was never altered
+     @throws IOException if the schema cannot be read
+     */
+    public static TableSchema load(String tableName) throws IOException {
+        File file = new File(Utils.getFileName(tableName, FileTypes.TABLE_SCHEMA));
+        if (!file.exists()) return null;
+        int version = 1;
+        List<Column> columns = new ArrayList<>();
+        for (String line : Files.readAllLines(file.toPath())) {
+            String[] parts = line.split("\\|", -1);
+            if (parts[0].equals("version") && parts.length == 2) {
+                version = Integer.parseInt(parts[1]);
+            } else if (parts[0].equals("column") && parts.length == 6) {
+                columns.add(new Column(parts[1], parts[2], Integer.parseInt(parts[3]), Integer.parseInt(parts[4]), parts[5]));
+            }
+        }
+        return new TableSchema(version, columns);
+    }
+
+    /**
+     Returns the schema of a table to alter it, the first version made of the columns of the metadata when the
+     table was never altered.
+     @param tableName the name of the table
+     @return the schema
+     @throws IOException if the schema or the metadata cannot be read
+     */
+    public static TableSchema of(String tableName) throws IOException {
+        TableSchema schema = load(tableName);
+        if (schema != null) return schema;
+        List<Column> columns = new ArrayList<>();
+        for (Map.Entry<String, String> field : new QueryUtils().getMetaData(tableName).entrySet()) {
+            columns.add(new Column(field.getKey(), field.getValue(), 1, 0, ""));
+        }
+        return new TableSchema(1, columns);
+    }
+
+    /**
+     Adds a column at the end of the rows, in a new version of the schema.
+     @param name the name of the column
+     @param type the type of the column
+     @param defaultValue the value rows stored before this version have for the column
+     */
+    public void addColumn(String name, String type, String defaultValue) {
+        version++;
+        columns.add(new Column(name, type, version, 0, defaultValue));
+    }
+
+    /**
+     Drops a column, in a new version of the schema. Its position stays in the stored rows.
+     @param name the name of the column
+     */
+    public void dropColumn(String name) {
+        version++;
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (!column.isDropped() && column.name().equals(name)) {
+                columns.set(i, new Column(column.name(), column.type(), column.addedIn(), version, column.defaultValue()));
+            }
+        }
+        hasDropped = true;
+    }
+
+    /**
+     Saves the schema, replacing the previous version at once.
+     @param tableName the name of the table
+     @throws IOException if an I/O error occurs while writing the schema
+     */
+    public void save(String tableName) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("version|" + version);
+        for (Column column : columns) {
+            lines.add("column|" + column.name() + "|" + column.type() + "|" + column.addedIn() + "|" + column.droppedIn()
+                    + "|" + column.defaultValue());
+        }
+        File file = new File(Utils.getFileName(tableName, FileTypes.TABLE_SCHEMA));
+        File tempFile = new File(file.getPath() + "-temp");
+        Files.write(tempFile.toPath(), lines);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     Names the positions of the stored rows, for the stores that look values up in them.
+     @return the name of the column at each position, DROPPED for the dropped ones
+     */
+    public List<String> storedColumns() {
+        List<String> names = new ArrayList<>();
+        for (Column column : columns) {
+            names.add(column.isDropped() ? DROPPED : column.name());
+        }
+        return names;
+    }
+
+    /**
+     Converts a stored row to the current columns.
+     @param line the row as stored, in any version of the schema
+     @return the row with the current columns
+     */
+    public String read(String line) {
+        if (isCurrent(line)) return line;
+        String[] values = line.split("\\|", -1);
+        StringJoiner row = new StringJoiner("|");
+        for (int i = 0; i < columns.size(); i++) {
+            Column column = columns.get(i);
+            if (column.isDropped()) continue;
+            row.add(i < values.length ? values[i] : column.defaultValue());
+        }
+        return row.toString();
+    }
+
+    /**
+     Converts a row of the current columns to the layout it is stored with.
+     @param line the row with the current columns
+     @return the row to store
+     */
+    public String write(String line) {
+        if (isCurrent(line)) return line;
+        String[] values = line.split("\\|", -1);
+        StringJoiner row = new StringJoiner("|");
+        int next = 0;
+        for (Column column : columns) {
+            if (column.isDropped()) {
+                row.add("");
+            } else {
+                row.add(next < values.length ? values[next++] : "");
+            }
+        }
+        return row.toString();
+    }
+
+    /**
+     Tells whether a row is the same in the stored layout and with the current columns: no column was dropped
+     and the row holds a value for every column.
+     */
+    private boolean isCurrent(String line) {
+        if (hasDropped) return false;
+        int values = 1;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '|') values++;
+        }
+        return values == columns.size();
+    }
+
+    /**
+     One position of the stored rows.
+     @param addedIn the version of the schema that added the column
+     @param droppedIn the version that dropped it, 0 while it is a column of the table
+     @param defaultValue the value of the column in the rows stored before it was added
+     */
+    private record Column(String name, String type, int addedIn, int droppedIn, String defaultValue) {
+        boolean isDropped() {
+            return droppedIn > 0;
+        }
+    }
+}
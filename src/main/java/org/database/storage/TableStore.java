@@ -0,0 +1,66 @@
+package org.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The TableStore interface is the storage of the rows of one table. Rows are handled as the text lines of
+ the plain table format, "value|value|...", whatever the physical layout of the store is.
+ Callers hold the table lock: scans under the read lock, appends and rewrites under the write lock.
+ */
+public interface TableStore {
+    /**
+     Visits the rows of the table in storage order.
+     @param equalities column values that every wanted row has, which the store may use to skip rows that
+     cannot match; rows are still checked by the caller, so the map may be empty
+     @param visitor receives each row, always on the calling thread, and returns false to stop the scan early
+     @throws IOException if an I/O error occurs while reading the table
+     */
+    void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException;
+
+    /**
+     Durably appends rows to the table.
+     @param lines the rows to be appended
+     @throws IOException if an I/O error occurs while writing the table
+     */
+    void append(List<String> lines) throws IOException;
+
+    /**
+     Rewrites the rows of the table. Stores made of several parts may rewrite them concurrently, so the rewriter
+     must be safe to call from several threads.
+     @param equalities column values that every row to change has; rows that cannot match may be kept as they
+     are without being passed to the rewriter
+     @param rewriter receives each row and returns the row to keep in its place, or null to delete it
+     @throws IOException if an I/O error occurs while rewriting the table
+     */
+    void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException;
+
+    /**
+     Tells whether the table may hold rows having the given column values, without reading the rows.
+     @param equalities column values that every wanted row has
+     @return false if no row of the table has these values, true if some may have them
+     @throws IOException if an I/O error occurs while reading what the store knows about its rows
+     */
+    default boolean mayContain(Map<String, String> equalities) throws IOException {
+        return true;
+    }
+
+    /**
+     Returns the files currently holding the rows of the table, e.g. to copy them into a checkpoint.
+     @return the existing files of the store
+     @throws IOException if the layout of the store cannot be read
+     */
+    List<File> files() throws IOException;
+
+    /**
+     Stops the background work of the store once it is replaced by a new instance, e.g. after the schema of the
+     table changed, so that it no longer changes the files the new instance reads. Statements already holding
+     the store may still use it.
+     */
+    default void close() {
+    }
+}
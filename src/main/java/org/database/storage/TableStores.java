@@ -0,0 +1,173 @@
+package org.database.storage;
+
+import org.database.Utils.Config;
+import org.database.query.QueryUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ The TableStores class opens the TableStore matching the options of each table and keeps it for later
+ statements, so stores holding in-memory state such as a block index load it only once.
+ */
+public class TableStores {
+    private static final Map<String, TableStore> STORES = new ConcurrentHashMap<>();
+
+    /**
+     Returns the store of a table.
+     @param tableName the name of the table
+     @return the store of the table
+     @throws IOException if the metadata or the options of the table cannot be read
+     */
+    public static TableStore get(String tableName) throws IOException {
+        try {
+            return STORES.computeIfAbsent(key(tableName), key -> {
+                try {
+                    return open(tableName);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     Forgets the store of a table, e.g. after the table was created again or its schema changed. The store is
+     closed before a new one can be opened, so that its background work no longer changes the files of the table.
+     @param tableName the name of the table
+     */
+    public static void invalidate(String tableName) {
+        STORES.computeIfPresent(key(tableName), (key, store) -> {
+            store.close();
+            return null;
+        });
+    }
+
+    /**
+     Checks the options of a CREATE TABLE query.
+     @param options the parsed options
+     @param columns the column names of the table
+     @param primaryKeyField the primary key column of the table, or null
+     @return a message describing the first invalid option, or null if all options are supported
+     */
+    public static String validate(TableOptions options, List<String> columns, String primaryKeyField) {
+        if (!options.getUnknownOptions().isEmpty()) {
+            return "Unsupported option " + options.getUnknownOptions().get(0);
+        }
+        String compression = options.get(TableOptions.COMPRESSION);
+        if (compression != null && !compression.equals("deflate") && !compression.equals("none")) {
+            return "Unsupported compression " + compression + ", use DEFLATE or NONE";
+        }
+        String engine = options.get(TableOptions.ENGINE);
+        if (engine != null && !engine.equals("lsm") && !engine.equals("memory") && !engine.equals("text")) {
+            return "Unsupported engine " + engine + ", use LSM, MEMORY or TEXT";
+        }
+        if ("lsm".equals(engine)) {
+            if (primaryKeyField == null) {
+                return "ENGINE=LSM requires a primary key";
+            }
+            if ("deflate".equals(options.get(TableOptions.COMPRESSION))) {
+                return "ENGINE=LSM cannot be combined with COMPRESSION=DEFLATE";
+            }
+        }
+        if ("memory".equals(engine)) {
+            if (primaryKeyField == null) {
+                return "ENGINE=MEMORY requires a primary key";
+            }
+            if ("deflate".equals(options.get(TableOptions.COMPRESSION))) {
+                return "ENGINE=MEMORY cannot be combined with COMPRESSION=DEFLATE";
+            }
+            if (options.get(TableOptions.PARTITION) != null) {
+                return "ENGINE=MEMORY cannot be combined with PARTITION BY";
+            }
+        }
+        for (String column : bloomColumns(options, columns, null)) {
+            if (!columns.contains(column)) {
+                return "Bloom filter column " + column + " not exist!";
+            }
+        }
+        String partition = options.get(TableOptions.PARTITION);
+        if (partition != null) {
+            if (!columns.contains(options.get(TableOptions.PARTITION_COLUMN))) {
+                return "Partition column " + options.get(TableOptions.PARTITION_COLUMN) + " not exist!";
+            }
+            if (partition.equals("range") && options.get(TableOptions.PARTITION_BOUNDS) == null) {
+                return "RANGE partitioning requires bounds, e.g. PARTITION BY RANGE(id) (100,200)";
+            }
+            int partitions = PartitionedTableStore.partitionCount(options);
+            if (partitions < 1 || partitions > 256) {
+                return "Number of partitions must be between 1 and 256";
+            }
+        }
+        return null;
+    }
+
+    private static TableStore open(String tableName) throws IOException {
+        TableOptions options = TableOptions.load(tableName);
+        QueryUtils queryUtils = new QueryUtils();
+        Map<String, String> fieldEntry = queryUtils.getMetaData(tableName);
+        String primaryKeyField = queryUtils.getPrimaryKeyField();
+        // the stores look values up by their position in the stored rows, which keep the dropped columns
+        TableSchema schema = TableSchema.load(tableName);
+        List<String> columns = schema == null ? new ArrayList<>(fieldEntry.keySet()) : schema.storedColumns();
+        int primaryKeyIdx = primaryKeyField == null ? -1 : columns.indexOf(primaryKeyField);
+        boolean lsm = "lsm".equals(options.get(TableOptions.ENGINE));
+        boolean memory = "memory".equals(options.get(TableOptions.ENGINE));
+        List<String> bloomColumns = bloomFilteredColumns(options, columns, primaryKeyField);
+        boolean compressed = "deflate".equals(options.get(TableOptions.COMPRESSION));
+        Function<String, TableStore> fileStore = fileName -> {
+            TableStore store = memory ? new MemoryTableStore(tableName, fileName, primaryKeyField, primaryKeyIdx)
+                    : lsm ? new LsmTableStore(tableName, fileName, primaryKeyField, primaryKeyIdx)
+                    : compressed ? new CompressedTableStore(tableName, fileName, columns, primaryKeyIdx)
+                    : new TextTableStore(tableName, fileName);
+            return bloomColumns.isEmpty() ? store : new BloomFilteredTableStore(store, fileName, columns, bloomColumns);
+        };
+        TableStore store = options.get(TableOptions.PARTITION) != null
+                ? new PartitionedTableStore(tableName, columns, options, fileStore) : fileStore.apply(tableName);
+        return schema == null ? store : new VersionedTableStore(store, schema);
+    }
+
+    /**
+     Lists the columns the store of a table keeps a Bloom filter for, none when lightdb.bloom.enabled is false or
+     the table is held in memory.
+     @param options the options of the table
+     @param columns the column names of the table
+     @param primaryKeyField the primary key column of the table, or null
+     @return the filtered columns
+     */
+    public static List<String> bloomFilteredColumns(TableOptions options, List<String> columns, String primaryKeyField) {
+        if (!Config.getBoolean("bloom.enabled", true)) return List.of();
+        // memory tables answer from their hash map without reading a file a filter could spare
+        if ("memory".equals(options.get(TableOptions.ENGINE))) return List.of();
+        // LSM runs carry a Bloom filter of their keys already
+        boolean lsm = "lsm".equals(options.get(TableOptions.ENGINE));
+        return bloomColumns(options, columns, lsm ? null : primaryKeyField);
+    }
+
+    /**
+     Lists the columns to keep a Bloom filter for: the primary key and the columns of the BLOOM option,
+     matched ignoring case since option values are saved in lower case.
+     */
+    private static List<String> bloomColumns(TableOptions options, List<String> columns, String primaryKeyField) {
+        List<String> bloomColumns = new ArrayList<>();
+        if (primaryKeyField != null) bloomColumns.add(primaryKeyField);
+        String bloom = options.get(TableOptions.BLOOM);
+        if (bloom == null) return bloomColumns;
+        for (String name : bloom.split(",")) {
+            String column = columns.stream().filter(name.trim()::equalsIgnoreCase).findFirst().orElse(name.trim());
+            if (!bloomColumns.contains(column)) bloomColumns.add(column);
+        }
+        return bloomColumns;
+    }
+
+    private static String key(String tableName) {
+        return Config.getDataDirectory() + "/" + tableName;
+    }
+}
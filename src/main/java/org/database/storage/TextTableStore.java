@@ -0,0 +1,113 @@
+package org.database.storage;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.metrics.MetricsRegistry;
+import org.database.query.QueryUtils;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The TextTableStore class is the plain storage of a table: one row per line of database/tables/name.txt.
+ Appends are synced to disk; rewrites go through the name-temp.txt file, which is then copied back.
+ */
+public class TextTableStore implements TableStore {
+    private final String tableName;
+    private final String fileName;
+
+    /**
+     @param tableName the name of the table, used in the statistics
+     @param fileName the name the table file is derived from, the table name unless the file holds a part of it
+     */
+    public TextTableStore(String tableName, String fileName) {
+        this.tableName = tableName;
+        this.fileName = fileName;
+    }
+
+    public File getFile() {
+        return new File(Utils.getFileName(fileName, FileTypes.TABLE));
+    }
+
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        PrefetchingReader reader = new PrefetchingReader(getFile());
+        try (reader) {
+            String st;
+            while ((st = reader.readLine()) != null) {
+                if (!visitor.test(st)) break;
+            }
+        } finally {
+            MetricsRegistry.getInstance().recordBytesRead(tableName, reader.getBytesConsumed());
+        }
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        StringBuilder output = new StringBuilder();
+        for (String line : lines) {
+            output.append(line).append(System.lineSeparator());
+        }
+        byte[] bytes = output.toString().getBytes(StandardCharsets.UTF_8);
+        try (FileOutputStream outputStream = new FileOutputStream(getFile(), true)) {
+            outputStream.write(bytes);
+            outputStream.getFD().sync();
+        }
+        MetricsRegistry.getInstance().recordBytesWritten(tableName, bytes.length);
+    }
+
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        File tempTableFile = new File(Utils.getFileName(fileName + "-temp", FileTypes.TABLE));
+        try (PrintWriter printWriter = new PrintWriter(new BufferedWriter(new FileWriter(tempTableFile, StandardCharsets.UTF_8)))) {
+            scan(Map.of(), line -> {
+                String output = rewriter.apply(line);
+                if (output != null) printWriter.println(output);
+                return true;
+            });
+        }
+        new QueryUtils().copyAnotherFile(fileName, tableName);
+    }
+
+    @Override
+    public List<File> files() {
+        return List.of(getFile());
+    }
+
+    /**
+     Removes the last line of the file when a crash cut it: it has no line terminator yet, so it was never
+     acknowledged.
+     @throws IOException if an I/O error occurs while truncating the file
+     */
+    public void dropPartialLine() throws IOException {
+        File file = getFile();
+        if (!file.exists() || file.length() == 0) return;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            long length = randomAccessFile.length();
+            while (length > 0) {
+                randomAccessFile.seek(length - 1);
+                if (randomAccessFile.read() == '\n') break;
+                length--;
+            }
+            randomAccessFile.setLength(length);
+        }
+    }
+
+    /**
+     Empties the table file.
+     @throws IOException if an I/O error occurs while truncating the file
+     */
+    public void truncate() throws IOException {
+        new FileOutputStream(getFile()).close();
+    }
+}
@@ -0,0 +1,67 @@
+package org.database.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ The VersionedTableStore class is the store of a table altered by ALTER TABLE. It wraps the store holding the rows,
+ which keeps working on the rows as stored, and converts them with the TableSchema of the table: rows are read with
+ the current columns whatever version they were stored with, and appended or rewritten rows are stored in the
+ current version. Stores only look up the columns a table was created with, which cannot be dropped, so their
+ positions are the same in every version.
+ */
+public class VersionedTableStore implements TableStore {
+    private final TableStore store;
+    private final TableSchema schema;
+
+    /**
+     @param store the store holding the rows
+     @param schema the schema of the table
+     */
+    public VersionedTableStore(TableStore store, TableSchema schema) {
+        this.store = store;
+        this.schema = schema;
+    }
+
+    @Override
+    public void scan(Map<String, String> equalities, Predicate<String> visitor) throws IOException {
+        store.scan(equalities, line -> visitor.test(schema.read(line)));
+    }
+
+    @Override
+    public void append(List<String> lines) throws IOException {
+        List<String> storedLines = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            storedLines.add(schema.write(line));
+        }
+        store.append(storedLines);
+    }
+
+    @Override
+    public void rewrite(Map<String, String> equalities, UnaryOperator<String> rewriter) throws IOException {
+        store.rewrite(equalities, line -> {
+            String row = rewriter.apply(schema.read(line));
+            return row == null ? null : schema.write(row);
+        });
+    }
+
+    @Override
+    public boolean mayContain(Map<String, String> equalities) throws IOException {
+        return store.mayContain(equalities);
+    }
+
+    @Override
+    public List<File> files() throws IOException {
+        return store.files();
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
+}
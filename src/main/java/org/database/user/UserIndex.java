@@ -0,0 +1,112 @@
+package org.database.user;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ The UserIndex class keeps the users of a users file in a concurrent in-memory map keyed by username.
+ The file is read once; afterwards every lookup only compares the file length with the length already
+ read and reads the appended tail, so users registered by other processes become visible without
+ rescanning the whole file, and only takes the lock of the index when the length changed. A last line
+ without line break may still be growing, so it is not indexed but kept apart and parsed again once the
+ file grows. A file that shrank is reloaded from scratch.
+ */
+public class UserIndex {
+    private static final Map<String, UserIndex> INDEXES = new ConcurrentHashMap<>();
+
+    private final File file;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private long indexedLength;
+    private volatile long readLength = -1;
+    private volatile User partialUser;
+
+    private UserIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     Returns the shared index of the given users file.
+     @param file the users file
+     @return the index of the file
+     */
+    public static UserIndex of(File file) {
+        return INDEXES.computeIfAbsent(file.getAbsolutePath(), key -> new UserIndex(file));
+    }
+
+    /**
+     Retrieves a user by username.
+     @param username the username of the user to retrieve
+     @return the User object corresponding to the given username, or null if not found
+     @throws IOException if the users file cannot be read
+     */
+    public User get(String username) throws IOException {
+        if (file.length() != readLength) refresh();
+        return lookup(username);
+    }
+
+    /**
+     Appends a user to the users file and to the index, unless the username is already taken.
+     @param user the user to be added, with its password and answer already encrypted
+     @return true if the user is added, false if the username already exists
+     @throws IOException if the users file cannot be written
+     */
+    public synchronized boolean add(User user) throws IOException {
+        refresh();
+        if (lookup(user.getUsername()) != null) return false;
+        try (PrintWriter printWriter = new PrintWriter(new FileWriter(file, true))) {
+            if (file.length() > indexedLength) printWriter.println();
+            printWriter.println(user.getUsername() + "," + user.getPassword() + "," + user.getQuestion() + "," + user.getAnswer());
+        }
+        refresh();
+        return true;
+    }
+
+    private User lookup(String username) {
+        User user = users.get(username);
+        User partial = partialUser;
+        if (user == null && partial != null && partial.getUsername().equals(username)) return partial;
+        return user;
+    }
+
+    private synchronized void refresh() throws IOException {
+        if (!file.exists()) file.createNewFile();
+        long length = file.length();
+        if (length == readLength) return;
+        if (length < indexedLength) {
+            users.clear();
+            indexedLength = 0;
+        }
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            input.seek(indexedLength);
+            byte[] tail = new byte[(int) (length - indexedLength)];
+            input.readFully(tail);
+            int lineStart = 0;
+            for (int i = 0; i < tail.length; i++) {
+                if (tail[i] != '\n') continue;
+                index(new String(tail, lineStart, i - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+            partialUser = lineStart < tail.length ? parse(new String(tail, lineStart, tail.length - lineStart, StandardCharsets.UTF_8)) : null;
+            indexedLength += lineStart;
+            readLength = length;
+        }
+    }
+
+    private void index(String line) {
+        User user = parse(line);
+        if (user != null) users.putIfAbsent(user.getUsername(), user);
+    }
+
+    private static User parse(String line) {
+        String[] userData = line.strip().split(",");
+        if (userData.length < 4) return null;
+        return new User(userData[0], userData[1], userData[2], userData[3]);
+    }
+}
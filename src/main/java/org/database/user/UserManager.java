@@ -18,7 +18,7 @@ public class UserManager {
     public List<User> getAllUsers() {
         List<User> userList = new ArrayList<>();
         try {
-            File userFile = new File("database/users.txt");
+            File userFile = new File(Utils.getDataFileName("users.txt"));
             userFile.createNewFile();
             BufferedReader allUsersFile = new BufferedReader(new FileReader(userFile));
             List<String> allUsersList = Utils.readLinesFromFile(allUsersFile);
@@ -38,14 +38,20 @@ public class UserManager {
      @return the User object corresponding to the given username, or null if not found
      */
     public User getUserByUsername(String username) {
-        List<User> userList = getAllUsers();
-        User resultedUser = null;
-        for(User user: userList) {
-            if(user.getUsername().equals(username)) {
-                resultedUser = user;
-                break;
-            }
+        try {
+            return UserIndex.of(new File(Utils.getDataFileName("users.txt"))).get(username);
+        } catch (IOException e) {
+            return null;
         }
-        return resultedUser;
+    }
+
+    /**
+     Adds a new user to the data source, unless a user with the same username already exists.
+     @param user the User object to add, with its password and answer already encrypted
+     @return true if the user is added, false if the username is already taken
+     @throws IOException if the data source cannot be written
+     */
+    public boolean addUser(User user) throws IOException {
+        return UserIndex.of(new File(Utils.getDataFileName("users.txt"))).add(user);
     }
 }
@@ -0,0 +1,413 @@
+package org.database.view;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.cache.TableVersions;
+import org.database.query.Aggregate;
+import org.database.query.QueryUtils;
+import org.database.query.TableLocks;
+import org.database.storage.TableStores;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ The MaterializedView class is an aggregate SELECT over one table whose result is stored as a table of its own,
+ so reading it costs a scan of one row per group instead of a scan of the whole table. The view table holds the
+ fields of the SELECT, named like "city", "count" for COUNT(*) or "avg_salary" for AVG(salary).
+
+ Next to it, name_state.txt keeps the running values of each group: its number of rows, and the sum, minimum and
+ maximum of each aggregated column. The rows an INSERT, UPDATE or DELETE removes from and adds to the table are
+ subtracted from and added to their groups, so only the changed groups are computed again. A MIN or MAX whose
+ value was removed, or a SUM or AVG that lost a value which is a number but not an integer, cannot be subtracted
+ exactly; such groups are computed again from one scan of the table.
+
+ A view is only changed while the write lock of its table is held.
+ */
+public class MaterializedView {
+    private static final String TABLE = "table";
+    private static final String FIELDS = "fields";
+    private static final String WHERE = "where";
+    private static final String GROUP_BY = "groupby";
+
+    private final String name;
+    private final String tableName;
+    private final String fields;
+    private final String conditions;
+    private final String groupBy;
+    private final List<Aggregate> aggregates;
+    private final QueryUtils queryUtils = new QueryUtils();
+    private LinkedHashMap<String, Group> groups;
+
+    /**
+     @param name the name of the view
+     @param tableName the table the view is computed from
+     @param fields the comma-separated fields of the aggregate SELECT
+     @param conditions the conditions of its WHERE clause, or null
+     @param groupBy the column of its GROUP BY clause, or null
+     */
+    public MaterializedView(String name, String tableName, String fields, String conditions, String groupBy) {
+        this.name = name;
+        this.tableName = tableName;
+        this.fields = fields;
+        this.conditions = conditions == null ? null : conditions.trim();
+        this.groupBy = groupBy;
+        this.aggregates = Aggregate.parse(fields);
+    }
+
+    /**
+     Names the column of the view table holding a field of the SELECT.
+     @param aggregate the field
+     @return the column name, e.g. "count" for COUNT(*), "sum_salary" for SUM(salary) or the GROUP BY column
+     */
+    public static String columnName(Aggregate aggregate) {
+        if (!aggregate.isFunction()) return aggregate.getColumn();
+        if (aggregate.getColumn().equals("*")) return aggregate.getFunction();
+        return aggregate.getFunction() + "_" + aggregate.getColumn();
+    }
+
+    /**
+     Loads the definition of a view.
+     @param name the name of the view
+     @return the view
+     @throws IOException if the definition cannot be read
+     */
+    static MaterializedView load(String name) throws IOException {
+        Map<String, String> definition = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(new File(Utils.getFileName(name, FileTypes.VIEW_DEFINITION)).toPath())) {
+            String[] keyValue = line.split("\\|", 2);
+            if (keyValue.length == 2) definition.put(keyValue[0], keyValue[1]);
+        }
+        if (definition.get(TABLE) == null || definition.get(FIELDS) == null) {
+            throw new IOException("Invalid definition of materialized view " + name);
+        }
+        return new MaterializedView(name, definition.get(TABLE), definition.get(FIELDS), definition.get(WHERE), definition.get(GROUP_BY));
+    }
+
+    /**
+     Writes the files of a new view and computes its rows. Called while the write lock of the table is held.
+     @param tableFields the columns of the table and their types
+     @throws IOException if an I/O error occurs while reading the table or writing the view
+     */
+    public void create(Map<String, String> tableFields) throws IOException {
+        List<String> definition = new ArrayList<>();
+        definition.add(TABLE + "|" + tableName);
+        definition.add(FIELDS + "|" + fields);
+        if (conditions != null) definition.add(WHERE + "|" + conditions);
+        if (groupBy != null) definition.add(GROUP_BY + "|" + groupBy);
+        replace(new File(Utils.getFileName(name, FileTypes.VIEW_DEFINITION)), definition);
+
+        List<String> columns = new ArrayList<>();
+        for (Aggregate aggregate : aggregates) {
+            columns.add(columnName(aggregate) + "|" + columnType(aggregate, tableFields));
+        }
+        replace(new File(Utils.getFileName(name, FileTypes.META_TABLE)), columns);
+        refresh();
+    }
+
+    /**
+     Computes every group of the view from a scan of the table.
+     @return the number of groups
+     @throws IOException if an I/O error occurs while reading the table or writing the view
+     */
+    public int refresh() throws IOException {
+        groups = new LinkedHashMap<>();
+        scan(null);
+        if (groupBy == null) groups.putIfAbsent("", new Group());
+        write();
+        return groups.size();
+    }
+
+    /**
+     Applies the rows a statement removed from and added to the table to the groups they belong to.
+     @param changes the changed rows of the table
+     @return the number of groups changed
+     @throws IOException if an I/O error occurs while reading the table or writing the view
+     */
+    public int apply(RowChanges changes) throws IOException {
+        if (changes.isOverflow()) return refresh();
+        load();
+        List<String> columns = new ArrayList<>(queryUtils.getMetaData(tableName).keySet());
+        Set<String> changed = new LinkedHashSet<>();
+        Set<String> stale = new HashSet<>();
+        for (String line : changes.getRemoved()) {
+            Map<String, String> row = row(line, columns);
+            if (!queryUtils.handleAndOrConditions(row, conditions)) continue;
+            String key = key(row);
+            Group group = groups.get(key);
+            if (group == null || group.rows == 0) {
+                // the view does not hold the row, it missed a change
+                return refresh();
+            }
+            if (group.remove(row)) stale.add(key);
+            changed.add(key);
+        }
+        for (String line : changes.getAdded()) {
+            Map<String, String> row = row(line, columns);
+            if (!queryUtils.handleAndOrConditions(row, conditions)) continue;
+            String key = key(row);
+            groups.computeIfAbsent(key, k -> new Group()).add(row);
+            changed.add(key);
+        }
+        if (changed.isEmpty()) return 0;
+
+        for (String key : changed) {
+            if (groups.get(key).rows > 0) continue;
+            if (groupBy == null) {
+                groups.put(key, new Group());
+            } else {
+                groups.remove(key);
+            }
+            stale.remove(key);
+        }
+        if (!stale.isEmpty()) {
+            for (String key : stale) {
+                groups.put(key, new Group());
+            }
+            scan(stale);
+        }
+        write();
+        return changed.size();
+    }
+
+    /**
+     Lists the files of the view, each one with its path inside the data directory.
+     @return the files that exist
+     */
+    public List<File> files() {
+        List<File> files = new ArrayList<>();
+        for (FileTypes type : List.of(FileTypes.TABLE, FileTypes.META_TABLE, FileTypes.VIEW_DEFINITION, FileTypes.VIEW_STATE)) {
+            File file = new File(Utils.getFileName(name, type));
+            if (file.exists()) files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     Tells whether the view reads a column of its table, which then cannot be dropped. A column whose name appears
+     as a word of the WHERE clause counts as read, even where it is only part of a value.
+     @param column the name of the column
+     @return true if the view aggregates, groups by or filters on the column
+     */
+    public boolean usesColumn(String column) {
+        if (column.equals(groupBy)) return true;
+        for (Aggregate aggregate : aggregates) {
+            if (aggregate.getColumn().equals(column)) return true;
+        }
+        return conditions != null && Pattern.compile("\\b" + Pattern.quote(column) + "\\b").matcher(conditions).find();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    private static String columnType(Aggregate aggregate, Map<String, String> tableFields) {
+        if (!aggregate.isFunction()) return tableFields.get(aggregate.getColumn());
+        return switch (aggregate.getFunction()) {
+            case Aggregate.COUNT -> "int";
+            case Aggregate.AVG -> "varchar";
+            default -> tableFields.get(aggregate.getColumn());
+        };
+    }
+
+    /**
+     Adds the matching rows of the table to their groups.
+     @param keys the groups to add rows to, or null for every group
+     */
+    private void scan(Set<String> keys) throws IOException {
+        List<String> columns = new ArrayList<>(queryUtils.getMetaData(tableName).keySet());
+        Consumer<Map<String, String>> add = row -> {
+            String key = key(row);
+            if (keys == null) {
+                groups.computeIfAbsent(key, k -> new Group()).add(row);
+            } else if (keys.contains(key)) {
+                groups.get(key).add(row);
+            }
+        };
+        TableStores.get(tableName).scan(queryUtils.getEqualityConditions(conditions), line -> {
+            Map<String, String> row = row(line, columns);
+            if (queryUtils.handleAndOrConditions(row, conditions)) add.accept(row);
+            return true;
+        });
+    }
+
+    private Map<String, String> row(String line, List<String> columns) {
+        String[] values = line.split("\\|", -1);
+        Map<String, String> row = new LinkedHashMap<>();
+        for (int i = 0; i < columns.size(); i++) {
+            row.put(columns.get(i), i < values.length ? values[i] : "");
+        }
+        return row;
+    }
+
+    private String key(Map<String, String> row) {
+        return groupBy == null ? "" : row.get(groupBy);
+    }
+
+    private void load() throws IOException {
+        if (groups != null) return;
+        File stateFile = new File(Utils.getFileName(name, FileTypes.VIEW_STATE));
+        if (!stateFile.exists()) {
+            refresh();
+            return;
+        }
+        LinkedHashMap<String, Group> loaded = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(stateFile.toPath())) {
+            String[] parts = line.split("\\|", -1);
+            if (parts.length < 2 + aggregates.size()) continue;
+            loaded.put(parts[0], parseGroup(parts));
+        }
+        groups = loaded;
+    }
+
+    private Group parseGroup(String[] parts) {
+        Group group = new Group();
+        group.rows = Long.parseLong(parts[1]);
+        for (int a = 0; a < aggregates.size(); a++) {
+            String[] values = parts[2 + a].split(",", -1);
+            group.sums[a] = Double.parseDouble(values[0]);
+            group.nonIntegral[a] = Long.parseLong(values[1]);
+            if (group.rows > 0 && group.aggregated(a)) {
+                group.min[a] = values[2];
+                group.max[a] = values[3];
+            }
+        }
+        return group;
+    }
+
+    /**
+     Writes the rows of the view table and the state of its groups, each file replaced at once so that readers
+     of the view never see it half written.
+     */
+    private void write() throws IOException {
+        List<String> rows = new ArrayList<>();
+        List<String> state = new ArrayList<>();
+        for (Map.Entry<String, Group> group : groups.entrySet()) {
+            StringJoiner row = new StringJoiner("|");
+            for (int a = 0; a < aggregates.size(); a++) {
+                row.add(result(group.getKey(), group.getValue(), a));
+            }
+            rows.add(row.toString());
+            state.add(group.getValue().format(group.getKey()));
+        }
+        Lock lock = TableLocks.writeLock(name);
+        lock.lock();
+        try {
+            replace(new File(Utils.getFileName(name, FileTypes.VIEW_STATE)), state);
+            replace(new File(Utils.getFileName(name, FileTypes.TABLE)), rows);
+        } finally {
+            TableStores.invalidate(name);
+            TableVersions.bump(name);
+            lock.unlock();
+        }
+    }
+
+    /**
+     Computes the value of a field for a group with the accumulator of the field, merging the running values of
+     the group as partial results, so that the view shows what the SELECT would print.
+     */
+    private String result(String key, Group group, int aggregate) {
+        Aggregate field = aggregates.get(aggregate);
+        if (!field.isFunction()) return key;
+        Aggregate.Accumulator accumulator = field.newAccumulator();
+        accumulator.combine(Aggregate.COUNT, String.valueOf(group.rows));
+        if (group.rows > 0 && !field.getFunction().equals(Aggregate.COUNT)) {
+            double sum = group.sums[aggregate];
+            boolean integral = group.nonIntegral[aggregate] == 0 && Math.abs(sum) < 1e15;
+            accumulator.combine(Aggregate.SUM, integral ? String.valueOf((long) sum) : String.valueOf(sum));
+            accumulator.combine(Aggregate.MIN, group.min[aggregate]);
+            accumulator.combine(Aggregate.MAX, group.max[aggregate]);
+        }
+        return accumulator.result();
+    }
+
+    private static boolean isInteger(String value) {
+        return value.trim().matches("-?\\d+");
+    }
+
+    private static void replace(File file, List<String> lines) throws IOException {
+        File tempFile = new File(file.getPath() + "-temp");
+        Files.write(tempFile.toPath(), lines);
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     The running values of one group: its number of rows and, for each aggregated column, the sum of its values,
+     how many of them are not integers, and its lowest and highest value.
+     */
+    private class Group {
+        private long rows;
+        private final double[] sums = new double[aggregates.size()];
+        private final long[] nonIntegral = new long[aggregates.size()];
+        private final String[] min = new String[aggregates.size()];
+        private final String[] max = new String[aggregates.size()];
+
+        private void add(Map<String, String> row) {
+            rows++;
+            for (int a = 0; a < aggregates.size(); a++) {
+                if (!aggregated(a)) continue;
+                String value = row.get(aggregates.get(a).getColumn());
+                Double number = QueryUtils.doubleValueParser(value.trim());
+                if (number != null) sums[a] += number;
+                if (!isInteger(value)) nonIntegral[a]++;
+                if (min[a] == null || Aggregate.compare(value, min[a]) < 0) min[a] = value;
+                if (max[a] == null || Aggregate.compare(value, max[a]) > 0) max[a] = value;
+            }
+        }
+
+        /**
+         Removes a row of the group.
+         @return true if the group has to be computed again from the table
+         */
+        private boolean remove(Map<String, String> row) {
+            rows--;
+            boolean stale = false;
+            for (int a = 0; a < aggregates.size(); a++) {
+                if (!aggregated(a)) continue;
+                String function = aggregates.get(a).getFunction();
+                String value = row.get(aggregates.get(a).getColumn());
+                Double number = QueryUtils.doubleValueParser(value.trim());
+                if (number != null) sums[a] -= number;
+                if (!isInteger(value)) {
+                    nonIntegral[a]--;
+                    // subtracting a fraction may not give back the sum of the other values
+                    stale |= number != null && (function.equals(Aggregate.SUM) || function.equals(Aggregate.AVG));
+                }
+                stale |= function.equals(Aggregate.MIN) && value.equals(min[a]);
+                stale |= function.equals(Aggregate.MAX) && value.equals(max[a]);
+            }
+            return stale;
+        }
+
+        private boolean aggregated(int aggregate) {
+            Aggregate field = aggregates.get(aggregate);
+            return field.isFunction() && !field.getFunction().equals(Aggregate.COUNT);
+        }
+
+        private String format(String key) {
+            StringJoiner line = new StringJoiner("|");
+            line.add(key).add(String.valueOf(rows));
+            for (int a = 0; a < aggregates.size(); a++) {
+                line.add(sums[a] + "," + nonIntegral[a] + "," + (min[a] == null ? "" : min[a]) + "," + (max[a] == null ? "" : max[a]));
+            }
+            return line.toString();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package org.database.view;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ The MaterializedViews class finds the materialized views of the database from their name_view.txt definitions,
+ read once and kept in memory, and keeps the views of a table up to date with its changes.
+
+ A view belongs to its table: its creation is logged as a change of the table, and its files are copied with the
+ table at checkpoints and restored with it by recovery, so replaying the changes of the table after a crash brings
+ the view back to the same state as the table.
+ */
+public class MaterializedViews {
+    private static final Map<String, MaterializedView> VIEWS = new ConcurrentHashMap<>();
+    private static volatile boolean loaded;
+
+    /**
+     Tells whether a name is the name of a materialized view.
+     @param name the name of a table or view
+     @return true if a view with that name exists
+     */
+    public static boolean isView(String name) {
+        return new File(Utils.getFileName(name, FileTypes.VIEW_DEFINITION)).exists();
+    }
+
+    /**
+     Returns the views computed from a table.
+     @param tableName the name of the table
+     @return the views, empty if the table has none
+     @throws IOException if the definition of a view cannot be read
+     */
+    public static List<MaterializedView> of(String tableName) throws IOException {
+        load();
+        List<MaterializedView> views = new ArrayList<>();
+        for (MaterializedView view : VIEWS.values()) {
+            if (view.getTableName().equals(tableName)) views.add(view);
+        }
+        return views;
+    }
+
+    /**
+     Starts collecting the changed rows of a table, when views are computed from it.
+     @param tableName the name of the table about to change
+     @return the collector to hand the changed rows to, or null if the table has no views
+     @throws IOException if the definition of a view cannot be read
+     */
+    public static RowChanges track(String tableName) throws IOException {
+        return of(tableName).isEmpty() ? null : new RowChanges();
+    }
+
+    /**
+     Registers a view created from a table. Called while the write lock of the table is held.
+     @param view the new view, whose files are written
+     */
+    public static void register(MaterializedView view) {
+        VIEWS.put(view.getName(), view);
+    }
+
+    /**
+     Applies the changed rows of a table to each of its views. A view that cannot apply them is computed again
+     from the table. Called while the write lock of the table is held.
+     @param tableName the name of the changed table
+     @param changes the changed rows
+     @return the number of groups changed over all views
+     @throws IOException if a view can neither be updated nor computed again
+     */
+    public static int apply(String tableName, RowChanges changes) throws IOException {
+        int changed = 0;
+        for (MaterializedView view : of(tableName)) {
+            try {
+                changed += view.apply(changes);
+            } catch (IOException | RuntimeException e) {
+                changed += view.refresh();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     Lists the files of the views computed from a table, which are copied and restored along with the table.
+     @param tableName the name of the table
+     @return the files
+     @throws IOException if the definition of a view cannot be read
+     */
+    public static List<File> files(String tableName) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (MaterializedView view : of(tableName)) {
+            files.addAll(view.files());
+        }
+        return files;
+    }
+
+    /**
+     Forgets the views read so far, e.g. after recovery restored their files, so that they are read again.
+     */
+    public static synchronized void invalidate() {
+        VIEWS.clear();
+        loaded = false;
+    }
+
+    private static synchronized void load() throws IOException {
+        if (loaded) return;
+        File[] definitions = new File(Utils.getDataFileName("tables-metadata")).listFiles();
+        if (definitions != null) {
+            for (File definition : definitions) {
+                String fileName = definition.getName();
+                if (!fileName.endsWith("_view.txt")) continue;
+                String name = fileName.substring(0, fileName.length() - "_view.txt".length());
+                VIEWS.putIfAbsent(name, MaterializedView.load(name));
+            }
+        }
+        loaded = true;
+    }
+}
@@ -0,0 +1,61 @@
+package org.database.view;
+
+import org.database.Utils.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ The RowChanges class collects the rows an INSERT, UPDATE or DELETE removed from and added to a table, in the
+ text form of the table file, for the materialized views defined over the table. A statement changing more than
+ lightdb.view.maxChangedRows rows drops them and only notes the overflow; its views are then recomputed instead,
+ since keeping that many rows in memory would cost more than the scan.
+ */
+public class RowChanges {
+    private static final long MAX_CHANGED_ROWS = Config.getLong("view.maxChangedRows", 100000);
+
+    private final List<String> removed = new ArrayList<>();
+    private final List<String> added = new ArrayList<>();
+    private boolean overflow;
+
+    /**
+     Notes a row removed from the table, or the old version of an updated row. May be called concurrently.
+     @param line the row
+     */
+    public synchronized void remove(String line) {
+        if (reserve()) removed.add(line);
+    }
+
+    /**
+     Notes a row added to the table, or the new version of an updated row. May be called concurrently.
+     @param line the row
+     */
+    public synchronized void add(String line) {
+        if (reserve()) added.add(line);
+    }
+
+    public synchronized List<String> getRemoved() {
+        return removed;
+    }
+
+    public synchronized List<String> getAdded() {
+        return added;
+    }
+
+    public synchronized boolean isOverflow() {
+        return overflow;
+    }
+
+    public synchronized boolean isEmpty() {
+        return !overflow && removed.isEmpty() && added.isEmpty();
+    }
+
+    private boolean reserve() {
+        if (overflow) return false;
+        if (removed.size() + added.size() < MAX_CHANGED_ROWS) return true;
+        overflow = true;
+        removed.clear();
+        added.clear();
+        return false;
+    }
+}
@@ -0,0 +1,74 @@
+package org.database.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ Computes each aggregate over whole columns and by merging the partial results of the shards holding parts of
+ them, and checks that both give the same value.
+ */
+class AggregateTest {
+    private static final List<List<String>> SHARDS = List.of(
+            List.of("4", "-2", "10"),
+            List.of(),
+            List.of("7", "1"));
+
+    @Test
+    void mergedPartialResultsMatchTheWholeColumn() {
+        for (String function : List.of("count", "sum", "min", "max", "avg")) {
+            Aggregate aggregate = Aggregate.parse(function + "(v)").get(0);
+            Aggregate.Accumulator whole = aggregate.newAccumulator();
+            Aggregate.Accumulator merged = aggregate.newAccumulator();
+            for (List<String> shard : SHARDS) {
+                shard.forEach(whole::add);
+                for (String partialFunction : aggregate.partialFunctions()) {
+                    merged.combine(partialFunction, partial(partialFunction, shard));
+                }
+            }
+            assertEquals(whole.result(), merged.result(), function);
+        }
+    }
+
+    @Test
+    void averageIsMergedFromSumAndCount() {
+        Aggregate average = Aggregate.parse("AVG(v)").get(0);
+        assertEquals(List.of("sum", "count"), average.partialFunctions());
+
+        Aggregate.Accumulator merged = average.newAccumulator();
+        merged.combine("sum", "9");
+        merged.combine("count", "3");
+        merged.combine("sum", "null");
+        merged.combine("count", "0");
+        merged.combine("sum", "1");
+        merged.combine("count", "1");
+        assertEquals("2.5", merged.result());
+    }
+
+    @Test
+    void aggregatesOverNoRowsAreNull() {
+        for (String function : List.of("sum", "min", "max", "avg")) {
+            Aggregate.Accumulator accumulator = Aggregate.parse(function + "(v)").get(0).newAccumulator();
+            accumulator.combine(function.equals("avg") ? "sum" : function, "null");
+            assertEquals("null", accumulator.result(), function);
+        }
+        assertEquals("0", Aggregate.parse("count(*)").get(0).newAccumulator().result());
+    }
+
+    @Test
+    void unsupportedFieldsAreRejected() {
+        assertNull(Aggregate.parse("median(v)"));
+        assertNull(Aggregate.parse("sum(*)"));
+        assertNull(Aggregate.parse("city, v + 1"));
+        assertEquals(2, Aggregate.parse("city, COUNT(*)").size());
+    }
+
+    private static String partial(String function, List<String> rows) {
+        Aggregate.Accumulator accumulator = Aggregate.parse(function + "(v)").get(0).newAccumulator();
+        rows.forEach(accumulator::add);
+        return accumulator.result();
+    }
+}
@@ -0,0 +1,102 @@
+package org.database.query;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.storage.TableStores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Alters a table holding rows stored with earlier versions of its schema, and checks that those rows are read with
+ the current columns, stay untouched on disk until a statement rewrites them, and are rewritten in the current
+ layout.
+ */
+class AlterTableTest {
+    @TempDir
+    Path dataDir;
+
+    private QueryHandler queryHandler;
+
+    @BeforeEach
+    void createTable() throws IOException {
+        System.setProperty("lightdb.dataDir", dataDir.toString());
+        Files.createDirectories(dataDir.resolve("tables"));
+        Files.createDirectories(dataDir.resolve("tables-metadata"));
+        queryHandler = new QueryHandler();
+        assertTrue(queryHandler.createQuery("items", "id int primarykey, v int", null));
+        assertTrue(queryHandler.insertQuery("items", "1,10"));
+        assertTrue(queryHandler.insertQuery("items", "2,20"));
+    }
+
+    @AfterEach
+    void closeTable() {
+        TableStores.invalidate("items");
+    }
+
+    @Test
+    void addedColumnTakesItsDefaultInTheOldRowsWithoutRewritingThem() throws IOException {
+        List<String> stored = storedRows();
+
+        assertTrue(queryHandler.alterAddColumnQuery("items", "tag", "VARCHAR", "none"));
+        assertEquals(stored, storedRows());
+        assertEquals(List.of("1|10|none", "2|20|none"), rows());
+
+        assertTrue(queryHandler.insertQuery("items", "3,30,new"));
+        assertTrue(queryHandler.updateQuery("items", "tag=old", "tag=none"));
+        assertEquals(List.of("1|10|old", "2|20|old", "3|30|new"), rows());
+        assertEquals(List.of("1|10|old", "2|20|old", "3|30|new"), storedRows());
+    }
+
+    @Test
+    void droppedColumnIsNoLongerReadFromTheOldRows() throws IOException {
+        assertTrue(queryHandler.alterDropColumnQuery("items", "v"));
+        assertEquals(List.of("1|10", "2|20"), storedRows());
+        assertEquals(List.of("1", "2"), rows());
+
+        assertTrue(queryHandler.insertQuery("items", "3"));
+        assertTrue(queryHandler.deleteQuery("items", "id=1"));
+        assertEquals(List.of("2", "3"), rows());
+        // rewritten rows keep an empty value at the position of the dropped column
+        assertEquals(List.of("2|", "3|"), storedRows());
+    }
+
+    @Test
+    void rowsOfEveryVersionAreReadWithTheCurrentColumns() throws IOException {
+        assertTrue(queryHandler.alterAddColumnQuery("items", "a", "INT", "1"));
+        assertTrue(queryHandler.insertQuery("items", "3,30,3"));
+        assertTrue(queryHandler.alterAddColumnQuery("items", "b", "DOUBLE", "0.5"));
+        assertTrue(queryHandler.alterDropColumnQuery("items", "a"));
+        assertFalse(queryHandler.alterDropColumnQuery("items", "a"));
+
+        assertEquals(List.of("1|10", "2|20", "3|30|3"), storedRows());
+        assertEquals(List.of("1|10|0.5", "2|20|0.5", "3|30|0.5"), rows());
+
+        assertTrue(queryHandler.updateQuery("items", "v=40", "id=3"));
+        assertEquals(List.of("1|10|0.5", "2|20|0.5", "3|40|0.5"), rows());
+        // the text store rewrites the whole file, bringing every row to the current layout
+        assertEquals(List.of("1|10||0.5", "2|20||0.5", "3|40||0.5"), storedRows());
+    }
+
+    private static List<String> rows() throws IOException {
+        List<String> rows = new ArrayList<>();
+        TableStores.get("items").scan(Map.of(), rows::add);
+        return rows;
+    }
+
+    private static List<String> storedRows() throws IOException {
+        return Files.readAllLines(Path.of(Utils.getFileName("items", FileTypes.TABLE)));
+    }
+}
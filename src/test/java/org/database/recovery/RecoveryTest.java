@@ -0,0 +1,114 @@
+package org.database.recovery;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.database.query.QueryHandler;
+import org.database.replication.ChangeLog;
+import org.database.storage.TableStores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Damages the tables the way a crash can after a checkpoint and checks that the recovery brings them back to the
+ state of the change log.
+ */
+class RecoveryTest {
+    static {
+        System.setProperty("lightdb.wal.enabled", "true");
+        System.setProperty("lightdb.wal.sync", "false");
+    }
+
+    @TempDir
+    Path dataDir;
+
+    private QueryHandler queryHandler;
+
+    @BeforeEach
+    void createDirectories() throws IOException {
+        System.setProperty("lightdb.dataDir", dataDir.toString());
+        Files.createDirectories(dataDir.resolve("tables"));
+        Files.createDirectories(dataDir.resolve("tables-metadata"));
+        queryHandler = new QueryHandler();
+    }
+
+    @AfterEach
+    void closeTables() {
+        TableStores.invalidate("items");
+    }
+
+    @Test
+    void changesLoggedAfterTheCheckpointAreReplayedOnItsCopy() throws IOException {
+        assertTrue(queryHandler.createQuery("items", "id int primarykey, v int", null));
+        assertTrue(queryHandler.insertQuery("items", "1,10"));
+        Recovery.recover();
+
+        assertTrue(queryHandler.insertQuery("items", "2,20"));
+        assertTrue(queryHandler.updateQuery("items", "v=11", "id=1"));
+        assertTrue(queryHandler.deleteQuery("items", "id=2"));
+        assertTrue(queryHandler.insertQuery("items", "3,30"));
+        // a crash in the middle of a rewrite leaves a damaged table file behind
+        Files.writeString(tableFile(), "3|3");
+        TableStores.invalidate("items");
+
+        Recovery.recover();
+        assertEquals(List.of("1|11", "3|30"), rows());
+        assertFalse(ChangeLog.getInstance().getDirtyTables().contains("items"));
+    }
+
+    @Test
+    void changeCutBeforeItWasLoggedIsRolledBack() throws IOException {
+        assertTrue(queryHandler.createQuery("items", "id int primarykey, v int", null));
+        assertTrue(queryHandler.insertQuery("items", "1,10"));
+        Recovery.recover();
+
+        ChangeLog.getInstance().markDirty("items");
+        Files.writeString(tableFile(), "2|20\n", StandardOpenOption.APPEND);
+        TableStores.invalidate("items");
+
+        Recovery.recover();
+        assertEquals(List.of("1|10"), rows());
+        assertFalse(ChangeLog.getInstance().getDirtyTables().contains("items"));
+    }
+
+    @Test
+    void tableCreatedAfterTheCheckpointIsRebuiltFromTheLog() throws IOException {
+        Recovery.recover();
+
+        assertTrue(queryHandler.createQuery("items", "id int primarykey, v int", null));
+        assertTrue(queryHandler.insertQuery("items", "1,10"));
+        assertTrue(queryHandler.insertQuery("items", "2,20"));
+        Files.delete(tableFile());
+        TableStores.invalidate("items");
+
+        Recovery.recover();
+        assertEquals(List.of("1|10", "2|20"), rows());
+
+        // the recovery took a checkpoint of its result, so a second one has nothing left to replay
+        Recovery.recover();
+        assertEquals(List.of("1|10", "2|20"), rows());
+    }
+
+    private Path tableFile() {
+        return Path.of(Utils.getFileName("items", FileTypes.TABLE));
+    }
+
+    private static List<String> rows() throws IOException {
+        List<String> rows = new ArrayList<>();
+        TableStores.get("items").scan(Map.of(), rows::add);
+        return rows;
+    }
+}
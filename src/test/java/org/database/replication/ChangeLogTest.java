@@ -0,0 +1,127 @@
+package org.database.replication;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Appends changes numbered locally and under the LSNs of a primary, across several segments, and checks that readers
+ return them in order from any position.
+ */
+class ChangeLogTest {
+    static {
+        System.setProperty("lightdb.wal.sync", "false");
+        System.setProperty("lightdb.wal.segmentBytes", "100");
+    }
+
+    @TempDir
+    Path dataDir;
+
+    private ChangeLog changeLog;
+
+    @BeforeEach
+    void openLog() throws IOException {
+        System.setProperty("lightdb.dataDir", dataDir.toString());
+        changeLog = ChangeLog.getInstance();
+    }
+
+    @Test
+    void readersFollowTheSegmentsInOrder() throws Exception {
+        for (int i = 1; i <= 20; i++) {
+            assertEquals(i, changeLog.append("items", "insert into items values (" + i + ",0)"));
+        }
+        assertTrue(segmentCount() > 1);
+
+        assertEquals(lsns(1, 20), readLsns(0));
+        assertEquals(lsns(8, 20), readLsns(7));
+        assertEquals(List.of(), readLsns(20));
+    }
+
+    @Test
+    void replicatedChangesKeepTheLsnOfThePrimary() throws Exception {
+        ChangeLog.replicate(new ChangeLog.Entry(41, 1000, null, "insert into items values (1,0)"));
+        try {
+            assertEquals(41, changeLog.append("items", "insert into items values (1,0)"));
+            ChangeLog.replicate(new ChangeLog.Entry(41, 1000, null, "insert into items values (1,0)"));
+            assertThrows(IOException.class, () -> changeLog.append("items", "insert into items values (1,0)"));
+        } finally {
+            ChangeLog.replicate(null);
+        }
+        assertEquals(42, changeLog.append("items", "insert into items values (2,0)"));
+
+        // the jump to the LSN of the primary starts a new segment, so the readers see no gap inside one
+        assertEquals(List.of(41L, 42L), readLsns(0));
+        assertEquals(List.of(42L), readLsns(41));
+        try (ChangeLog.Reader reader = changeLog.openReader(40)) {
+            assertEquals(1000, reader.next(0).getTimestamp());
+        }
+    }
+
+    @Test
+    void readerWaitsForTheNextChange() throws Exception {
+        changeLog.append("items", "insert into items values (1,0)");
+        try (ChangeLog.Reader reader = changeLog.openReader(1)) {
+            assertNull(reader.next(0));
+            Thread appender = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                    changeLog.append("items", "insert into items values (2,0)");
+                } catch (IOException | InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            appender.start();
+            ChangeLog.Entry entry = reader.next(10_000);
+            appender.join();
+            assertEquals(2, entry.getLsn());
+            assertEquals("insert into items values (2,0)", entry.getStatement());
+        }
+    }
+
+    @Test
+    void removedSegmentsCannotBeReadAnyMore() throws Exception {
+        for (int i = 1; i <= 20; i++) {
+            changeLog.append("items", "insert into items values (" + i + ",0)");
+        }
+        int segments = segmentCount();
+        assertTrue(changeLog.removeUpTo(15) > 0);
+        assertTrue(segmentCount() < segments);
+
+        assertEquals(lsns(16, 20), readLsns(15));
+        assertThrows(IOException.class, () -> changeLog.openReader(0));
+    }
+
+    private List<Long> readLsns(long afterLsn) throws IOException, InterruptedException {
+        List<Long> read = new ArrayList<>();
+        try (ChangeLog.Reader reader = changeLog.openReader(afterLsn)) {
+            ChangeLog.Entry entry;
+            while ((entry = reader.next(0)) != null) {
+                read.add(entry.getLsn());
+            }
+        }
+        return read;
+    }
+
+    private static List<Long> lsns(long first, long last) {
+        List<Long> lsns = new ArrayList<>();
+        for (long lsn = first; lsn <= last; lsn++) {
+            lsns.add(lsn);
+        }
+        return lsns;
+    }
+
+    private int segmentCount() {
+        String[] names = dataDir.resolve("wal").toFile().list((dir, name) -> name.startsWith("changes-"));
+        return names == null ? 0 : names.length;
+    }
+}
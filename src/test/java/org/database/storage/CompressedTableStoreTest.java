@@ -0,0 +1,107 @@
+package org.database.storage;
+
+import org.database.Utils.FileTypes;
+import org.database.Utils.Utils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Leaves a compressed table in the states a crash between replacing the block index and emptying the tail can
+ leave behind, and checks that the next load repairs it without losing or repeating rows.
+ */
+class CompressedTableStoreTest {
+    static {
+        System.setProperty("lightdb.compression.blockBytes", "64");
+    }
+
+    @TempDir
+    Path dataDir;
+
+    private final List<String> rows = new ArrayList<>();
+
+    @BeforeEach
+    void createDirectories() throws IOException {
+        System.setProperty("lightdb.dataDir", dataDir.toString());
+        Files.createDirectories(dataDir.resolve("tables"));
+        for (int key = 1; key <= 20; key++) {
+            rows.add(key + "|value" + key);
+        }
+    }
+
+    @Test
+    void tailLongerThanTheBlockSizeIsCompressed() throws IOException {
+        newStore().append(rows);
+
+        assertEquals(0, tailFile().length());
+        assertEquals(rows, scan(newStore(), Map.of()));
+        // a key lookup only decompresses the blocks whose key range may hold the key
+        List<String> candidates = scan(newStore(), Map.of("id", "7"));
+        assertTrue(candidates.contains("7|value7"));
+        assertTrue(candidates.size() < rows.size());
+    }
+
+    @Test
+    void crashBeforeTheTailIsEmptiedDoesNotRepeatItsRows() throws IOException {
+        newStore().append(rows);
+        // the tail still holds the rows the committed blocks absorbed
+        new TextTableStore("ct", "ct").append(rows);
+        recordConsumedTail(tailFile().length());
+
+        assertEquals(rows, scan(newStore(), Map.of()));
+        assertEquals(0, tailFile().length());
+        assertTrue(Files.readAllLines(indexFile()).contains("tail|0"));
+    }
+
+    @Test
+    void crashAfterTheTailIsEmptiedKeepsTheRows() throws IOException {
+        newStore().append(rows);
+        recordConsumedTail(rows.size() * 10L);
+
+        CompressedTableStore store = newStore();
+        assertEquals(rows, scan(store, Map.of()));
+        assertTrue(Files.readAllLines(indexFile()).contains("tail|0"));
+
+        store.append(List.of("21|value21"));
+        List<String> expected = new ArrayList<>(rows);
+        expected.add("21|value21");
+        assertEquals(expected, scan(newStore(), Map.of()));
+    }
+
+    private CompressedTableStore newStore() {
+        return new CompressedTableStore("ct", "ct", List.of("id", "v"), 0);
+    }
+
+    private File tailFile() {
+        return new File(Utils.getFileName("ct", FileTypes.TABLE));
+    }
+
+    private Path indexFile() {
+        return Path.of(Utils.getFileName("ct", FileTypes.BLOCK_INDEX));
+    }
+
+    private void recordConsumedTail(long tailConsumed) throws IOException {
+        List<String> index = new ArrayList<>();
+        for (String line : Files.readAllLines(indexFile())) {
+            index.add(line.startsWith("tail|") ? "tail|" + tailConsumed : line);
+        }
+        Files.write(indexFile(), index);
+    }
+
+    private static List<String> scan(TableStore store, Map<String, String> equalities) throws IOException {
+        List<String> scanned = new ArrayList<>();
+        store.scan(equalities, scanned::add);
+        return scanned;
+    }
+}
@@ -0,0 +1,127 @@
+package org.database.storage;
+
+import org.database.query.QueryHandler;
+import org.database.query.TableLocks;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ Overwrites the same keys of an LSM table while every write flushes a run and the background compactions merge
+ them, and checks that every read returns the version written last.
+ */
+class LsmTableStoreTest {
+    private static final int KEYS = 5;
+
+    static {
+        System.setProperty("lightdb.lsm.memtableBytes", "1");
+        System.setProperty("lightdb.lsm.runsPerLevel", "2");
+    }
+
+    @TempDir
+    Path dataDir;
+
+    private QueryHandler queryHandler;
+    private final int[] latest = new int[KEYS];
+
+    @BeforeEach
+    void createTable() throws IOException {
+        System.setProperty("lightdb.dataDir", dataDir.toString());
+        Files.createDirectories(dataDir.resolve("tables"));
+        Files.createDirectories(dataDir.resolve("tables-metadata"));
+        queryHandler = new QueryHandler();
+        assertTrue(queryHandler.createQuery("kv", "id int primarykey, v int", "ENGINE=LSM"));
+        for (int key = 0; key < KEYS; key++) {
+            assertTrue(queryHandler.insertQuery("kv", key + ",0"));
+        }
+    }
+
+    @AfterEach
+    void stopCompaction() {
+        // a compaction left running would write into the data directory of the next test
+        TableStores.invalidate("kv");
+    }
+
+    @Test
+    void pointReadsReturnTheLatestVersionAcrossCompactions() throws IOException {
+        for (int round = 1; round <= 600; round++) {
+            overwrite(round);
+            for (int key = 0; key < KEYS; key++) {
+                assertEquals(key + "|" + latest[key], read(key), "point read of key " + key + " in round " + round);
+            }
+        }
+    }
+
+    @Test
+    void scansReturnTheLatestVersionAcrossCompactions() throws IOException {
+        for (int round = 1; round <= 300; round++) {
+            overwrite(round);
+            assertEquals(expectedRows(), scan(), "scan in round " + round);
+        }
+    }
+
+    @Test
+    void replacedStoreStopsCompactingBeforeTheNewOneReadsTheManifest() throws IOException {
+        for (int round = 1; round <= 300; round++) {
+            overwrite(round);
+            Lock lock = TableLocks.writeLock("kv");
+            lock.lock();
+            try {
+                TableStores.invalidate("kv");
+            } finally {
+                lock.unlock();
+            }
+            assertEquals(expectedRows(), scan(), "scan of the new store in round " + round);
+        }
+    }
+
+    private void overwrite(int round) {
+        int key = round % KEYS;
+        assertTrue(queryHandler.updateQuery("kv", "v=" + round, "id=" + key));
+        latest[key] = round;
+    }
+
+    private String read(int key) throws IOException {
+        List<String> rows = new ArrayList<>();
+        Lock lock = TableLocks.readLock("kv");
+        lock.lock();
+        try {
+            TableStores.get("kv").scan(Map.of("id", String.valueOf(key)), rows::add);
+        } finally {
+            lock.unlock();
+        }
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    private List<String> scan() throws IOException {
+        List<String> rows = new ArrayList<>();
+        Lock lock = TableLocks.readLock("kv");
+        lock.lock();
+        try {
+            TableStores.get("kv").scan(Map.of(), rows::add);
+        } finally {
+            lock.unlock();
+        }
+        return rows;
+    }
+
+    private List<String> expectedRows() {
+        List<String> rows = new ArrayList<>();
+        for (int key = 0; key < KEYS; key++) {
+            rows.add(key + "|" + latest[key]);
+        }
+        return rows;
+    }
+}